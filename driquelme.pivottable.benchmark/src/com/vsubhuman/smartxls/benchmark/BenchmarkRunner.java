@@ -0,0 +1,45 @@
+package com.vsubhuman.smartxls.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Runs benchmarks of the project with GC profiler, so every report
+ * contains throughput, latency (sample time percentiles) and allocation rate.</p>
+ * 
+ * <p>Arguments are JMH command line options, used for everything this runner
+ * doesn't set itself (benchmark filter, parameters, threads, etc.).
+ * Example: <code>BenchmarkRunner XMLProviderBenchmark -p dataFields=1000</code>.</p>
+ * 
+ * <p>Results are also written into <code>benchmark-results.json</code>.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		
+		OptionsBuilder builder = new OptionsBuilder();
+		if (cmd.getIncludes().isEmpty())
+			builder.include(BenchmarkRunner.class.getPackage().getName() + ".*Benchmark");
+		
+		Options options = builder
+				.parent(cmd)
+				.addProfiler(GCProfiler.class)
+				.forks(1)
+				.warmupIterations(3)
+				.measurementIterations(5)
+				.resultFormat(ResultFormatType.JSON)
+				.result("benchmark-results.json")
+				.build();
+		
+		new Runner(options).run();
+	}
+}
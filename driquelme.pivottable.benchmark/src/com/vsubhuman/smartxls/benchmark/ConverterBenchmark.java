@@ -0,0 +1,84 @@
+package com.vsubhuman.smartxls.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.smartxls.WorkBook;
+import com.vsubhuman.smartxls.ConversionPlan;
+import com.vsubhuman.smartxls.PivotTable;
+import com.vsubhuman.smartxls.PivotTableConverter;
+
+/**
+ * <p>Benchmarks of {@link PivotTableConverter#convert(WorkBook, PivotTable)}
+ * and {@link PivotTableConverter#convert(WorkBook, ConversionPlan)} on
+ * synthetic source tables.</p>
+ * 
+ * <p>Conversion changes the workbook, so every invocation gets fresh copy
+ * of the generated workbook. Copying is not measured.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConverterBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	public int rows;
+	
+	@Param({"10", "1000"})
+	public int cardinality;
+	
+	@Param({"1", "8"})
+	public int dataFields;
+	
+	@Param({"0", "2"})
+	public int formulaFields;
+	
+	private WorkBook generated;
+	private PivotTable table;
+	private ConversionPlan plan;
+	
+	private WorkBook source;
+	
+	@Setup(Level.Trial)
+	public void generate() throws Exception {
+		
+		SyntheticWorkbook synthetic = new SyntheticWorkbook(rows, cardinality, dataFields, formulaFields);
+		
+		generated = synthetic.createWorkBook();
+		table = synthetic.createTable();
+		plan = ConversionPlan.compile(table);
+	}
+	
+	@Setup(Level.Invocation)
+	public void copy() throws Exception {
+		
+		source = new WorkBook();
+		source.copyAll(generated);
+	}
+	
+	@Benchmark
+	public WorkBook convertTable() throws Exception {
+		
+		PivotTableConverter.convert(source, table);
+		return source;
+	}
+	
+	@Benchmark
+	public WorkBook convertPlan() throws Exception {
+		
+		PivotTableConverter.convert(source, plan);
+		return source;
+	}
+}
@@ -0,0 +1,75 @@
+package com.vsubhuman.smartxls.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.smartxls.WorkBook;
+import com.vsubhuman.smartxls.DocumentFormat;
+
+/**
+ * <p>Benchmarks of {@link DocumentFormat#read(String, String)} and
+ * {@link DocumentFormat#write(WorkBook, String, String)} for every format.</p>
+ * 
+ * <p>Source file of every format is written once per trial from the
+ * synthetic workbook, into temporary directory.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DocumentFormatBenchmark {
+
+	@Param({"CSV", "XLS", "XLSX", "XLSB"})
+	public DocumentFormat format;
+	
+	@Param({"1000", "100000"})
+	public int rows;
+	
+	private WorkBook workbook;
+	private File sourceFile;
+	private File targetFile;
+	
+	@Setup(Level.Trial)
+	public void generate() throws Exception {
+		
+		workbook = new SyntheticWorkbook(rows, 100, 4, 0).createWorkBook();
+		
+		String suffix = "." + format.toString().toLowerCase();
+		sourceFile = File.createTempFile("pivot-source", suffix);
+		targetFile = File.createTempFile("pivot-target", suffix);
+		
+		format.write(workbook, sourceFile.getPath(), null);
+	}
+	
+	@TearDown(Level.Trial)
+	public void delete() {
+		
+		sourceFile.delete();
+		targetFile.delete();
+	}
+	
+	@Benchmark
+	public WorkBook read() throws Exception {
+		
+		return format.read(sourceFile.getPath(), null);
+	}
+	
+	@Benchmark
+	public void write() throws Exception {
+		
+		format.write(workbook, targetFile.getPath(), null);
+	}
+}
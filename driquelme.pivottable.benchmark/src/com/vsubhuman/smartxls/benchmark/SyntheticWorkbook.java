@@ -0,0 +1,129 @@
+package com.vsubhuman.smartxls.benchmark;
+
+import java.util.Random;
+
+import com.smartxls.WorkBook;
+import com.vsubhuman.smartxls.DataField;
+import com.vsubhuman.smartxls.FormulaField;
+import com.vsubhuman.smartxls.PivotArea;
+import com.vsubhuman.smartxls.PivotField;
+import com.vsubhuman.smartxls.PivotTable;
+import com.vsubhuman.smartxls.RowField;
+
+/**
+ * <p>Class generates synthetic source tables and matching pivot table
+ * configurations for the benchmarks.</p>
+ * 
+ * <p>Source table has a header row and following columns:
+ * <ul>
+ * 	<li>"Page" - page field with 4 distinct values
+ * 	<li>"Region", "Product" - row fields, "Product" has configured number of distinct values
+ * 	<li>"Value1" .. "ValueN" - one numeric column per data field
+ * </ul></p>
+ * 
+ * <p>Every formula field sums two neighbour value columns, so formulas
+ * look like <code>Value1 + Value2</code>.</p>
+ * 
+ * <p>Values are generated by {@link Random} with fixed seed, so the same
+ * parameters always produce the same table.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class SyntheticWorkbook {
+
+	public static final String PAGE = "Page";
+	public static final String REGION = "Region";
+	public static final String PRODUCT = "Product";
+	public static final String VALUE = "Value";
+	
+	private static final int REGIONS = 8;
+	private static final int PAGES = 4;
+	
+	private static final long SEED = 20131014L;
+	
+	private final int rows;
+	private final int cardinality;
+	private final int dataFields;
+	private final int formulaFields;
+	
+	/**
+	 * Create new generator with specified parameters.
+	 * 
+	 * @param rows - number of data rows (without header)
+	 * @param cardinality - number of distinct values of the "Product" row field
+	 * @param dataFields - number of value columns and data fields
+	 * @param formulaFields - number of formula fields
+	 * @since 1.1
+	 */
+	public SyntheticWorkbook(int rows, int cardinality, int dataFields, int formulaFields) {
+		
+		if (rows < 1 || cardinality < 1 || dataFields < 1 || formulaFields < 0)
+			throw new IllegalArgumentException(
+				"Illegal parameters of the synthetic workbook!");
+		
+		this.rows = rows;
+		this.cardinality = cardinality;
+		this.dataFields = dataFields;
+		this.formulaFields = formulaFields;
+	}
+	
+	/**
+	 * @return new {@link WorkBook} with generated source table on the first sheet
+	 * @throws Exception - if workbook filling has failed
+	 * @since 1.1
+	 */
+	public WorkBook createWorkBook() throws Exception {
+		
+		WorkBook wb = new WorkBook();
+		Random random = new Random(SEED);
+		
+		wb.setText(0, 0, PAGE);
+		wb.setText(0, 1, REGION);
+		wb.setText(0, 2, PRODUCT);
+		for (int i = 0; i < dataFields; i++)
+			wb.setText(0, 3 + i, VALUE + (i + 1));
+		
+		for (int row = 1; row <= rows; row++) {
+			
+			wb.setText(row, 0, "Page " + random.nextInt(PAGES));
+			wb.setText(row, 1, "Region " + random.nextInt(REGIONS));
+			wb.setText(row, 2, "Product " + random.nextInt(cardinality));
+			
+			for (int i = 0; i < dataFields; i++)
+				wb.setNumber(row, 3 + i, Math.round(random.nextDouble() * 10000) / 100.0);
+		}
+		
+		return wb;
+	}
+	
+	/**
+	 * @return new {@link PivotTable} configuration for the generated source table
+	 * @since 1.1
+	 */
+	public PivotTable createTable() {
+		
+		PivotTable table = new PivotTable("Benchmark");
+		
+		table.addField(new PivotField(PivotArea.PAGE, PAGE));
+		table.addField(new RowField(REGION)).setColumnWidthPx(150);
+		table.addField(new RowField(PRODUCT));
+		
+		for (int i = 0; i < dataFields; i++) {
+			
+			String source = VALUE + (i + 1);
+			table.addField(new DataField(source, source + ".", "0.00")).setColumnWidthPx(90);
+		}
+		
+		for (int i = 0; i < formulaFields; i++) {
+			
+			String first = VALUE + (i % dataFields + 1);
+			String second = VALUE + ((i + 1) % dataFields + 1);
+			
+			table.addField(new FormulaField(first + " + " + second, "Formula" + (i + 1), "0.00"))
+				.setColumnWidthPx(90);
+		}
+		
+		return table;
+	}
+}
@@ -0,0 +1,67 @@
+package com.vsubhuman.smartxls.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.vsubhuman.smartxls.PivotTable;
+import com.vsubhuman.smartxls.XMLProvider;
+
+/**
+ * <p>Benchmarks of {@link XMLProvider#loadConfiguration(java.io.InputStream)}
+ * and {@link XMLProvider#saveConfiguration(java.io.OutputStream, PivotTable)}
+ * for configurations with different number of data fields.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class XMLProviderBenchmark {
+
+	@Param({"10", "1000", "10000"})
+	public int dataFields;
+	
+	private XMLProvider provider;
+	private PivotTable table;
+	private byte[] xml;
+	
+	private ByteArrayOutputStream output;
+	
+	@Setup(Level.Trial)
+	public void generate() throws Exception {
+		
+		provider = new XMLProvider();
+		table = new SyntheticWorkbook(1, 1, dataFields, 1).createTable();
+		
+		output = new ByteArrayOutputStream();
+		provider.saveConfiguration(output, table);
+		xml = output.toByteArray();
+	}
+	
+	@Benchmark
+	public PivotTable load() throws Exception {
+		
+		return provider.loadConfiguration(new ByteArrayInputStream(xml));
+	}
+	
+	@Benchmark
+	public int save() throws Exception {
+		
+		output.reset();
+		provider.saveConfiguration(output, table);
+		
+		return output.size();
+	}
+}
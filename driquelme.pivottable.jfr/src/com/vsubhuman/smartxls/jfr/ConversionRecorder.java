@@ -0,0 +1,173 @@
+package com.vsubhuman.smartxls.jfr;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.vsubhuman.smartxls.ConversionEvent;
+import com.vsubhuman.smartxls.ConversionListener;
+import com.vsubhuman.smartxls.ConversionPhase;
+import com.vsubhuman.smartxls.PivotField;
+import com.vsubhuman.smartxls.PivotTableConverter;
+
+/**
+ * <p>Listener that records phases of the conversions as Flight Recorder
+ * events ({@link PhaseEvent}), so slow conversions can be correlated with GC
+ * pauses and safepoints of the continuous recording.</p>
+ * 
+ * <p>Example:<pre>
+ * ConversionRecorder.register();
+ * ...
+ * java -XX:StartFlightRecording=settings=default,filename=conversions.jfr ...</pre>
+ * 
+ * <p>JFR event is begun when the phase starts and committed when it ends, so it
+ * has the real time span of the phase. The whole conversion is not recorded,
+ * it contains all other phases. When recording of the event is disabled, phases
+ * are not remembered, and the listener only checks the event type.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class ConversionRecorder implements ConversionListener {
+	
+	// registered listener, or null
+	private static ConversionRecorder instance;
+	
+	// events of the started phases, phases can end on other threads
+	private final ConcurrentHashMap<PhaseKey, PhaseEvent> started =
+			new ConcurrentHashMap<PhaseKey, PhaseEvent>();
+	
+	/**
+	 * Registers listener of all conversions, if it isn't registered yet.
+	 * 
+	 * @return registered listener
+	 * @since 1.1
+	 */
+	public static synchronized ConversionRecorder register() {
+		
+		if (instance == null) {
+			
+			instance = new ConversionRecorder();
+			PivotTableConverter.addConversionListener(instance);
+		}
+		
+		return instance;
+	}
+	
+	/**
+	 * Removes listener registered by {@link #register()}.
+	 * 
+	 * @return <code>true</code> if listener was removed, and
+	 * <code>false</code> if it was not registered
+	 * @since 1.1
+	 */
+	public static synchronized boolean unregister() {
+		
+		if (instance == null)
+			return false;
+		
+		PivotTableConverter.removeConversionListener(instance);
+		instance.started.clear();
+		instance = null;
+		
+		return true;
+	}
+	
+	@Override
+	public void phaseStarted(ConversionEvent event) {
+		
+		if (event.getPhase() == ConversionPhase.CONVERSION)
+			return;
+		
+		PhaseEvent jfr = new PhaseEvent();
+		if (!jfr.isEnabled())
+			return;
+		
+		jfr.begin();
+		started.put(new PhaseKey(event), jfr);
+	}
+	
+	@Override
+	public void phaseFinished(ConversionEvent event) {
+		
+		commit(event, null);
+	}
+	
+	@Override
+	public void phaseFailed(ConversionEvent event, Throwable error) {
+		
+		commit(event, error);
+	}
+	
+	private void commit(ConversionEvent event, Throwable error) {
+		
+		if (event.getPhase() == ConversionPhase.CONVERSION)
+			return;
+		
+		PhaseEvent jfr = started.remove(new PhaseKey(event));
+		if (jfr == null)
+			return;
+		
+		jfr.end();
+		if (!jfr.shouldCommit())
+			return;
+		
+		jfr.phase = event.getPhase().name();
+		jfr.tableName = event.getTableName();
+		jfr.rowCount = event.getRowCount();
+		jfr.columnCount = event.getColumnCount();
+		jfr.fileSize = event.getFileSize();
+		
+		// read or written document, or the source of the table for other phases
+		if (event.getDocument() != null)
+			jfr.path = event.getDocument().getPath();
+		else if (event.getSourceDocument() != null)
+			jfr.path = event.getSourceDocument().getPath();
+		
+		if (event.getField() != null)
+			jfr.fieldSource = event.getField().getSource();
+		
+		if (error != null)
+			jfr.error = error.getClass().getName();
+		
+		jfr.commit();
+	}
+	
+	/*
+	 * Identifies phase by the values of its started event,
+	 * ended event of the phase has the same values
+	 */
+	private static final class PhaseKey {
+		
+		private final ConversionPhase phase;
+		private final long startTime;
+		private final String tableName;
+		private final PivotField field;
+		private final Object document;
+		
+		private PhaseKey(ConversionEvent event) {
+			
+			this.phase = event.getPhase();
+			this.startTime = event.getStartTime();
+			this.tableName = event.getTableName();
+			this.field = event.getField();
+			this.document = event.getDocument();
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			
+			if (!(obj instanceof PhaseKey))
+				return false;
+			
+			PhaseKey o = (PhaseKey) obj;
+			return phase == o.phase && startTime == o.startTime && field == o.field
+					&& document == o.document
+					&& (tableName == null ? o.tableName == null : tableName.equals(o.tableName));
+		}
+		
+		@Override
+		public int hashCode() {
+			
+			return phase.hashCode() * 31 + (int) (startTime ^ (startTime >>> 32));
+		}
+	}
+}
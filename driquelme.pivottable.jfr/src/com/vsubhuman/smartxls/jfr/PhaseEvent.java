@@ -0,0 +1,64 @@
+package com.vsubhuman.smartxls.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * <p>Flight Recorder event of one phase of the conversion (see
+ * {@link com.vsubhuman.smartxls.ConversionPhase}): read of the source, set of
+ * the source list, creation and configuration of each field, width pass
+ * and write of the target.</p>
+ * 
+ * <p>Events are emitted by {@link ConversionRecorder}. Event is enabled
+ * by default with threshold of 0, so every phase is recorded.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+@Name(PhaseEvent.NAME)
+@Label("Conversion Phase")
+@Category({ "Pivot Table", "Conversion" })
+@Description("Phase of the pivot table conversion")
+@StackTrace(false)
+public class PhaseEvent extends Event {
+	
+	/**
+	 * Name of the event type
+	 */
+	public static final String NAME = "com.vsubhuman.smartxls.ConversionPhase";
+	
+	@Label("Phase")
+	String phase;
+	
+	@Label("Table Name")
+	String tableName;
+	
+	@Label("Path")
+	@Description("Path of the read or written document, or of the source document of the table for other phases")
+	String path;
+	
+	@Label("Field Source")
+	@Description("Source name of the created or configured field")
+	String fieldSource;
+	
+	@Label("Row Count")
+	@Description("Number of rows of the source range, or -1 if it's not known yet")
+	int rowCount;
+	
+	@Label("Column Count")
+	@Description("Number of columns of the source range, or -1 if it's not known yet")
+	int columnCount;
+	
+	@Label("File Size")
+	@DataAmount
+	long fileSize;
+	
+	@Label("Error")
+	@Description("Class of the error if phase has failed")
+	String error;
+}
@@ -0,0 +1,475 @@
+package com.vsubhuman.smartxls;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import com.smartxls.WorkBook;
+
+/**
+ * <p>Class limits the heap used by the concurrent conversions. Before the source
+ * document is read its heap footprint is estimated by the size of the file and the
+ * expansion factor of its {@link DocumentFormat}, and conversion waits until the sum
+ * of the estimates of the running conversions allows it.</p>
+ * 
+ * <p>Expansion factors are learned from the previous runs: footprint of every read
+ * workbook (see {@link WorkBookCache#estimateFootprint(WorkBook)}) divided by the size
+ * of its file is averaged into the factor of the format right after the read, so
+ * estimates follow the actual documents.</p>
+ * 
+ * <p>Documents estimated to exceed the whole budget are never admitted. Documents that
+ * can be streamed (CSV and not encrypted XLSX) should be computed by the streaming engine
+ * instead, see {@link com.vsubhuman.smartxls.engine.NativePivotEngine#compute(PivotTable)},
+ * other documents are rejected.</p>
+ * 
+ * <p>Example:<pre>
+ * AdmissionController controller = new AdmissionController(Runtime.getRuntime().maxMemory() / 2);
+ * ...
+ * if (controller.decide(table.getSourceDocument()) == AdmissionController.Decision.STREAM)
+ *   result = NativePivotEngine.compute(table);
+ * else
+ *   wb = controller.convert(table, true, null);</pre>
+ * 
+ * <p>Controller is thread safe, waiting conversions are admitted in the order of arrival.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class AdmissionController {
+	
+	/**
+	 * Decision about the document made by the controller.
+	 * 
+	 * @author vsubhuman
+	 * @version 1.1
+	 */
+	public static enum Decision {
+		
+		/**
+		 * Document fits into the budget and can be read into workbook
+		 */
+		ADMIT,
+		
+		/**
+		 * Document exceeds the budget but can be streamed
+		 */
+		STREAM,
+		
+		/**
+		 * Document exceeds the budget and cannot be streamed
+		 */
+		REJECT
+	}
+	
+	// weight of the last observed factor in the learned one
+	private static final double LEARNING_RATE = 0.2;
+	
+	private final long budget;
+	
+	// expansion factors by format
+	private final Map<DocumentFormat, Double> factors =
+			new EnumMap<DocumentFormat, Double>(DocumentFormat.class);
+	
+	// admissions waiting for the budget, in the order of arrival
+	private final LinkedList<Admission> waiting = new LinkedList<Admission>();
+	
+	private long reserved;
+	private int active;
+	
+	/**
+	 * Create new controller with specified budget.
+	 * 
+	 * @param budget - maximal sum of the estimated footprints
+	 * of the admitted documents in bytes
+	 * @throws IllegalArgumentException - if budget is not positive
+	 * @since 1.1
+	 */
+	public AdmissionController(long budget) throws IllegalArgumentException {
+		
+		if (budget <= 0)
+			throw new IllegalArgumentException(
+				"Budget should be positive!");
+		
+		this.budget = budget;
+		
+		// initial expansion factors
+		factors.put(DocumentFormat.CSV, 4.0);
+		factors.put(DocumentFormat.XLS, 3.0);
+		factors.put(DocumentFormat.XLSX, 10.0);
+		factors.put(DocumentFormat.XLSB, 6.0);
+	}
+	
+	/**
+	 * Estimates heap footprint of the specified document, by the size of
+	 * its file and the current expansion factor of its format.
+	 * 
+	 * @param doc - document to estimate
+	 * @return estimated footprint in bytes, or 0 if document has no file
+	 * @throws IllegalArgumentException - if document is <code>null</code>
+	 * @throws IllegalStateException - if format or path of the document is <code>null</code>
+	 * @since 1.1
+	 */
+	public long estimate(Document doc) throws IllegalArgumentException, IllegalStateException {
+		
+		if (doc == null)
+			throw new IllegalArgumentException(
+				"Document cannot be null!");
+		
+		DocumentFormat format = doc.getDocumentFormat();
+		String path = doc.getPath();
+		
+		if (format == null || path == null)
+			throw new IllegalStateException(
+				"Cannot estimate document without format or path!");
+		
+		return (long) Math.ceil(new File(path).length() * getFactor(format));
+	}
+	
+	/**
+	 * Decides how specified document should be converted: documents that fit into
+	 * the budget are admitted, others are streamed if their format allows it, or rejected.
+	 * 
+	 * @param doc - document to decide about
+	 * @return decision about the document
+	 * @throws IllegalArgumentException - if document is <code>null</code>
+	 * @throws IllegalStateException - if format or path of the document is <code>null</code>
+	 * @since 1.1
+	 */
+	public Decision decide(Document doc) throws IllegalArgumentException, IllegalStateException {
+		
+		return decide(doc, estimate(doc));
+	}
+	
+	/**
+	 * <p>Admits specified document, waiting until the budget allows it. Admission should
+	 * be released after the conversion, and updated with the read workbook to learn
+	 * the expansion factor:<pre>
+	 * Admission admission = controller.admit(doc);
+	 * try {
+	 *   WorkBook wb = doc.read();
+	 *   admission.update(wb);
+	 *   ...
+	 * } finally {
+	 *   admission.release();
+	 * }</pre>
+	 * 
+	 * <p>If document exceeds the budget, method returns without waiting, and the
+	 * decision of returned admission is {@link Decision#STREAM} or {@link Decision#REJECT}.</p>
+	 * 
+	 * @param doc - document to admit
+	 * @return admission of the document
+	 * @throws IllegalArgumentException - if document is <code>null</code>
+	 * @throws IllegalStateException - if format or path of the document is <code>null</code>
+	 * @throws InterruptedException - if thread is interrupted while waiting
+	 * @since 1.1
+	 */
+	public Admission admit(Document doc) throws IllegalArgumentException,
+			IllegalStateException, InterruptedException {
+		
+		long estimate = estimate(doc);
+		Admission admission = new Admission(doc, decide(doc, estimate), estimate);
+		
+		if (admission.decision != Decision.ADMIT)
+			return admission;
+		
+		synchronized (this) {
+			
+			waiting.addLast(admission);
+			try {
+				
+				while (waiting.getFirst() != admission || reserved + estimate > budget)
+					wait();
+			
+			} catch (InterruptedException e) {
+				
+				waiting.remove(admission);
+				notifyAll();
+				throw e;
+			}
+			
+			waiting.removeFirst();
+			reserved += estimate;
+			active++;
+			admission.admitted = true;
+			
+			// next one may fit too
+			notifyAll();
+		}
+		
+		return admission;
+	}
+	
+	/**
+	 * Convert specified table by {@link PivotTableConverter#convert(PivotTable, boolean, ConversionListener)}
+	 * once its source document is admitted. Expansion factor of the format is updated
+	 * by the workbook as soon as it's read, before it's converted.
+	 * 
+	 * @param table - {@link PivotTable} to use converting configuration from
+	 * @param writeTarget - if <code>true</code> converted state will be saved into
+	 * target document from table
+	 * @param listener - listener to report phases of the conversion to (optional)
+	 * @return {@link WorkBook} read from source document and converted by specified configuration
+	 * @throws IllegalArgumentException - if table is <code>null</code>
+	 * @throws IllegalStateException - if table has no source document, or source
+	 * document exceeds the budget
+	 * @throws Exception - if read, converting, or write process has failed
+	 * @since 1.1
+	 */
+	public WorkBook convert(PivotTable table, boolean writeTarget, ConversionListener listener)
+			throws IllegalArgumentException, IllegalStateException, Exception {
+		
+		if (table == null)
+			throw new IllegalArgumentException("Pivot table cannot be null!");
+		
+		Document doc = table.getSourceDocument();
+		if (doc == null)
+			throw new IllegalStateException(
+				"Cannot convert table without source document settings!");
+		
+		Admission admission = admit(doc);
+		if (admission.decision != Decision.ADMIT)
+			throw new IllegalStateException(
+				"Source document exceeds the budget (" + admission.estimate + " of " + budget + " bytes)!");
+		
+		try {
+			
+			return PivotTableConverter.convert(table, writeTarget, new Learner(admission, listener));
+		
+		} finally {
+			admission.release();
+		}
+	}
+	
+	/**
+	 * @param format - format of the documents
+	 * @return current expansion factor of the format
+	 * @throws IllegalArgumentException - if format is <code>null</code>
+	 * @since 1.1
+	 */
+	public synchronized double getFactor(DocumentFormat format) throws IllegalArgumentException {
+		
+		if (format == null)
+			throw new IllegalArgumentException(
+				"Format cannot be null!");
+		
+		return factors.get(format);
+	}
+	
+	/**
+	 * Sets expansion factor of the format, for example one
+	 * learned by the previous instance of the controller.
+	 * 
+	 * @param format - format of the documents
+	 * @param factor - ratio of the heap footprint to the size of the file
+	 * @throws IllegalArgumentException - if format is <code>null</code>
+	 * or factor is not positive
+	 * @since 1.1
+	 */
+	public synchronized void setFactor(DocumentFormat format, double factor) throws IllegalArgumentException {
+		
+		if (format == null)
+			throw new IllegalArgumentException(
+				"Format cannot be null!");
+		
+		if (!(factor > 0) || Double.isInfinite(factor))
+			throw new IllegalArgumentException(
+				"Factor should be positive!");
+		
+		factors.put(format, factor);
+	}
+	
+	/**
+	 * @return maximal sum of the estimated footprints of the admitted documents in bytes
+	 * @since 1.1
+	 */
+	public long getBudget() {
+		return budget;
+	}
+	
+	/**
+	 * @return sum of the estimated footprints of the admitted documents in bytes
+	 * @since 1.1
+	 */
+	public synchronized long getReserved() {
+		return reserved;
+	}
+	
+	/**
+	 * @return number of the admitted not released documents
+	 * @since 1.1
+	 */
+	public synchronized int getActiveCount() {
+		return active;
+	}
+	
+	/**
+	 * @return number of the documents waiting for the budget
+	 * @since 1.1
+	 */
+	public synchronized int getWaitingCount() {
+		return waiting.size();
+	}
+	
+	/*
+	 * Compares estimate with the budget
+	 */
+	private Decision decide(Document doc, long estimate) {
+		
+		if (estimate <= budget)
+			return Decision.ADMIT;
+		
+		// the same documents NativePivotEngine streams
+		DocumentFormat format = doc.getDocumentFormat();
+		if (format == DocumentFormat.CSV || (format == DocumentFormat.XLSX && doc.getPassword() == null))
+			return Decision.STREAM;
+		
+		return Decision.REJECT;
+	}
+	
+	/*
+	 * Averages observed factor into the factor of the format
+	 */
+	private synchronized void learn(DocumentFormat format, double observed) {
+		
+		double factor = factors.get(format);
+		factors.put(format, factor + (observed - factor) * LEARNING_RATE);
+	}
+	
+	private synchronized void release(Admission admission) {
+		
+		if (!admission.admitted)
+			return;
+		
+		admission.admitted = false;
+		reserved -= admission.estimate;
+		active--;
+		notifyAll();
+	}
+	
+	/**
+	 * Admission of the document by the {@link AdmissionController}.
+	 * 
+	 * @author vsubhuman
+	 * @version 1.1
+	 */
+	public class Admission {
+		
+		private final Document document;
+		private final Decision decision;
+		private final long estimate;
+		
+		// guarded by the controller
+		private boolean admitted;
+		
+		/*
+		 * Constructor
+		 */
+		private Admission(Document document, Decision decision, long estimate) {
+			
+			this.document = document;
+			this.decision = decision;
+			this.estimate = estimate;
+		}
+		
+		/**
+		 * @return admitted document
+		 * @since 1.1
+		 */
+		public Document getDocument() {
+			return document;
+		}
+		
+		/**
+		 * @return decision about the document
+		 * @since 1.1
+		 */
+		public Decision getDecision() {
+			return decision;
+		}
+		
+		/**
+		 * @return estimated footprint of the document in bytes
+		 * @since 1.1
+		 */
+		public long getEstimate() {
+			return estimate;
+		}
+		
+		/**
+		 * Learns expansion factor of the format of the document from
+		 * the footprint of the workbook read from it.
+		 * 
+		 * @param wb - workbook read from the document
+		 * @throws IllegalArgumentException - if workbook is <code>null</code>
+		 * @throws Exception - if workbook cannot be inspected
+		 * @since 1.1
+		 */
+		public void update(WorkBook wb) throws IllegalArgumentException, Exception {
+			
+			if (wb == null)
+				throw new IllegalArgumentException(
+					"Workbook cannot be null!");
+			
+			long length = new File(document.getPath()).length();
+			if (length > 0)
+				learn(document.getDocumentFormat(), (double) WorkBookCache.estimateFootprint(wb) / length);
+		}
+		
+		/**
+		 * Returns estimated footprint of the document to the budget. Only the
+		 * first call has effect, admissions that weren't admitted are ignored.
+		 * 
+		 * @since 1.1
+		 */
+		public void release() {
+			
+			AdmissionController.this.release(this);
+		}
+	}
+	
+	/*
+	 * Updates admission by the workbook of the READ phase,
+	 * and reports all phases to the listener of the conversion
+	 */
+	private static class Learner implements ConversionListener {
+		
+		private final Admission admission;
+		private final ConversionListener listener;
+		
+		private Learner(Admission admission, ConversionListener listener) {
+			
+			this.admission = admission;
+			this.listener = listener;
+		}
+		
+		@Override
+		public void phaseStarted(ConversionEvent event) {
+			
+			if (listener != null)
+				listener.phaseStarted(event);
+		}
+		
+		@Override
+		public void phaseFinished(ConversionEvent event) {
+			
+			if (event.getPhase() == ConversionPhase.READ && event.getWorkBook() != null) {
+				
+				// factor is not learned if workbook cannot be inspected
+				try {
+					admission.update(event.getWorkBook());
+				} catch (Exception ignore) {}
+			}
+			
+			if (listener != null)
+				listener.phaseFinished(event);
+		}
+		
+		@Override
+		public void phaseFailed(ConversionEvent event, Throwable error) {
+			
+			if (listener != null)
+				listener.phaseFailed(event, error);
+		}
+	}
+}
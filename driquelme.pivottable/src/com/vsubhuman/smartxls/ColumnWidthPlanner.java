@@ -0,0 +1,105 @@
+package com.vsubhuman.smartxls;
+
+import java.util.Arrays;
+
+import com.smartxls.WorkBook;
+import com.vsubhuman.smartxls.ConversionPlan.WidthStep;
+
+/**
+ * <p>Class computes final widths of the result table columns from
+ * the width assignments of a {@link ConversionPlan} and applies them
+ * to a {@link WorkBook}.</p>
+ * 
+ * <p>When multiple fields are placed into one column, column gets the
+ * biggest of their widths (see {@link PivotField#setColumnWidth(SizeUnit.Size)}).
+ * Final widths are computed in one pass over the assignments, and then
+ * every span of contiguous columns with equal width is applied by a single
+ * call to the SmartXLS, instead of a call per column.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+final class ColumnWidthPlanner {
+
+	// marks column which width is not changed
+	private static final int NOT_CHANGED = -1;
+	
+	private ColumnWidthPlanner() {}
+	
+	/**
+	 * Computes final width of every column of the result table.
+	 * 
+	 * @param plan - plan to take width assignments from
+	 * @param lastColumn - index of the last column of the sheet
+	 * @return array of widths by column index, value is less than zero
+	 * for the columns which width should not be changed
+	 * @since 1.1
+	 */
+	static int[] plan(ConversionPlan plan, int lastColumn) {
+		
+		int size = lastColumn + 1;
+		for (int i = 0; i < plan.getWidthStepCount(); i++)
+			size = Math.max(size, plan.getWidthStep(i).column + 1);
+		
+		int[] widths = new int[size];
+		Arrays.fill(widths, NOT_CHANGED);
+		
+		for (int i = 0; i < plan.getWidthStepCount(); i++) {
+			
+			WidthStep step = plan.getWidthStep(i);
+			
+			int last = step.toLastColumn ? lastColumn : step.column;
+			for (int column = step.column; column <= last; column += step.step) {
+				
+				if (step.width > widths[column])
+					widths[column] = step.width;
+			}
+		}
+		
+		return widths;
+	}
+	
+	/**
+	 * Computes final widths of the columns and sets them into
+	 * the selected sheet of the specified {@link WorkBook}.
+	 * 
+	 * @param source - {@link WorkBook} to set widths into
+	 * @param plan - plan to take width assignments from
+	 * @return number of the column spans that were set
+	 * @throws Exception - if width setting has failed
+	 * @since 1.1
+	 */
+	static int apply(WorkBook source, ConversionPlan plan) throws Exception {
+		
+		if (plan.getWidthStepCount() == 0)
+			return 0;
+		
+		int[] widths = plan(plan, source.getLastCol());
+		int spans = 0;
+		
+		int column = 0;
+		while (column < widths.length) {
+			
+			int width = widths[column];
+			if (width == NOT_CHANGED) {
+				
+				column++;
+				continue;
+			}
+			
+			int end = column;
+			while (end + 1 < widths.length && widths[end + 1] == width)
+				end++;
+			
+			if (end == column)
+				source.setColWidth(column, width);
+			else
+				source.setColWidth(column, end, width, false);
+			
+			spans++;
+			column = end + 1;
+		}
+		
+		return spans;
+	}
+}
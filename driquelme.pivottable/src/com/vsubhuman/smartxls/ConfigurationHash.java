@@ -0,0 +1,179 @@
+package com.vsubhuman.smartxls;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+
+import com.vsubhuman.smartxls.SizeUnit.Size;
+
+/**
+ * <p>Class computes stable content hash of the {@link PivotTable} configuration.</p>
+ * 
+ * <p>Hash covers everything that affects the converted document: fields in the order
+ * of the table with their areas, sources, sort types, widths, names, number formats,
+ * summarize types, formulas and layout flags, name, source range and sheet, target cell,
+ * style, data caption and flags of the table, and format of the target document.
+ * Source document itself is not covered, it's identified by the {@link DocumentFingerprint}.</p>
+ * 
+ * <p>Hash is the same for the equal configurations in any JVM, so it can be
+ * used as the key of the persistent cache (see {@link ResultCache}).</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public final class ConfigurationHash {
+	
+	// version of the hashed content, changed when content is changed
+	private static final String VERSION = "1";
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	
+	/*
+	 * Constructor
+	 */
+	private ConfigurationHash() {}
+	
+	/**
+	 * Computes hash of the configuration of the specified table.
+	 * 
+	 * @param table - pivot table
+	 * @return SHA-256 hash as the hex string
+	 * @throws IllegalArgumentException - if table is <code>null</code>
+	 * @throws Exception - if address of the range or cell cannot be formatted
+	 * @since 1.1
+	 */
+	public static String compute(PivotTable table) throws IllegalArgumentException, Exception {
+		
+		if (table == null)
+			throw new IllegalArgumentException(
+				"Pivot table cannot be null!");
+		
+		MessageDigest md = MessageDigest.getInstance("SHA-256");
+		
+		put(md, VERSION);
+		
+		/*
+		 * Table
+		 */
+		
+		put(md, table.getName());
+		put(md, table.getSourceSheet());
+		put(md, describe(table.getSourceRange()));
+		put(md, describe(table.getTargetCell()));
+		put(md, table.getStyle());
+		put(md, table.getDataCaption());
+		put(md, table.isShowDataColumnsOnRow());
+		put(md, table.isShowRowButtons());
+		put(md, table.isShowHeader());
+		put(md, table.isShowTotalRow());
+		put(md, table.isShowTotalCol());
+		
+		Document target = table.getTargetDocument();
+		put(md, target == null ? null : target.getDocumentFormat());
+		put(md, target == null ? null : target.getPassword());
+		
+		/*
+		 * Fields
+		 */
+		
+		put(md, table.getFieldCount());
+		for (PivotField field : table.getFields()) {
+			
+			put(md, field == null ? null : field.getClass().getName());
+			if (field == null)
+				continue;
+			
+			put(md, field.getPivotArea());
+			put(md, field.getSource());
+			put(md, field.getSortType());
+			
+			Size width = field.getColumnWidth();
+			put(md, width == null ? null : width.getUnit());
+			put(md, width == null ? 0 : width.getSize());
+			
+			if (field instanceof RowField) {
+				
+				RowField f = (RowField) field;
+				put(md, f.isOutline());
+				put(md, f.isCompact());
+				put(md, f.isSubtotalTop());
+			}
+			
+			if (field instanceof DataField) {
+				
+				DataField f = (DataField) field;
+				put(md, f.getName());
+				put(md, f.getNumberFormatting());
+				put(md, f.getSummarizeType());
+			}
+			
+			if (field instanceof FormulaField)
+				put(md, ((FormulaField) field).getFormula());
+		}
+		
+		return toHex(md.digest());
+	}
+	
+	/*
+	 * Hex string of the bytes
+	 */
+	static String toHex(byte[] bytes) {
+		
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+		}
+		
+		return new String(chars);
+	}
+	
+	/*
+	 * Puts value into the digest, prefixed by its length,
+	 * so sequences of values are not ambiguous
+	 */
+	private static void put(MessageDigest md, Object value) {
+		
+		if (value == null) {
+			
+			putLength(md, -1);
+			return;
+		}
+		
+		byte[] bytes = String.valueOf(value).getBytes(UTF8);
+		putLength(md, bytes.length);
+		md.update(bytes);
+	}
+	
+	private static void putLength(MessageDigest md, int length) {
+		
+		md.update((byte) (length >>> 24));
+		md.update((byte) (length >>> 16));
+		md.update((byte) (length >>> 8));
+		md.update((byte) length);
+	}
+	
+	private static String describe(TableRange range) throws Exception {
+		
+		if (range == null)
+			return null;
+		
+		if (range.isCells())
+			return describe(range.getStartCell()) + ":" + describe(range.getEndCell());
+		
+		return range.getRange(null);
+	}
+	
+	private static String describe(TableCell cell) throws Exception {
+		
+		if (cell == null)
+			return null;
+		
+		if (cell.isNumbers())
+			return "R" + cell.getRow() + "C" + cell.getCol();
+		
+		return cell.getCell(null);
+	}
+}
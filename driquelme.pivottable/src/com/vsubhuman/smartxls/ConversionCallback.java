@@ -0,0 +1,38 @@
+package com.vsubhuman.smartxls;
+
+import java.util.concurrent.CancellationException;
+
+import com.smartxls.WorkBook;
+
+/**
+ * <p>Interface provides functionality to be notified when asynchronous
+ * conversion (see {@link PivotTableConverter#convertAsync(PivotTable, boolean, java.util.concurrent.Executor)})
+ * is done.</p>
+ * 
+ * <p>Exactly one method is called for every conversion: in the thread that performed
+ * conversion, or in the thread that cancelled it, or in the thread that added
+ * callback if conversion was already done.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ * @see ConversionResult#addCallback(ConversionCallback)
+ */
+public interface ConversionCallback {
+	
+	/**
+	 * Called when conversion is successfully completed.
+	 * 
+	 * @param wb - converted workbook
+	 * @since 1.1
+	 */
+	void completed(WorkBook wb);
+	
+	/**
+	 * Called when conversion is failed or cancelled.
+	 * 
+	 * @param error - cause of the failure, or {@link CancellationException}
+	 * if conversion was cancelled
+	 * @since 1.1
+	 */
+	void failed(Throwable error);
+}
@@ -0,0 +1,186 @@
+package com.vsubhuman.smartxls;
+
+import com.smartxls.WorkBook;
+
+/**
+ * <p>Class describes entity of the event of one conversion phase,
+ * passed to the {@link ConversionListener}.</p>
+ * 
+ * <p>Event of the started phase has no duration. Event of the finished
+ * (or failed) phase contains duration of the phase in nanoseconds, and all
+ * the information known at the end of the phase: number of rows and columns
+ * of the source range (known since {@link ConversionPhase#SET_LIST}) and size
+ * of the file for {@link ConversionPhase#READ} and {@link ConversionPhase#WRITE}.
+ * Unknown values are equal to -1. Every event of the conversion of the table
+ * carries the source document of the table (see {@link #getSourceDocument()}).</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class ConversionEvent {
+
+	private final ConversionPhase phase;
+	private final String tableName;
+	private final PivotField field;
+	private final Document document;
+	private final Document sourceDocument;
+	
+	private final long startTime;
+	private final long duration;
+	
+	private final int rowCount;
+	private final int columnCount;
+	private final long fileSize;
+	
+	// workbook read by the finished READ phase, or null
+	private final WorkBook workBook;
+	
+	/*
+	 * Creates new event, events are created by the converter
+	 */
+	ConversionEvent(ConversionPhase phase, String tableName, PivotField field, Document document,
+			Document sourceDocument, long startTime, long duration, int rowCount, int columnCount,
+			long fileSize, WorkBook workBook) {
+		
+		this.phase = phase;
+		this.tableName = tableName;
+		this.field = field;
+		this.document = document;
+		this.sourceDocument = sourceDocument;
+		this.startTime = startTime;
+		this.duration = duration;
+		this.rowCount = rowCount;
+		this.columnCount = columnCount;
+		this.fileSize = fileSize;
+		this.workBook = workBook;
+	}
+	
+	/**
+	 * @return phase of the conversion
+	 * @since 1.1
+	 */
+	public ConversionPhase getPhase() {
+		return phase;
+	}
+	
+	/**
+	 * @return name of the converted table, or <code>null</code> if
+	 * table has no name, or phase is not related to one table
+	 * (read of the source shared by several tables)
+	 * @since 1.1
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+	
+	/**
+	 * @return field processed in the phase, or <code>null</code>
+	 * if phase is not related to one field
+	 * @since 1.1
+	 */
+	public PivotField getField() {
+		return field;
+	}
+	
+	/**
+	 * @return document read or written in the phase, or <code>null</code>
+	 * if phase is not related to a document
+	 * @since 1.1
+	 */
+	public Document getDocument() {
+		return document;
+	}
+	
+	/**
+	 * @return source document of the converted table, or <code>null</code>
+	 * if converted workbook is not read from a document
+	 * @since 1.1
+	 */
+	public Document getSourceDocument() {
+		return sourceDocument;
+	}
+	
+	/**
+	 * @return start time of the phase, in the terms of {@link System#nanoTime()}
+	 * @since 1.1
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+	
+	/**
+	 * @return duration of the phase in nanoseconds, or -1 if phase
+	 * is just started
+	 * @since 1.1
+	 */
+	public long getDuration() {
+		return duration;
+	}
+	
+	/**
+	 * @return <code>true</code> if this event describes ended phase
+	 * (duration is known)
+	 * @since 1.1
+	 */
+	public boolean isEnded() {
+		return duration >= 0;
+	}
+	
+	/**
+	 * @return number of rows of the source range, or -1 if unknown
+	 * @since 1.1
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+	
+	/**
+	 * @return number of columns of the source range, or -1 if unknown
+	 * @since 1.1
+	 */
+	public int getColumnCount() {
+		return columnCount;
+	}
+	
+	/**
+	 * @return size in bytes of the file read or written in the phase,
+	 * or -1 if unknown
+	 * @since 1.1
+	 */
+	public long getFileSize() {
+		return fileSize;
+	}
+	
+	/**
+	 * Returns workbook read by the finished {@link ConversionPhase#READ} phase,
+	 * for the listeners of this package (see {@link AdmissionController}).
+	 * 
+	 * @return read workbook, or <code>null</code> for other events
+	 * @since 1.1
+	 */
+	WorkBook getWorkBook() {
+		return workBook;
+	}
+	
+	@Override
+	public String toString() {
+		
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append(getPhase());
+		
+		if (getTableName() != null)
+			sb.append(" table='").append(getTableName()).append('\'');
+		
+		if (getField() != null)
+			sb.append(" field='").append(getField().getSource()).append('\'');
+		
+		if (getDocument() != null)
+			sb.append(" path='").append(getDocument().getPath()).append('\'');
+		
+		if (isEnded())
+			sb.append(" duration=").append(getDuration()).append("ns");
+		
+		return sb.toString();
+	}
+}
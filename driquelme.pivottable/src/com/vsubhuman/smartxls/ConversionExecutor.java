@@ -0,0 +1,210 @@
+package com.vsubhuman.smartxls;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.smartxls.WorkBook;
+
+/**
+ * <p>Class provides functionality to run many independent conversions
+ * on a pool of threads.</p>
+ * 
+ * <p>Each submitted job is converted by {@link PivotTableConverter#convert(PivotTable, boolean)},
+ * so every job reads its own {@link WorkBook} from the source document of the table,
+ * and no workbook is shared between threads. Result of every job is available
+ * through its own {@link ConversionResult}, together with CPU time and heap bytes
+ * spent by the job on the thread of the pool (see {@link ConversionResult#getUsage()}).</p>
+ * 
+ * <p>Example:<pre>
+ * ConversionExecutor executor = new ConversionExecutor(8);
+ * try {
+ * 
+ *   List&lt;ConversionResult&gt; results = executor.submitAll(tables, true);
+ *   for (ConversionResult r : results) {
+ *     r.get();
+ *     System.out.println(r.getTable().getName() + ": " + r.getUsage());
+ *   }
+ *     
+ * } finally {
+ *   executor.shutdown();
+ * }</pre>
+ * 
+ * <p><b>Note:</b> the same {@link PivotTable} can be submitted several times,
+ * but it should not be changed while its jobs are running.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class ConversionExecutor {
+
+	// executor service used to run the jobs
+	private final ExecutorService executor;
+	
+	/**
+	 * Create new conversion executor with the number of threads
+	 * equal to the number of available processors.
+	 * 
+	 * @since 1.1
+	 */
+	public ConversionExecutor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Create new conversion executor with specified number of threads.
+	 * 
+	 * @param threads - number of threads to run conversions
+	 * @throws IllegalArgumentException - if number of threads is less than 1
+	 * @since 1.1
+	 */
+	public ConversionExecutor(int threads) throws IllegalArgumentException {
+		
+		if (threads < 1)
+			throw new IllegalArgumentException(
+				"Number of threads cannot be less than 1!");
+		
+		this.executor = Executors.newFixedThreadPool(threads, new ConversionThreadFactory());
+	}
+	
+	/**
+	 * Create new conversion executor that uses specified {@link ExecutorService}
+	 * to run conversions.
+	 * 
+	 * @param executor - executor service to run conversions
+	 * @throws IllegalArgumentException - if executor is <code>null</code>
+	 * @since 1.1
+	 */
+	public ConversionExecutor(ExecutorService executor) throws IllegalArgumentException {
+		
+		if (executor == null)
+			throw new IllegalArgumentException(
+				"Executor service cannot be null!");
+		
+		this.executor = executor;
+	}
+	
+	/**
+	 * Submit conversion of the specified table. Converted state
+	 * will be written into the target document of the table.
+	 * 
+	 * @param table - {@link PivotTable} to use converting configuration from
+	 * @return result of the conversion
+	 * @throws IllegalArgumentException - if table is <code>null</code>
+	 * @see #submit(PivotTable, boolean)
+	 * @since 1.1
+	 */
+	public ConversionResult submit(PivotTable table) throws IllegalArgumentException {
+		
+		return submit(table, true);
+	}
+	
+	/**
+	 * Submit conversion of the specified table. Job will be executed
+	 * by {@link PivotTableConverter#convert(PivotTable, boolean)} method.
+	 * 
+	 * @param table - {@link PivotTable} to use converting configuration from
+	 * @param writeTarget - if <code>true</code> converted state will be saved into
+	 * target document from table
+	 * @return result of the conversion
+	 * @throws IllegalArgumentException - if table is <code>null</code>
+	 * @since 1.1
+	 */
+	public ConversionResult submit(PivotTable table, boolean writeTarget)
+			throws IllegalArgumentException {
+		
+		if (table == null)
+			throw new IllegalArgumentException("Pivot table cannot be null!");
+		
+		ConversionResult result = new ConversionResult(table, writeTarget, null);
+		executor.execute(result);
+		
+		return result;
+	}
+	
+	/**
+	 * Submit conversions of all the specified tables.
+	 * 
+	 * @param tables - list of {@link PivotTable}s to use converting configurations from
+	 * @param writeTarget - if <code>true</code> converted states will be saved into
+	 * target documents from tables
+	 * @return list of the results in the order of the specified tables
+	 * @throws IllegalArgumentException - if list of tables is <code>null</code>
+	 * or contains <code>null</code> table
+	 * @since 1.1
+	 */
+	public List<ConversionResult> submitAll(List<PivotTable> tables, boolean writeTarget)
+			throws IllegalArgumentException {
+		
+		if (tables == null)
+			throw new IllegalArgumentException("List of pivot tables cannot be null!");
+		
+		List<ConversionResult> result = new ArrayList<ConversionResult>(tables.size());
+		for (PivotTable table : tables)
+			result.add(submit(table, writeTarget));
+		
+		return result;
+	}
+	
+	/**
+	 * Initiates shutdown of this executor. Previously submitted jobs
+	 * are executed, but no new jobs will be accepted.
+	 * 
+	 * @since 1.1
+	 */
+	public void shutdown() {
+		
+		executor.shutdown();
+	}
+	
+	/**
+	 * Attempts to stop all running jobs and cancels waiting ones.
+	 * 
+	 * @return list of the jobs that never commenced execution
+	 * @since 1.1
+	 */
+	public List<Runnable> shutdownNow() {
+		
+		return executor.shutdownNow();
+	}
+	
+	/**
+	 * Blocks until all jobs have completed after a shutdown request,
+	 * or the timeout occurs, or the current thread is interrupted.
+	 * 
+	 * @param timeout - maximum time to wait
+	 * @param unit - time unit of the timeout
+	 * @return <code>true</code> if this executor terminated and
+	 * <code>false</code> if the timeout elapsed before termination
+	 * @throws InterruptedException - if interrupted while waiting
+	 * @since 1.1
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		
+		return executor.awaitTermination(timeout, unit);
+	}
+	
+	/*
+	 * Creates daemon threads with recognizable names
+	 */
+	private static class ConversionThreadFactory implements ThreadFactory {
+		
+		private static final AtomicInteger poolCounter = new AtomicInteger();
+		
+		private final int pool = poolCounter.incrementAndGet();
+		private final AtomicInteger threadCounter = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			
+			Thread t = new Thread(r, "pivot-conversion-" + pool + "-" + threadCounter.incrementAndGet());
+			t.setDaemon(true);
+			
+			return t;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package com.vsubhuman.smartxls;
+
+/**
+ * <p>Interface provides functionality to observe phases of
+ * the conversion process.</p>
+ * 
+ * <p>Listener can be registered for all conversions by
+ * {@link PivotTableConverter#addConversionListener(ConversionListener)},
+ * or passed to a single conversion call.</p>
+ * 
+ * <p>Listener is called in the thread that performs conversion. Several
+ * conversions may run at once, so listener registered for all conversions
+ * should be thread-safe. Exception thrown by the listener aborts the conversion.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ * @see ConversionPhase
+ * @see ConversionStatistics
+ */
+public interface ConversionListener {
+
+	/**
+	 * Called when specified phase is started.
+	 * 
+	 * @param event - event of the started phase, without duration
+	 * @since 1.1
+	 */
+	void phaseStarted(ConversionEvent event);
+	
+	/**
+	 * Called when specified phase is successfully finished.
+	 * 
+	 * @param event - event of the finished phase, with duration
+	 * @since 1.1
+	 */
+	void phaseFinished(ConversionEvent event);
+	
+	/**
+	 * Called when specified phase is failed. Every phase that
+	 * contains failed phase is also reported as failed.
+	 * 
+	 * @param event - event of the failed phase, with duration
+	 * @param error - cause of the failure
+	 * @since 1.1
+	 */
+	void phaseFailed(ConversionEvent event, Throwable error);
+}
@@ -0,0 +1,493 @@
+package com.vsubhuman.smartxls;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p>Class collects live metrics of the conversions made by {@link PivotTableConverter}
+ * and of the configurations loaded by {@link XMLProvider}, and exposes them by JMX
+ * (see {@link ConversionMetricsMBean}).</p>
+ * 
+ * <p>Metrics are collected once they are registered:<pre>
+ * ConversionMetrics.register();</pre>
+ * Registered metrics observe all conversions as registered {@link ConversionListener},
+ * and appear in the platform MBean server under the name {@link #OBJECT_NAME}.</p>
+ * 
+ * <p>Counters and histograms don't lock: counters are striped by thread, so
+ * converting threads don't contend on one memory location, and every histogram
+ * bucket is updated atomically. Values read during the conversions are not
+ * a consistent snapshot, but every value is exact once they finish.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class ConversionMetrics implements ConversionMetricsMBean, ConversionListener {
+	
+	/**
+	 * Name of the metrics in the platform MBean server
+	 */
+	public static final String OBJECT_NAME = "com.vsubhuman.smartxls:type=ConversionMetrics";
+	
+	// number of the histogram buckets, the last one is up to 2^38 microseconds
+	private static final int BUCKETS = 40;
+	
+	// registered metrics, or null
+	private static volatile ConversionMetrics instance;
+	
+	private final Counter started = new Counter();
+	private final Counter completed = new Counter();
+	private final Counter failed = new Counter();
+	private final Counter bytesRead = new Counter();
+	private final Counter bytesWritten = new Counter();
+	
+	private final Counter configurationsLoaded = new Counter();
+	private final Counter configurationsFailed = new Counter();
+	private final Counter configurationBytes = new Counter();
+	
+	private final Histogram conversionLatency = new Histogram();
+	private final Histogram configurationLatency = new Histogram();
+	private final Histogram[] readLatency = histograms();
+	private final Histogram[] writeLatency = histograms();
+	
+	/**
+	 * Creates new metrics, not registered anywhere.
+	 * Use {@link #register()} to collect metrics of all
+	 * conversions, or register created metrics manually.
+	 * 
+	 * @since 1.1
+	 */
+	public ConversionMetrics() {}
+	
+	/**
+	 * Registers metrics as listener of all conversions and in the platform MBean
+	 * server, if they aren't registered yet.
+	 * 
+	 * @return registered metrics
+	 * @throws Exception - if metrics cannot be registered in the MBean server
+	 * @since 1.1
+	 */
+	public static synchronized ConversionMetrics register() throws Exception {
+		
+		if (instance != null)
+			return instance;
+		
+		ConversionMetrics metrics = new ConversionMetrics();
+		
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(metrics, new ObjectName(OBJECT_NAME));
+		
+		PivotTableConverter.addConversionListener(metrics);
+		instance = metrics;
+		
+		return metrics;
+	}
+	
+	/**
+	 * Removes metrics registered by {@link #register()}.
+	 * 
+	 * @return <code>true</code> if metrics were removed, and
+	 * <code>false</code> if they were not registered
+	 * @throws Exception - if metrics cannot be removed from the MBean server
+	 * @since 1.1
+	 */
+	public static synchronized boolean unregister() throws Exception {
+		
+		ConversionMetrics metrics = instance;
+		if (metrics == null)
+			return false;
+		
+		instance = null;
+		PivotTableConverter.removeConversionListener(metrics);
+		
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (server.isRegistered(name))
+			server.unregisterMBean(name);
+		
+		return true;
+	}
+	
+	/**
+	 * @return metrics registered by {@link #register()}, or <code>null</code>
+	 * if metrics are not registered
+	 * @since 1.1
+	 */
+	public static ConversionMetrics getInstance() {
+		return instance;
+	}
+	
+	/*
+	 * Conversions
+	 */
+	
+	@Override
+	public void phaseStarted(ConversionEvent event) {
+		
+		if (event.getPhase() == ConversionPhase.CONVERSION)
+			started.add(1);
+	}
+	
+	@Override
+	public void phaseFinished(ConversionEvent event) {
+		
+		switch (event.getPhase()) {
+		
+		case CONVERSION:
+			completed.add(1);
+			conversionLatency.record(event.getDuration());
+			break;
+		case READ:
+			bytesRead.add(Math.max(event.getFileSize(), 0));
+			record(readLatency, event);
+			break;
+		case WRITE:
+			bytesWritten.add(Math.max(event.getFileSize(), 0));
+			record(writeLatency, event);
+			break;
+		default:
+			break;
+		}
+	}
+	
+	@Override
+	public void phaseFailed(ConversionEvent event, Throwable error) {
+		
+		if (event.getPhase() == ConversionPhase.CONVERSION)
+			failed.add(1);
+	}
+	
+	private static void record(Histogram[] histograms, ConversionEvent event) {
+		
+		Document document = event.getDocument();
+		if (document != null && document.getDocumentFormat() != null)
+			histograms[document.getDocumentFormat().ordinal()].record(event.getDuration());
+	}
+	
+	/*
+	 * Configurations
+	 */
+	
+	/**
+	 * Counts configuration loaded by {@link XMLProvider}.
+	 * 
+	 * @param bytes - number of the read bytes
+	 * @param duration - duration of the load in nanoseconds
+	 * @since 1.1
+	 */
+	void configurationLoaded(long bytes, long duration) {
+		
+		configurationsLoaded.add(1);
+		configurationBytes.add(bytes);
+		configurationLatency.record(duration);
+	}
+	
+	/**
+	 * Counts configuration {@link XMLProvider} has failed to load.
+	 * 
+	 * @param bytes - number of the read bytes
+	 * @since 1.1
+	 */
+	void configurationFailed(long bytes) {
+		
+		configurationsFailed.add(1);
+		configurationBytes.add(bytes);
+	}
+	
+	/*
+	 * Management interface
+	 */
+	
+	@Override
+	public long getStartedCount() {
+		return started.sum();
+	}
+	
+	@Override
+	public long getCompletedCount() {
+		return completed.sum();
+	}
+	
+	@Override
+	public long getFailedCount() {
+		return failed.sum();
+	}
+	
+	@Override
+	public long getInFlightCount() {
+		
+		// ended are read first, so count is never negative
+		long ended = completed.sum() + failed.sum();
+		return Math.max(started.sum() - ended, 0);
+	}
+	
+	@Override
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+	
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+	
+	@Override
+	public long getConfigurationLoadCount() {
+		return configurationsLoaded.sum();
+	}
+	
+	@Override
+	public long getConfigurationFailedCount() {
+		return configurationsFailed.sum();
+	}
+	
+	@Override
+	public long getConfigurationBytesRead() {
+		return configurationBytes.sum();
+	}
+	
+	@Override
+	public long[] getLatencyBounds() {
+		
+		long[] bounds = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++)
+			bounds[i] = 1L << i;
+		
+		return bounds;
+	}
+	
+	@Override
+	public long[] getConversionLatencyHistogram() {
+		return conversionLatency.counts();
+	}
+	
+	@Override
+	public long[] getConfigurationLatencyHistogram() {
+		return configurationLatency.counts();
+	}
+	
+	@Override
+	public long[] readLatencyHistogram(String format) throws IllegalArgumentException {
+		return readLatency[ordinal(format)].counts();
+	}
+	
+	@Override
+	public long[] writeLatencyHistogram(String format) throws IllegalArgumentException {
+		return writeLatency[ordinal(format)].counts();
+	}
+	
+	@Override
+	public long readLatencyPercentile(String format, double percentile) throws IllegalArgumentException {
+		return readLatency[ordinal(format)].percentile(percentile);
+	}
+	
+	@Override
+	public long writeLatencyPercentile(String format, double percentile) throws IllegalArgumentException {
+		return writeLatency[ordinal(format)].percentile(percentile);
+	}
+	
+	@Override
+	public void reset() {
+		
+		started.reset();
+		completed.reset();
+		failed.reset();
+		bytesRead.reset();
+		bytesWritten.reset();
+		
+		configurationsLoaded.reset();
+		configurationsFailed.reset();
+		configurationBytes.reset();
+		
+		conversionLatency.reset();
+		configurationLatency.reset();
+		
+		for (int i = 0; i < readLatency.length; i++) {
+			
+			readLatency[i].reset();
+			writeLatency[i].reset();
+		}
+	}
+	
+	private static int ordinal(String format) throws IllegalArgumentException {
+		
+		if (format == null)
+			throw new IllegalArgumentException(
+				"Format cannot be null!");
+		
+		for (DocumentFormat f : DocumentFormat.values()) {
+			
+			if (f.name().equalsIgnoreCase(format.trim()))
+				return f.ordinal();
+		}
+		
+		throw new IllegalArgumentException(
+			"Unknown document format: " + format + "!");
+	}
+	
+	private static Histogram[] histograms() {
+		
+		Histogram[] result = new Histogram[DocumentFormat.values().length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = new Histogram();
+		
+		return result;
+	}
+	
+	/*
+	 * Counter striped by thread. Cells of the stripes are
+	 * 64 bytes apart, so threads don't share cache lines
+	 */
+	private static final class Counter {
+		
+		private static final int STRIPES = 16;
+		private static final int PADDING = 8;
+		
+		private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+		
+		void add(long value) {
+			
+			int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+			cells.addAndGet(stripe * PADDING, value);
+		}
+		
+		long sum() {
+			
+			long sum = 0;
+			for (int i = 0; i < STRIPES; i++)
+				sum += cells.get(i * PADDING);
+			
+			return sum;
+		}
+		
+		void reset() {
+			
+			for (int i = 0; i < STRIPES; i++)
+				cells.set(i * PADDING, 0);
+		}
+	}
+	
+	/*
+	 * Histogram of the durations with power of two
+	 * buckets in microseconds
+	 */
+	private static final class Histogram {
+		
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		
+		void record(long nanos) {
+			
+			long micros = nanos / 1000;
+			int bucket = micros <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+			
+			buckets.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+		}
+		
+		long[] counts() {
+			
+			long[] counts = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++)
+				counts[i] = buckets.get(i);
+			
+			return counts;
+		}
+		
+		long percentile(double percentile) {
+			
+			if (!(percentile >= 0 && percentile <= 100))
+				throw new IllegalArgumentException(
+					"Percentile should be from 0 to 100!");
+			
+			long[] counts = counts();
+			
+			long total = 0;
+			for (long c : counts)
+				total += c;
+			
+			if (total == 0)
+				return 0;
+			
+			long rank = Math.max((long) Math.ceil(total * percentile / 100), 1);
+			for (int i = 0; i < BUCKETS; i++) {
+				
+				rank -= counts[i];
+				if (rank <= 0)
+					return 1L << i;
+			}
+			
+			return 1L << (BUCKETS - 1);
+		}
+		
+		void reset() {
+			
+			for (int i = 0; i < BUCKETS; i++)
+				buckets.set(i, 0);
+		}
+	}
+	
+	/**
+	 * Stream that counts bytes read from the underlying stream.
+	 * 
+	 * @author vsubhuman
+	 * @version 1.1
+	 */
+	static final class CountingInputStream extends FilterInputStream {
+		
+		private long count;
+		
+		/**
+		 * @param in - stream to count
+		 * @since 1.1
+		 */
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+		
+		/**
+		 * @return number of the read bytes
+		 * @since 1.1
+		 */
+		long getCount() {
+			return count;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			
+			int b = super.read();
+			if (b >= 0)
+				count++;
+			
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			
+			int n = super.read(b, off, len);
+			if (n > 0)
+				count += n;
+			
+			return n;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			
+			long skipped = super.skip(n);
+			count += skipped;
+			
+			return skipped;
+		}
+		
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+}
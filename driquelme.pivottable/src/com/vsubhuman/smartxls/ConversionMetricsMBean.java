@@ -0,0 +1,134 @@
+package com.vsubhuman.smartxls;
+
+/**
+ * <p>Management interface of the {@link ConversionMetrics}, exposed by JMX
+ * under the name {@link ConversionMetrics#OBJECT_NAME}.</p>
+ *
+ * <p>Latency histograms have power of two buckets: bucket 0 counts phases shorter
+ * than 1 microsecond, bucket <code>i</code> counts phases from <code>2^(i-1)</code>
+ * to <code>2^i</code> microseconds (see {@link #getLatencyBounds()}). Histograms
+ * by format are selected by the name of the {@link DocumentFormat}.</p>
+ *
+ * @author vsubhuman
+ * @version 1.1
+ */
+public interface ConversionMetricsMBean {
+
+	/**
+	 * @return number of the started conversions
+	 * @since 1.1
+	 */
+	long getStartedCount();
+
+	/**
+	 * @return number of the successfully completed conversions
+	 * @since 1.1
+	 */
+	long getCompletedCount();
+
+	/**
+	 * @return number of the failed conversions
+	 * @since 1.1
+	 */
+	long getFailedCount();
+
+	/**
+	 * @return number of the conversions running right now
+	 * @since 1.1
+	 */
+	long getInFlightCount();
+
+	/**
+	 * @return sum of the sizes of the read source documents in bytes
+	 * @since 1.1
+	 */
+	long getBytesRead();
+
+	/**
+	 * @return sum of the sizes of the written target documents in bytes
+	 * @since 1.1
+	 */
+	long getBytesWritten();
+
+	/**
+	 * @return number of the configurations loaded by {@link XMLProvider}
+	 * @since 1.1
+	 */
+	long getConfigurationLoadCount();
+
+	/**
+	 * @return number of the configurations {@link XMLProvider} has failed to load
+	 * @since 1.1
+	 */
+	long getConfigurationFailedCount();
+
+	/**
+	 * @return number of bytes of the configurations read by {@link XMLProvider}
+	 * @since 1.1
+	 */
+	long getConfigurationBytesRead();
+
+	/**
+	 * @return upper bounds of the buckets of the latency histograms in microseconds
+	 * @since 1.1
+	 */
+	long[] getLatencyBounds();
+
+	/**
+	 * @return histogram of the latencies of the whole conversions
+	 * @since 1.1
+	 */
+	long[] getConversionLatencyHistogram();
+
+	/**
+	 * @return histogram of the latencies of the configuration loads
+	 * @since 1.1
+	 */
+	long[] getConfigurationLatencyHistogram();
+
+	/**
+	 * @param format - name of the format of the source documents
+	 * @return histogram of the latencies of the reads of the documents
+	 * @throws IllegalArgumentException - if format is unknown
+	 * @since 1.1
+	 */
+	long[] readLatencyHistogram(String format) throws IllegalArgumentException;
+
+	/**
+	 * @param format - name of the format of the target documents
+	 * @return histogram of the latencies of the writes of the documents
+	 * @throws IllegalArgumentException - if format is unknown
+	 * @since 1.1
+	 */
+	long[] writeLatencyHistogram(String format) throws IllegalArgumentException;
+
+	/**
+	 * @param format - name of the format of the source documents
+	 * @param percentile - percentile from 0 to 100
+	 * @return upper bound of the bucket that contains specified percentile
+	 * of the read latencies in microseconds, or 0 if nothing is read
+	 * @throws IllegalArgumentException - if format is unknown
+	 * or percentile is out of range
+	 * @since 1.1
+	 */
+	long readLatencyPercentile(String format, double percentile) throws IllegalArgumentException;
+
+	/**
+	 * @param format - name of the format of the target documents
+	 * @param percentile - percentile from 0 to 100
+	 * @return upper bound of the bucket that contains specified percentile
+	 * of the write latencies in microseconds, or 0 if nothing is written
+	 * @throws IllegalArgumentException - if format is unknown
+	 * or percentile is out of range
+	 * @since 1.1
+	 */
+	long writeLatencyPercentile(String format, double percentile) throws IllegalArgumentException;
+
+	/**
+	 * Resets all counters and histograms. Conversions running
+	 * during the reset may be counted partially.
+	 *
+	 * @since 1.1
+	 */
+	void reset();
+}
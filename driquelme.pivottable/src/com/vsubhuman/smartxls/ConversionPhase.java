@@ -0,0 +1,57 @@
+package com.vsubhuman.smartxls;
+
+/**
+ * <p>Enum describes phases of the conversion process, reported
+ * to the {@link ConversionListener}.</p>
+ * 
+ * <p>Phase {@link #CONVERSION} covers the whole conversion, all
+ * other phases are reported inside of it.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public enum ConversionPhase {
+
+	/**
+	 * Whole conversion of one table.
+	 * @since 1.1
+	 */
+	CONVERSION,
+	
+	/**
+	 * Read of the source document ({@link Document#read()}).
+	 * @since 1.1
+	 */
+	READ,
+	
+	/**
+	 * Set of the source range into the pivot model.
+	 * @since 1.1
+	 */
+	SET_LIST,
+	
+	/**
+	 * Creation of one field ({@link PivotField#createField(com.smartxls.BookPivotRange)}),
+	 * including its adding into pivot area.
+	 * @since 1.1
+	 */
+	CREATE_FIELD,
+	
+	/**
+	 * Configuration of one field ({@link PivotField#configureField(com.smartxls.BookPivotField)}).
+	 * @since 1.1
+	 */
+	CONFIGURE_FIELD,
+	
+	/**
+	 * Set of the column widths of the result table.
+	 * @since 1.1
+	 */
+	WIDTH,
+	
+	/**
+	 * Write of the target document ({@link Document#write(com.smartxls.WorkBook)}).
+	 * @since 1.1
+	 */
+	WRITE;
+}
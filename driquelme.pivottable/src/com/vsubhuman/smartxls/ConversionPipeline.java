@@ -0,0 +1,348 @@
+package com.vsubhuman.smartxls;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.smartxls.WorkBook;
+
+/**
+ * <p>Class converts many tables by the pipeline of three stages: reading of the source
+ * documents ({@link Document#read()}), converting ({@link PivotTableConverter#convert(WorkBook, ConversionPlan)})
+ * and writing of the target documents ({@link Document#write(WorkBook)}).</p>
+ * 
+ * <p>Every stage has its own threads, and stages are connected by bounded queues, so next
+ * sources are read and previous targets are written while current tables are converted,
+ * and disk I/O overlaps with converting. Bounded queues limit the number of the workbooks
+ * held in memory at once: reading waits while converting is behind, and converting waits
+ * while writing is behind.</p>
+ * 
+ * <p>Example:<pre>
+ * ConversionPipeline pipeline = new ConversionPipeline(2, 4, 2, 2);
+ * pipeline.convert(tables);</pre>
+ * 
+ * <p>Every stage measures CPU time and heap bytes it spends on the table, and
+ * {@link #convert(List)} returns {@link ResourceUsage} of every table summed
+ * over the stages.</p>
+ * 
+ * <p><b>Note:</b> tables should not be changed while they are converted.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class ConversionPipeline {
+	
+	// marks the end of the jobs in the queue
+	private static final Job END = new Job(null, null);
+	
+	private final int readers;
+	private final int converters;
+	private final int writers;
+	private final int capacity;
+	
+	/**
+	 * Create new pipeline with one reading and one writing thread, converting
+	 * threads by the number of available processors, and queues of 2 workbooks.
+	 * 
+	 * @since 1.1
+	 */
+	public ConversionPipeline() {
+		this(1, Runtime.getRuntime().availableProcessors(), 1, 2);
+	}
+	
+	/**
+	 * Create new pipeline with specified number of threads of every stage.
+	 * 
+	 * @param readers - number of threads reading source documents
+	 * @param converters - number of threads converting tables
+	 * @param writers - number of threads writing target documents
+	 * @param capacity - capacity of the queue between stages, in workbooks
+	 * @throws IllegalArgumentException - if any number is less than 1
+	 * @since 1.1
+	 */
+	public ConversionPipeline(int readers, int converters, int writers, int capacity)
+			throws IllegalArgumentException {
+		
+		if (readers < 1 || converters < 1 || writers < 1)
+			throw new IllegalArgumentException(
+				"Number of threads cannot be less than 1!");
+		
+		if (capacity < 1)
+			throw new IllegalArgumentException(
+				"Capacity of the queue cannot be less than 1!");
+		
+		this.readers = readers;
+		this.converters = converters;
+		this.writers = writers;
+		this.capacity = capacity;
+	}
+	
+	/**
+	 * Converts all specified tables, and writes target document of every table.
+	 * Method returns when all target documents are written. If any table fails,
+	 * pipeline is stopped and the error is thrown.
+	 * 
+	 * @param tables - list of {@link PivotTable}s to use converting configurations from
+	 * @return resources spent on every table by all stages, in the order of the tables
+	 * @throws IllegalArgumentException - if list of tables is <code>null</code>
+	 * or contains <code>null</code> table, or any table is invalid
+	 * @throws IllegalStateException - if source or target document of any table is <code>null</code>
+	 * @throws InterruptedException - if current thread was interrupted
+	 * @throws Exception - if read, converting, or write process has failed
+	 * @since 1.1
+	 */
+	public List<ResourceUsage> convert(List<PivotTable> tables) throws IllegalArgumentException,
+			IllegalStateException, InterruptedException, Exception {
+		
+		if (tables == null)
+			throw new IllegalArgumentException("List of pivot tables cannot be null!");
+		
+		final List<Job> jobs = new ArrayList<Job>(tables.size());
+		List<ResourceUsage> usages = new ArrayList<ResourceUsage>(tables.size());
+		for (PivotTable table : tables) {
+			
+			if (table == null)
+				throw new IllegalArgumentException("Pivot table cannot be null!");
+			
+			if (table.getSourceDocument() == null)
+				throw new IllegalStateException(
+						"Cannot convert table without source document settings!");
+			
+			if (table.getTargetDocument() == null)
+				throw new IllegalStateException(
+						"Cannot write target without target document settings!");
+			
+			Job job = new Job(table, ConversionPlan.compile(table));
+			
+			jobs.add(job);
+			usages.add(job.usage);
+		}
+		
+		if (jobs.isEmpty())
+			return usages;
+		
+		final BlockingQueue<Job> converting = new ArrayBlockingQueue<Job>(capacity);
+		final BlockingQueue<Job> writing = new ArrayBlockingQueue<Job>(capacity);
+		
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger activeReaders = new AtomicInteger(readers);
+		final AtomicInteger activeConverters = new AtomicInteger(converters);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(
+				readers + converters + writers, new PipelineThreadFactory());
+		
+		CompletionService<Void> stages = new ExecutorCompletionService<Void>(executor);
+		try {
+			
+			/*
+			 * Reading
+			 */
+			for (int i = 0; i < readers; i++) {
+				
+				stages.submit(new Callable<Void>() {
+					
+					@Override
+					public Void call() throws Exception {
+						
+						int index;
+						while ((index = next.getAndIncrement()) < jobs.size()) {
+							
+							Job job = jobs.get(index);
+							
+							ResourceUsage.Measurement measurement = job.usage.start();
+							try {
+								job.wb = job.table.getSourceDocument().read();
+							} finally {
+								measurement.stop();
+							}
+							
+							converting.put(job);
+						}
+						
+						if (activeReaders.decrementAndGet() == 0)
+							end(converting, converters);
+						
+						return null;
+					}
+				});
+			}
+			
+			/*
+			 * Converting
+			 */
+			for (int i = 0; i < converters; i++) {
+				
+				stages.submit(new Callable<Void>() {
+					
+					@Override
+					public Void call() throws Exception {
+						
+						Job job;
+						while ((job = converting.take()) != END) {
+							
+							ResourceUsage.Measurement measurement = job.usage.start();
+							try {
+								PivotTableConverter.convert(job.wb, job.plan);
+							} finally {
+								measurement.stop();
+							}
+							
+							writing.put(job);
+						}
+						
+						if (activeConverters.decrementAndGet() == 0)
+							end(writing, writers);
+						
+						return null;
+					}
+				});
+			}
+			
+			/*
+			 * Writing
+			 */
+			for (int i = 0; i < writers; i++) {
+				
+				stages.submit(new Callable<Void>() {
+					
+					@Override
+					public Void call() throws Exception {
+						
+						Job job;
+						while ((job = writing.take()) != END) {
+							
+							ResourceUsage.Measurement measurement = job.usage.start();
+							try {
+								job.table.getTargetDocument().write(job.wb);
+							} finally {
+								measurement.stop();
+							}
+							
+							// workbook is released as soon as it's written
+							job.wb = null;
+						}
+						
+						return null;
+					}
+				});
+			}
+			
+			/*
+			 * Stages are awaited in the order of completion, so failed
+			 * stage stops the pipeline even if other stages are blocked
+			 */
+			for (int i = readers + converters + writers; i > 0; i--) {
+				
+				try {
+					
+					stages.take().get();
+				
+				} catch (ExecutionException e) {
+					
+					Throwable cause = e.getCause();
+					if (cause instanceof Exception)
+						throw (Exception) cause;
+					if (cause instanceof Error)
+						throw (Error) cause;
+					
+					throw e;
+				}
+			}
+		
+		} finally {
+			
+			executor.shutdownNow();
+		}
+		
+		return usages;
+	}
+	
+	/*
+	 * Puts end marks for every thread of the next stage
+	 */
+	private static void end(BlockingQueue<Job> queue, int threads) throws InterruptedException {
+		
+		for (int i = 0; i < threads; i++)
+			queue.put(END);
+	}
+	
+	/**
+	 * @return number of threads reading source documents
+	 * @since 1.1
+	 */
+	public int getReaders() {
+		return readers;
+	}
+	
+	/**
+	 * @return number of threads converting tables
+	 * @since 1.1
+	 */
+	public int getConverters() {
+		return converters;
+	}
+	
+	/**
+	 * @return number of threads writing target documents
+	 * @since 1.1
+	 */
+	public int getWriters() {
+		return writers;
+	}
+	
+	/**
+	 * @return capacity of the queue between stages, in workbooks
+	 * @since 1.1
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/*
+	 * Table passing through the stages
+	 */
+	private static class Job {
+		
+		final PivotTable table;
+		final ConversionPlan plan;
+		final ResourceUsage usage = new ResourceUsage();
+		
+		// workbook is published to the next stage by the queue
+		WorkBook wb;
+		
+		Job(PivotTable table, ConversionPlan plan) {
+			
+			this.table = table;
+			this.plan = plan;
+		}
+	}
+	
+	/*
+	 * Creates daemon threads with recognizable names
+	 */
+	private static class PipelineThreadFactory implements ThreadFactory {
+		
+		private static final AtomicInteger poolCounter = new AtomicInteger();
+		
+		private final int pool = poolCounter.incrementAndGet();
+		private final AtomicInteger threadCounter = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			
+			Thread t = new Thread(r, "pivot-pipeline-" + pool + "-" + threadCounter.incrementAndGet());
+			t.setDaemon(true);
+			
+			return t;
+		}
+	}
+}
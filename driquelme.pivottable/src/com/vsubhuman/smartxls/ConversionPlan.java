@@ -0,0 +1,382 @@
+package com.vsubhuman.smartxls;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.smartxls.WorkBook;
+import com.smartxls.enums.PivotBuiltInStyles;
+import com.vsubhuman.smartxls.SizeUnit.Size;
+
+/**
+ * <p>Class represents compiled, ready to replay, form of the {@link PivotTable}
+ * configuration.</p>
+ * 
+ * <p>Plan is compiled once by {@link #compile(PivotTable)}. Compiling validates
+ * fields of the table, sorts them by the areas they meant to be put into,
+ * and computes column layout of the result table and widths of its columns.
+ * Converting by plan ({@link PivotTableConverter#convert(WorkBook, ConversionPlan)})
+ * only replays these precomputed steps against the {@link WorkBook}.</p>
+ * 
+ * <p>Plan is immutable and can be shared between threads and reused
+ * for any number of conversions.</p>
+ * 
+ * <p><b>Note:</b> plan holds the snapshot of the table settings taken at compile time.
+ * Fields themselves are used by the plan to create SmartXLS fields, so fields
+ * of the table should not be changed after the plan is compiled. If they are
+ * changed - compile new plan.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public final class ConversionPlan {
+
+	/*
+	 * Snapshot of the table settings
+	 */
+	private final int sourceSheet;
+	private final TableRange sourceRange;
+	private final TableCell targetCell;
+	private final String name;
+	private final PivotBuiltInStyles style;
+	private final String dataCaption;
+	
+	private final boolean showDataColumnsOnRow;
+	private final boolean showRowButtons;
+	private final boolean showHeader;
+	private final boolean showTotalRow;
+	private final boolean showTotalCol;
+	
+	// fields sorted by area
+	private final PivotField[] fields;
+	
+	// area of each group of fields, and index of the first field of each group
+	private final PivotArea[] groupAreas;
+	private final int[] groupStarts;
+	
+	// column index of each field in the result table
+	private final int[] columns;
+	
+	// number of fields in the data area
+	private final int dataFieldCount;
+	
+	// width assignments of the fields with specified width
+	private final WidthStep[] widthSteps;
+	
+	/*
+	 * Creates new plan, use compile method
+	 */
+	private ConversionPlan(PivotTable table, PivotField[] fields, PivotArea[] groupAreas,
+			int[] groupStarts, int[] columns, int dataFieldCount, WidthStep[] widthSteps) {
+		
+		this.sourceSheet = table.getSourceSheet();
+		this.sourceRange = table.getSourceRange();
+		this.targetCell = table.getTargetCell();
+		this.name = table.getName();
+		this.style = table.getStyle();
+		this.dataCaption = table.getDataCaption();
+		
+		this.showDataColumnsOnRow = table.isShowDataColumnsOnRow();
+		this.showRowButtons = table.isShowRowButtons();
+		this.showHeader = table.isShowHeader();
+		this.showTotalRow = table.isShowTotalRow();
+		this.showTotalCol = table.isShowTotalCol();
+		
+		this.fields = fields;
+		this.groupAreas = groupAreas;
+		this.groupStarts = groupStarts;
+		this.columns = columns;
+		this.dataFieldCount = dataFieldCount;
+		this.widthSteps = widthSteps;
+	}
+	
+	/**
+	 * Compiles new conversion plan from specified {@link PivotTable}.
+	 * 
+	 * @param table - {@link PivotTable} to compile plan of
+	 * @return new compiled {@link ConversionPlan}
+	 * @throws IllegalArgumentException - if table is <code>null</code>
+	 * @throws IllegalStateException - if any field of the table has no pivot area
+	 * @since 1.1
+	 */
+	public static ConversionPlan compile(PivotTable table) throws IllegalArgumentException, IllegalStateException {
+		
+		if (table == null)
+			throw new IllegalArgumentException("Pivot table cannot be null!");
+		
+		/*
+		 * Fields
+		 */
+		
+		List<PivotField> fieldList = table.getFields();
+		Collections.sort(fieldList, PivotTableConverter.COMPARE_BY_AREA);
+		
+		PivotField[] fields = fieldList.toArray(new PivotField[fieldList.size()]);
+		PivotArea[] areas = new PivotArea[fields.length];
+		
+		int groupCount = 0;
+		int dataFieldCount = 0;
+		
+		for (int i = 0; i < fields.length; i++) {
+			
+			PivotField f = fields[i];
+			
+			PivotArea area = f.getPivotArea();
+			if (area == null) {
+				
+				String sourceField = f.getSource();
+				if (sourceField == null)
+					sourceField = "unknown";
+				
+				throw new IllegalStateException(
+					"Unidentified pivot area for the field: " + sourceField + "!");
+			}
+			
+			if (i == 0 || areas[i - 1] != area)
+				groupCount++;
+			
+			if (area == PivotArea.DATA)
+				dataFieldCount++;
+			
+			areas[i] = area;
+		}
+		
+		/*
+		 * Area groups
+		 */
+		
+		PivotArea[] groupAreas = new PivotArea[groupCount];
+		int[] groupStarts = new int[groupCount + 1];
+		
+		for (int i = 0, group = -1; i < fields.length; i++) {
+			
+			if (i == 0 || areas[i - 1] != areas[i]) {
+				
+				group++;
+				groupAreas[group] = areas[i];
+				groupStarts[group] = i;
+			}
+		}
+		
+		groupStarts[groupCount] = fields.length;
+		
+		/*
+		 * Column layout
+		 */
+		
+		int dataFields = dataFieldCount;
+		if (table.isShowDataColumnsOnRow())
+			dataFields = 0;
+		
+		int[] columns = new int[fields.length];
+		WidthStep[] steps = new WidthStep[fields.length];
+		int stepCount = 0;
+		
+		int column = 0;
+		int firstColumnField = -1;
+		
+		PivotArea lastAddedArea = null;
+		boolean compactRowAdded = false;
+		
+		for (int i = 0; i < fields.length; i++) {
+			
+			PivotField f = fields[i];
+			PivotArea newArea = areas[i];
+			
+			if (newArea == PivotArea.ROW) {
+				
+				if (lastAddedArea == PivotArea.ROW && !compactRowAdded) {
+					
+					column++;
+				}
+				
+				compactRowAdded = f.isFieldCompact();
+			}
+			else if (newArea == PivotArea.COLUMN) {
+				
+				if (firstColumnField < 0) {
+					
+					column++;
+					firstColumnField = column;
+				}
+			}
+			else if (newArea == PivotArea.DATA) {
+				
+				if (lastAddedArea != newArea) {
+					
+					if (firstColumnField < 0) {
+						
+						column++;
+						firstColumnField = column;
+					}
+					else
+						column = firstColumnField;
+				}
+				else if (dataFields > 0) {
+					
+					column++;
+				}
+			}
+			
+			lastAddedArea = newArea;
+			columns[i] = column;
+			
+			/*
+			 * Width
+			 */
+			
+			Size width = f.getColumnWidth();
+			if (width == null)
+				continue;
+			
+			boolean toLastColumn = newArea == PivotArea.COLUMN
+					|| (newArea == PivotArea.DATA && dataFields > 0);
+			
+			int step = newArea == PivotArea.DATA && dataFields > 0 ? dataFields : 1;
+			
+			steps[stepCount++] = new WidthStep(column, width.getActualSize(), toLastColumn, step);
+		}
+		
+		return new ConversionPlan(table, fields, groupAreas, groupStarts,
+				columns, dataFieldCount, Arrays.copyOf(steps, stepCount));
+	}
+	
+	/**
+	 * @return unmodifiable list of the fields of the plan sorted by
+	 * the areas they meant to be put into
+	 * @since 1.1
+	 */
+	public List<PivotField> getFields() {
+		
+		return Collections.unmodifiableList(Arrays.asList(fields));
+	}
+	
+	/**
+	 * @return number of the fields in the plan
+	 * @since 1.1
+	 */
+	public int getFieldCount() {
+		
+		return fields.length;
+	}
+	
+	/**
+	 * @return number of the fields in the data area
+	 * @since 1.1
+	 */
+	public int getDataFieldCount() {
+		
+		return dataFieldCount;
+	}
+	
+	/**
+	 * Returns index of the column of the result table where field
+	 * by specified index (in the order of {@link #getFields()})
+	 * will be placed. Index is relative to the target cell.
+	 * 
+	 * @param index - index of the field
+	 * @return column index of the field
+	 * @since 1.1
+	 */
+	public int getColumn(int index) {
+		
+		return columns[index];
+	}
+	
+	/*
+	 * Package accessors used by converter
+	 */
+	
+	int getSourceSheet() {
+		return sourceSheet;
+	}
+	
+	TableRange getSourceRange() {
+		return sourceRange;
+	}
+	
+	TableCell getTargetCell() {
+		return targetCell;
+	}
+	
+	String getName() {
+		return name;
+	}
+	
+	PivotBuiltInStyles getStyle() {
+		return style;
+	}
+	
+	String getDataCaption() {
+		return dataCaption;
+	}
+	
+	boolean isShowDataColumnsOnRow() {
+		return showDataColumnsOnRow;
+	}
+	
+	boolean isShowRowButtons() {
+		return showRowButtons;
+	}
+	
+	boolean isShowHeader() {
+		return showHeader;
+	}
+	
+	boolean isShowTotalRow() {
+		return showTotalRow;
+	}
+	
+	boolean isShowTotalCol() {
+		return showTotalCol;
+	}
+	
+	PivotField getField(int index) {
+		return fields[index];
+	}
+	
+	int getGroupCount() {
+		return groupAreas.length;
+	}
+	
+	PivotArea getGroupArea(int group) {
+		return groupAreas[group];
+	}
+	
+	int getGroupStart(int group) {
+		return groupStarts[group];
+	}
+	
+	int getGroupEnd(int group) {
+		return groupStarts[group + 1];
+	}
+	
+	int getWidthStepCount() {
+		return widthSteps.length;
+	}
+	
+	WidthStep getWidthStep(int index) {
+		return widthSteps[index];
+	}
+	
+	/*
+	 * Width assignment of one field. Width is set to the column
+	 * of the field and, if field is spread to the last column,
+	 * to every "step" column after it.
+	 */
+	static final class WidthStep {
+		
+		final int column;
+		final int width;
+		final boolean toLastColumn;
+		final int step;
+		
+		WidthStep(int column, int width, boolean toLastColumn, int step) {
+			
+			this.column = column;
+			this.width = width;
+			this.toLastColumn = toLastColumn;
+			this.step = step;
+		}
+	}
+}
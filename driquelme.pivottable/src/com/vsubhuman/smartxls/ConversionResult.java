@@ -0,0 +1,244 @@
+package com.vsubhuman.smartxls;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+import com.smartxls.WorkBook;
+
+/**
+ * <p>Class represents result of the asynchronous conversion started by
+ * {@link PivotTableConverter#convertAsync(PivotTable, boolean, java.util.concurrent.Executor)}.</p>
+ * 
+ * <p>Result is a {@link java.util.concurrent.Future} of the converted {@link WorkBook},
+ * and also notifies {@link ConversionCallback}s when conversion is done, so caller
+ * doesn't have to block on {@link #get()}.</p>
+ * 
+ * <p>Cancelled conversion is stopped at the start of the next phase (see {@link ConversionPhase}):
+ * between read of the source, creation and configuration of the fields, and write
+ * of the target. So abandoned conversion releases its workbook early, though
+ * the phase already running is not interrupted.</p>
+ * 
+ * <p>CPU time and heap bytes allocated by the conversion are available
+ * from {@link #getUsage()}.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class ConversionResult extends FutureTask<WorkBook> {
+	
+	private final PivotTable table;
+	private final ResourceUsage usage = new ResourceUsage();
+	
+	// callbacks to notify, null when they are already notified
+	private List<ConversionCallback> callbacks = new ArrayList<ConversionCallback>(2);
+	
+	/**
+	 * Creates result of the conversion of the specified table.
+	 * 
+	 * @param table - table to convert
+	 * @param writeTarget - if <code>true</code> converted state will be saved into
+	 * target document from table
+	 * @param listener - listener to report phases of the conversion to (optional)
+	 * @since 1.1
+	 */
+	ConversionResult(PivotTable table, boolean writeTarget, ConversionListener listener) {
+		this(table, new ConversionTask(table, writeTarget, listener, null));
+	}
+	
+	/**
+	 * Creates result of the conversion of the specified table, that
+	 * holds permit of the specified semaphore while it's converted.
+	 * 
+	 * @param table - table to convert
+	 * @param writeTarget - if <code>true</code> converted state will be saved into
+	 * target document from table
+	 * @param listener - listener to report phases of the conversion to (optional)
+	 * @param permits - semaphore to acquire before the read of the source
+	 * and release after the conversion (optional)
+	 * @since 1.1
+	 */
+	ConversionResult(PivotTable table, boolean writeTarget, ConversionListener listener, Semaphore permits) {
+		this(table, new ConversionTask(table, writeTarget, listener, permits));
+	}
+	
+	private ConversionResult(PivotTable table, ConversionTask task) {
+		
+		super(task);
+		
+		this.table = table;
+		task.result = this;
+	}
+	
+	/**
+	 * @return converted table
+	 * @since 1.1
+	 */
+	public PivotTable getTable() {
+		return table;
+	}
+	
+	/**
+	 * Returns resources spent by the conversion. Values are
+	 * final once conversion is done (see {@link #isDone()}).
+	 * 
+	 * @return CPU time and allocated bytes of the conversion
+	 * @since 1.1
+	 */
+	public ResourceUsage getUsage() {
+		return usage;
+	}
+	
+	/**
+	 * Adds callback to notify when conversion is done. If conversion
+	 * is already done - callback is notified in the current thread.
+	 * 
+	 * @param callback - callback to add
+	 * @throws IllegalArgumentException - if callback is <code>null</code>
+	 * @since 1.1
+	 */
+	public void addCallback(ConversionCallback callback) throws IllegalArgumentException {
+		
+		if (callback == null)
+			throw new IllegalArgumentException(
+				"Conversion callback cannot be null!");
+		
+		synchronized (this) {
+			
+			if (callbacks != null) {
+				
+				callbacks.add(callback);
+				return;
+			}
+		}
+		
+		notifyCallback(callback);
+	}
+	
+	@Override
+	protected void done() {
+		
+		List<ConversionCallback> list;
+		synchronized (this) {
+			
+			list = callbacks;
+			callbacks = null;
+		}
+		
+		for (ConversionCallback callback : list)
+			notifyCallback(callback);
+	}
+	
+	/*
+	 * Notifies callback about the done conversion
+	 */
+	private void notifyCallback(ConversionCallback callback) {
+		
+		WorkBook wb;
+		try {
+			
+			wb = get();
+		
+		} catch (CancellationException e) {
+			
+			callback.failed(e);
+			return;
+		
+		} catch (ExecutionException e) {
+			
+			callback.failed(e.getCause());
+			return;
+		
+		} catch (InterruptedException e) {
+			
+			// never happens, conversion is done
+			Thread.currentThread().interrupt();
+			callback.failed(e);
+			return;
+		}
+		
+		callback.completed(wb);
+	}
+	
+	/*
+	 * Conversion that checks for cancellation at the start of every phase
+	 */
+	private static class ConversionTask implements Callable<WorkBook>, ConversionListener {
+		
+		private final PivotTable table;
+		private final boolean writeTarget;
+		private final ConversionListener listener;
+		private final Semaphore permits;
+		
+		private ConversionResult result;
+		
+		ConversionTask(PivotTable table, boolean writeTarget, ConversionListener listener, Semaphore permits) {
+			
+			this.table = table;
+			this.writeTarget = writeTarget;
+			this.listener = listener;
+			this.permits = permits;
+		}
+		
+		@Override
+		public WorkBook call() throws Exception {
+			
+			if (permits == null)
+				return convert();
+			
+			permits.acquire();
+			try {
+				
+				return convert();
+			
+			} finally {
+				permits.release();
+			}
+		}
+		
+		/*
+		 * Converts table, measuring the current thread
+		 */
+		private WorkBook convert() throws Exception {
+			
+			ResourceUsage.Measurement measurement = result.usage.start();
+			try {
+				
+				return PivotTableConverter.convert(table, writeTarget, this);
+			
+			} finally {
+				measurement.stop();
+			}
+		}
+		
+		@Override
+		public void phaseStarted(ConversionEvent event) {
+			
+			// exception of the listener aborts the conversion
+			if (result.isCancelled())
+				throw new CancellationException(
+					"Conversion is cancelled!");
+			
+			if (listener != null)
+				listener.phaseStarted(event);
+		}
+		
+		@Override
+		public void phaseFinished(ConversionEvent event) {
+			
+			if (listener != null)
+				listener.phaseFinished(event);
+		}
+		
+		@Override
+		public void phaseFailed(ConversionEvent event, Throwable error) {
+			
+			if (listener != null)
+				listener.phaseFailed(event, error);
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package com.vsubhuman.smartxls;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Class provides service mode for many small I/O bound conversions,
+ * and limits the number of the workbooks in memory.</p>
+ * 
+ * <p>On Java 21 and later every submitted conversion runs on its own virtual thread,
+ * and the number of the workbooks is limited by the semaphore. Permit is acquired
+ * before the source document is read and released when the target document is
+ * written, so thousands of the queued conversions cost almost nothing while they
+ * wait for the permit or for I/O. On earlier versions conversions run on the fixed
+ * pool of the platform threads, one thread for every workbook, and queued conversions
+ * wait in the unbounded queue of the pool without holding threads.</p>
+ * 
+ * <p>Either way at most the specified number of workbooks is converted at once.
+ * Workbooks of the completed conversions are held by their results, so results
+ * of the conversions that write targets should not be kept.</p>
+ * 
+ * <p>Example:<pre>
+ * ConversionService service = new ConversionService(16);
+ * for (PivotTable table : tables)
+ *   service.submit(table, true).addCallback(callback);
+ * 
+ * service.shutdown();</pre>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class ConversionService {
+	
+	private final ExecutorService executor;
+	private final boolean virtual;
+	
+	private final int maxWorkBooks;
+	private final Semaphore permits;
+	
+	/**
+	 * Create new service that converts at most specified
+	 * number of the workbooks at once.
+	 * 
+	 * @param maxWorkBooks - maximal number of the workbooks in memory
+	 * @throws IllegalArgumentException - if number of the workbooks is less than 1
+	 * @since 1.1
+	 */
+	public ConversionService(int maxWorkBooks) throws IllegalArgumentException {
+		
+		if (maxWorkBooks < 1)
+			throw new IllegalArgumentException(
+				"Number of workbooks cannot be less than 1!");
+		
+		ExecutorService executor = createVirtualExecutor();
+		
+		this.virtual = executor != null;
+		this.executor = virtual ? executor : Executors.newFixedThreadPool(maxWorkBooks, new ServiceThreadFactory());
+		this.maxWorkBooks = maxWorkBooks;
+		
+		// threads of the fixed pool are the limit themselves
+		this.permits = virtual ? new Semaphore(maxWorkBooks, true) : null;
+	}
+	
+	/**
+	 * Submit conversion of the specified table. Converted state
+	 * will be written into the target document of the table.
+	 * 
+	 * @param table - {@link PivotTable} to use converting configuration from
+	 * @return result of the conversion
+	 * @throws IllegalArgumentException - if table is <code>null</code>
+	 * @throws java.util.concurrent.RejectedExecutionException - if service is shut down
+	 * @since 1.1
+	 */
+	public ConversionResult submit(PivotTable table) throws IllegalArgumentException {
+		
+		return submit(table, true, null);
+	}
+	
+	/**
+	 * Submit conversion of the specified table. Job will be executed
+	 * by {@link PivotTableConverter#convert(PivotTable, boolean, ConversionListener)}
+	 * method, once the service can convert one more workbook.
+	 * 
+	 * @param table - {@link PivotTable} to use converting configuration from
+	 * @param writeTarget - if <code>true</code> converted state will be saved into
+	 * target document from table
+	 * @param listener - listener to report phases of the conversion to (optional)
+	 * @return result of the conversion
+	 * @throws IllegalArgumentException - if table is <code>null</code>
+	 * @throws java.util.concurrent.RejectedExecutionException - if service is shut down
+	 * @since 1.1
+	 */
+	public ConversionResult submit(PivotTable table, boolean writeTarget, ConversionListener listener)
+			throws IllegalArgumentException {
+		
+		if (table == null)
+			throw new IllegalArgumentException("Pivot table cannot be null!");
+		
+		ConversionResult result = new ConversionResult(table, writeTarget, listener, permits);
+		executor.execute(result);
+		
+		return result;
+	}
+	
+	/**
+	 * @return <code>true</code> if conversions run on virtual threads
+	 * @since 1.1
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+	
+	/**
+	 * @return maximal number of the workbooks in memory
+	 * @since 1.1
+	 */
+	public int getMaxWorkBooks() {
+		return maxWorkBooks;
+	}
+	
+	/**
+	 * @return number of the conversions that wait for the permit
+	 * or in the queue of the pool
+	 * @since 1.1
+	 */
+	public int getWaitingCount() {
+		
+		if (permits == null)
+			return ((ThreadPoolExecutor) executor).getQueue().size();
+		
+		return permits.getQueueLength();
+	}
+	
+	/**
+	 * @return number of the workbooks being converted now
+	 * @since 1.1
+	 */
+	public int getActiveCount() {
+		
+		if (permits == null)
+			return ((ThreadPoolExecutor) executor).getActiveCount();
+		
+		return maxWorkBooks - permits.availablePermits();
+	}
+	
+	/**
+	 * Initiates shutdown of this service. Previously submitted conversions
+	 * are executed, but no new conversions will be accepted.
+	 * 
+	 * @since 1.1
+	 */
+	public void shutdown() {
+		
+		executor.shutdown();
+	}
+	
+	/**
+	 * Attempts to stop all running conversions and cancels waiting ones.
+	 * 
+	 * @return list of the conversions that never commenced execution
+	 * @since 1.1
+	 */
+	public List<Runnable> shutdownNow() {
+		
+		return executor.shutdownNow();
+	}
+	
+	/**
+	 * Blocks until all conversions have completed after a shutdown request,
+	 * or the timeout occurs, or the current thread is interrupted.
+	 * 
+	 * @param timeout - maximum time to wait
+	 * @param unit - time unit of the timeout
+	 * @return <code>true</code> if this service terminated and
+	 * <code>false</code> if the timeout elapsed before termination
+	 * @throws InterruptedException - if interrupted while waiting
+	 * @since 1.1
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		
+		return executor.awaitTermination(timeout, unit);
+	}
+	
+	/*
+	 * Creates executor of the virtual threads (Java 21),
+	 * or returns null if they are not supported
+	 */
+	private static ExecutorService createVirtualExecutor() {
+		
+		try {
+			
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		
+		} catch (Exception e) {
+			
+			return null;
+		}
+	}
+	
+	/*
+	 * Creates daemon threads with recognizable names
+	 */
+	private static class ServiceThreadFactory implements ThreadFactory {
+		
+		private static final AtomicInteger poolCounter = new AtomicInteger();
+		
+		private final int pool = poolCounter.incrementAndGet();
+		private final AtomicInteger threadCounter = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			
+			Thread t = new Thread(r, "pivot-service-" + pool + "-" + threadCounter.incrementAndGet());
+			t.setDaemon(true);
+			
+			return t;
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package com.vsubhuman.smartxls;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>Implementation of {@link ConversionListener} that collects durations
+ * of the finished phases and provides percentiles of them per phase.</p>
+ * 
+ * <p>One instance can be used for a whole batch of conversions, including
+ * conversions running in several threads at once.</p>
+ * 
+ * <p>Example:<pre>
+ * ConversionStatistics stats = new ConversionStatistics();
+ * PivotTableConverter.convert(tables, true, stats);
+ * 
+ * long p95 = stats.getPercentile(ConversionPhase.READ, 95); // nanoseconds
+ * System.out.println(stats);</pre>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class ConversionStatistics implements ConversionListener {
+
+	// collected durations by phase
+	private final Map<ConversionPhase, Durations> durations =
+			new EnumMap<ConversionPhase, Durations>(ConversionPhase.class);
+	
+	/**
+	 * Creates new empty statistics.
+	 * @since 1.1
+	 */
+	public ConversionStatistics() {
+		
+		for (ConversionPhase phase : ConversionPhase.values())
+			durations.put(phase, new Durations());
+	}
+	
+	@Override
+	public void phaseStarted(ConversionEvent event) {}
+	
+	@Override
+	public void phaseFinished(ConversionEvent event) {
+		
+		durations.get(event.getPhase()).add(event.getDuration());
+	}
+	
+	@Override
+	public void phaseFailed(ConversionEvent event, Throwable error) {
+		
+		durations.get(event.getPhase()).fail();
+	}
+	
+	/**
+	 * @param phase - phase to get count of
+	 * @return number of successfully finished phases of the specified type
+	 * @since 1.1
+	 */
+	public int getCount(ConversionPhase phase) {
+		
+		return durations.get(phase).count();
+	}
+	
+	/**
+	 * @param phase - phase to get count of
+	 * @return number of failed phases of the specified type
+	 * @since 1.1
+	 */
+	public int getFailedCount(ConversionPhase phase) {
+		
+		return durations.get(phase).failed();
+	}
+	
+	/**
+	 * @param phase - phase to get total duration of
+	 * @return sum of durations of all finished phases of the
+	 * specified type, in nanoseconds
+	 * @since 1.1
+	 */
+	public long getTotal(ConversionPhase phase) {
+		
+		return durations.get(phase).total();
+	}
+	
+	/**
+	 * Returns specified percentile of durations of the finished phases
+	 * of the specified type (nearest-rank method).
+	 * 
+	 * @param phase - phase to get percentile of
+	 * @param percentile - percentile in range (0, 100]
+	 * @return duration in nanoseconds, or -1 if no phases were finished
+	 * @throws IllegalArgumentException - if percentile is not in range (0, 100]
+	 * @since 1.1
+	 */
+	public long getPercentile(ConversionPhase phase, double percentile) throws IllegalArgumentException {
+		
+		if (!(percentile > 0 && percentile <= 100))
+			throw new IllegalArgumentException(
+				"Percentile should be in range (0, 100]!");
+		
+		long[] sorted = durations.get(phase).sorted();
+		if (sorted.length == 0)
+			return -1;
+		
+		int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+		
+		return sorted[Math.max(rank, 1) - 1];
+	}
+	
+	/**
+	 * @param phase - phase to get percentile of
+	 * @return median duration of the phase in nanoseconds
+	 * @see #getPercentile(ConversionPhase, double)
+	 * @since 1.1
+	 */
+	public long getP50(ConversionPhase phase) {
+		
+		return getPercentile(phase, 50);
+	}
+	
+	/**
+	 * @param phase - phase to get percentile of
+	 * @return 95th percentile of duration of the phase in nanoseconds
+	 * @see #getPercentile(ConversionPhase, double)
+	 * @since 1.1
+	 */
+	public long getP95(ConversionPhase phase) {
+		
+		return getPercentile(phase, 95);
+	}
+	
+	/**
+	 * @param phase - phase to get percentile of
+	 * @return 99th percentile of duration of the phase in nanoseconds
+	 * @see #getPercentile(ConversionPhase, double)
+	 * @since 1.1
+	 */
+	public long getP99(ConversionPhase phase) {
+		
+		return getPercentile(phase, 99);
+	}
+	
+	/**
+	 * Removes all collected durations.
+	 * @since 1.1
+	 */
+	public void reset() {
+		
+		for (Durations d : durations.values())
+			d.reset();
+	}
+	
+	/**
+	 * Returns table of counts and percentiles (in milliseconds) of
+	 * all the phases that were finished at least once.
+	 */
+	@Override
+	public String toString() {
+		
+		StringBuilder sb = new StringBuilder();
+		
+		for (ConversionPhase phase : ConversionPhase.values()) {
+			
+			if (getCount(phase) == 0)
+				continue;
+			
+			sb.append(phase)
+				.append(": count=").append(getCount(phase))
+				.append(", failed=").append(getFailedCount(phase))
+				.append(", p50=").append(millis(getP50(phase)))
+				.append("ms, p95=").append(millis(getP95(phase)))
+				.append("ms, p99=").append(millis(getP99(phase)))
+				.append("ms\n");
+		}
+		
+		return sb.toString();
+	}
+	
+	private static String millis(long nanos) {
+		
+		return String.format(Locale.ROOT, "%.3f", nanos / 1000000.0);
+	}
+	
+	/*
+	 * Growable synchronized list of durations
+	 */
+	private static class Durations {
+		
+		private long[] values = new long[16];
+		private int count;
+		private int failed;
+		private long total;
+		
+		synchronized void add(long duration) {
+			
+			if (count == values.length)
+				values = Arrays.copyOf(values, count * 2);
+			
+			values[count++] = duration;
+			total += duration;
+		}
+		
+		synchronized void fail() {
+			failed++;
+		}
+		
+		synchronized int count() {
+			return count;
+		}
+		
+		synchronized int failed() {
+			return failed;
+		}
+		
+		synchronized long total() {
+			return total;
+		}
+		
+		synchronized long[] sorted() {
+			
+			long[] sorted = Arrays.copyOf(values, count);
+			Arrays.sort(sorted);
+			
+			return sorted;
+		}
+		
+		synchronized void reset() {
+			
+			values = new long[16];
+			count = 0;
+			failed = 0;
+			total = 0;
+		}
+	}
+}
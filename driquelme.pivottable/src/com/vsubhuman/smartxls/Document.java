@@ -12,6 +12,9 @@ import com.smartxls.WorkBook;
  * <p>Class provides functionality to read document as {@link WorkBook},
  * or write specified {@link WorkBook} into file.</p> 
  * 
+ * <p>Documents can be read through the shared {@link WorkBookCache},
+ * see {@link #setWorkBookCache(WorkBookCache)}.</p>
+ * 
  * @author vsubhuman
  * @since 1.0
  */
@@ -25,6 +28,9 @@ public class Document {
 	
 	// password to read or write the document
 	private String password;
+	
+	// cache of the read workbooks, shared by all documents
+	private static volatile WorkBookCache workBookCache;
 
 	/**
 	 * Create new document of the specified format, with specified path.
@@ -103,8 +109,30 @@ public class Document {
 		this.password = password;
 	}
 	
+	/**
+	 * @return cache used to read documents, or <code>null</code>
+	 * if documents are read without cache
+	 * @since 1.1
+	 */
+	public static WorkBookCache getWorkBookCache() {
+		return workBookCache;
+	}
+	
+	/**
+	 * Sets cache used by {@link #read()} of all documents. If cache is
+	 * <code>null</code> - documents are read without cache.
+	 * 
+	 * @param cache - new cache of the read workbooks
+	 * @since 1.1
+	 */
+	public static void setWorkBookCache(WorkBookCache cache) {
+		workBookCache = cache;
+	}
+	
 	/**
 	 * Read this document as {@link WorkBook} and return result.
+	 * If {@link WorkBookCache} is set, workbook is copied from the cache
+	 * while file of the document is not changed.
 	 * 
 	 * @return {@link WorkBook} read from the file of this document
 	 * @throws IllegalStateException - if format or the path of
@@ -121,6 +149,10 @@ public class Document {
 			throw new IllegalStateException(
 				"Cannot read document without format of a path!");
 		
+		WorkBookCache cache = workBookCache;
+		if (cache != null)
+			return cache.read(this);
+		
 		return format.read(path, getPassword());
 	}
 	
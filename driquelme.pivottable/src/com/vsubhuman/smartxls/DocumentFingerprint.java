@@ -0,0 +1,130 @@
+package com.vsubhuman.smartxls;
+
+import java.io.File;
+
+/**
+ * <p>Class identifies the content of the {@link Document} file: canonical path,
+ * format and password of the document, and time of the last modification
+ * and length of the file.</p>
+ * 
+ * <p>Fingerprints of the document are equal while the file is not changed,
+ * so fingerprint can be used as a key of the cache of the read documents.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public final class DocumentFingerprint {
+	
+	private final String path;
+	private final DocumentFormat format;
+	private final String password;
+	private final long lastModified;
+	private final long length;
+	
+	private DocumentFingerprint(String path, DocumentFormat format, String password, long lastModified, long length) {
+		
+		this.path = path;
+		this.format = format;
+		this.password = password;
+		this.lastModified = lastModified;
+		this.length = length;
+	}
+	
+	/**
+	 * Creates fingerprint of the current state of the file of the specified document.
+	 * 
+	 * @param doc - document to create fingerprint of
+	 * @return fingerprint of the document
+	 * @throws IllegalArgumentException - if document is <code>null</code>
+	 * @throws IllegalStateException - if format or path of the document is <code>null</code>,
+	 * or file of the document doesn't exist
+	 * @throws Exception - if canonical path of the file cannot be resolved
+	 * @since 1.1
+	 */
+	public static DocumentFingerprint create(Document doc) throws IllegalArgumentException,
+			IllegalStateException, Exception {
+		
+		if (doc == null)
+			throw new IllegalArgumentException(
+				"Document cannot be null!");
+		
+		if (doc.getDocumentFormat() == null || doc.getPath() == null)
+			throw new IllegalStateException(
+				"Cannot create fingerprint of document without format or path!");
+		
+		File file = new File(doc.getPath());
+		if (!file.isFile())
+			throw new IllegalStateException(
+				"Document file '" + doc.getPath() + "' doesn't exist!");
+		
+		return new DocumentFingerprint(file.getCanonicalPath(), doc.getDocumentFormat(),
+				doc.getPassword(), file.lastModified(), file.length());
+	}
+	
+	/**
+	 * @return canonical path of the file
+	 * @since 1.1
+	 */
+	public String getPath() {
+		return path;
+	}
+	
+	/**
+	 * @return format of the document
+	 * @since 1.1
+	 */
+	public DocumentFormat getFormat() {
+		return format;
+	}
+	
+	/**
+	 * @return time of the last modification of the file
+	 * @since 1.1
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+	
+	/**
+	 * @return length of the file in bytes
+	 * @since 1.1
+	 */
+	public long getLength() {
+		return length;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		
+		if (this == obj)
+			return true;
+		
+		if (obj == null || obj.getClass() != getClass())
+			return false;
+		
+		DocumentFingerprint f = (DocumentFingerprint) obj;
+		
+		return f.format == format && f.lastModified == lastModified && f.length == length
+				&& f.path.equals(path)
+				&& (f.password == null ? password == null : f.password.equals(password));
+	}
+	
+	@Override
+	public int hashCode() {
+		
+		int hash = path.hashCode();
+		hash = hash * 31 + format.hashCode();
+		hash = hash * 31 + (password == null ? 0 : password.hashCode());
+		hash = hash * 31 + (int) (lastModified ^ (lastModified >>> 32));
+		hash = hash * 31 + (int) (length ^ (length >>> 32));
+		
+		return hash;
+	}
+	
+	@Override
+	public String toString() {
+		
+		// password is not shown
+		return format + ":" + path + " (" + length + " bytes, modified " + lastModified + ")";
+	}
+}
@@ -1,5 +1,7 @@
 package com.vsubhuman.smartxls;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.smartxls.BookPivotField;
 import com.smartxls.BookPivotRange;
 
@@ -41,9 +43,10 @@ public class FormulaField extends DataField {
 	private static final String TMP_NAME = "_formula";
 	
 	/*
-	 * Counter used to name formula fields without valid name
+	 * Counter used to name formula fields without valid name.
+	 * Tables may be converted in several threads at once.
 	 */
-	private static int noNameCounter;
+	private static final AtomicInteger noNameCounter = new AtomicInteger();
 	
 	// formula of this field
 	private String formula;
@@ -134,7 +137,7 @@ public class FormulaField extends DataField {
 
 		String name = getName();
 		if (name == null)
-			name = ++noNameCounter + TMP_NAME;
+			name = noNameCounter.incrementAndGet() + TMP_NAME;
 		else
 			name = name + TMP_NAME;
 		
@@ -0,0 +1,157 @@
+package com.vsubhuman.smartxls;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.smartxls.WorkBook;
+
+/**
+ * <p>Class reports phases of one conversion to a {@link ConversionListener}.</p>
+ * 
+ * <p>Tracker remembers started phases, so when conversion fails all
+ * unfinished phases are reported as failed by one call of {@link #fail(Throwable)}.
+ * If tracker has no listener - all methods do nothing.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+final class PhaseTracker {
+
+	private final ConversionListener listener;
+	private final String tableName;
+	private final Document sourceDocument;
+	
+	private int rowCount = -1;
+	private int columnCount = -1;
+	
+	// started and not finished phases
+	private final List<ConversionEvent> open = new ArrayList<ConversionEvent>(4);
+	
+	/**
+	 * Creates new tracker for the conversion of the table with specified name.
+	 * 
+	 * @param listener - listener to report phases to (optional)
+	 * @param tableName - name of the table (optional)
+	 * @param sourceDocument - source document of the table, reported
+	 * with every event (optional)
+	 * @since 1.1
+	 */
+	PhaseTracker(ConversionListener listener, String tableName, Document sourceDocument) {
+		
+		this.listener = listener;
+		this.tableName = tableName;
+		this.sourceDocument = sourceDocument;
+	}
+	
+	/**
+	 * @return <code>true</code> if this tracker reports phases to a listener
+	 * @since 1.1
+	 */
+	boolean isEnabled() {
+		return listener != null;
+	}
+	
+	/**
+	 * Sets size of the source range, reported with every next event.
+	 * 
+	 * @param rowCount - number of rows of the source range
+	 * @param columnCount - number of columns of the source range
+	 * @since 1.1
+	 */
+	void setSourceSize(int rowCount, int columnCount) {
+		
+		this.rowCount = rowCount;
+		this.columnCount = columnCount;
+	}
+	
+	/**
+	 * Reports start of the specified phase.
+	 * 
+	 * @param phase - started phase
+	 * @param field - processed field (optional)
+	 * @param document - processed document (optional)
+	 * @return started event to pass into {@link #finish(ConversionEvent)},
+	 * or <code>null</code> if tracker has no listener
+	 * @since 1.1
+	 */
+	ConversionEvent start(ConversionPhase phase, PivotField field, Document document) {
+		
+		if (listener == null)
+			return null;
+		
+		ConversionEvent event = new ConversionEvent(phase, tableName, field, document,
+				sourceDocument, System.nanoTime(), -1, rowCount, columnCount, -1, null);
+		
+		open.add(event);
+		listener.phaseStarted(event);
+		
+		return event;
+	}
+	
+	/**
+	 * Reports successful end of the specified phase.
+	 * 
+	 * @param started - event returned by {@link #start(ConversionPhase, PivotField, Document)}
+	 * @since 1.1
+	 */
+	void finish(ConversionEvent started) {
+		finish(started, null);
+	}
+	
+	/**
+	 * Reports successful end of the specified phase, that has read specified workbook.
+	 * 
+	 * @param started - event returned by {@link #start(ConversionPhase, PivotField, Document)}
+	 * @param wb - workbook read by the phase (optional)
+	 * @since 1.1
+	 */
+	void finish(ConversionEvent started, WorkBook wb) {
+		
+		if (started == null)
+			return;
+		
+		open.remove(started);
+		listener.phaseFinished(end(started, wb));
+	}
+	
+	/**
+	 * Reports failure of all started and not finished phases,
+	 * from the last started to the first.
+	 * 
+	 * @param error - cause of the failure
+	 * @since 1.1
+	 */
+	void fail(Throwable error) {
+		
+		if (listener == null)
+			return;
+		
+		while (!open.isEmpty()) {
+			
+			ConversionEvent started = open.remove(open.size() - 1);
+			listener.phaseFailed(end(started, null), error);
+		}
+	}
+	
+	/*
+	 * Creates event of the ended phase
+	 */
+	private ConversionEvent end(ConversionEvent started, WorkBook wb) {
+		
+		long duration = System.nanoTime() - started.getStartTime();
+		
+		long fileSize = -1;
+		Document document = started.getDocument();
+		if (document != null && document.getPath() != null) {
+			
+			File file = new File(document.getPath());
+			if (file.isFile())
+				fileSize = file.length();
+		}
+		
+		return new ConversionEvent(started.getPhase(), started.getTableName(),
+				started.getField(), document, sourceDocument, started.getStartTime(),
+				duration, rowCount, columnCount, fileSize, wb);
+	}
+}
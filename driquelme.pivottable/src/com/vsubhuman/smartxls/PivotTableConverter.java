@@ -1,8 +1,13 @@
 package com.vsubhuman.smartxls;
 
-import java.util.Collections; 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 import com.smartxls.BookPivotArea;
 import com.smartxls.BookPivotField;
@@ -10,7 +15,6 @@ import com.smartxls.BookPivotRange;
 import com.smartxls.BookPivotRangeModel;
 import com.smartxls.WorkBook;
 import com.smartxls.enums.PivotBuiltInStyles;
-import com.vsubhuman.smartxls.SizeUnit.Size;
 
 /**
  * <p>Class provides functionality to convert specified existing {@link WorkBook}
@@ -19,11 +23,47 @@ import com.vsubhuman.smartxls.SizeUnit.Size;
  * <p>Also provides functionality to use {@link Document} settings from {@link PivotTable}
  * to automatically read source document and write target document.</p>
  * 
+ * <p>Phases of every conversion can be observed by {@link ConversionListener}s,
+ * registered for all conversions or passed to a single conversion call.</p>
+ * 
  * @author vsubhuman
  * @version 1.0
  */
 public class PivotTableConverter {
 
+	// listeners registered for all conversions
+	private static final CopyOnWriteArrayList<ConversionListener> listeners =
+			new CopyOnWriteArrayList<ConversionListener>();
+	
+	/**
+	 * Registers specified listener to observe all conversions
+	 * made by this class. Listener registered twice is called once.
+	 * 
+	 * @param listener - listener to register
+	 * @throws IllegalArgumentException - if listener is <code>null</code>
+	 * @since 1.1
+	 */
+	public static void addConversionListener(ConversionListener listener) throws IllegalArgumentException {
+		
+		if (listener == null)
+			throw new IllegalArgumentException("Conversion listener cannot be null!");
+		
+		listeners.addIfAbsent(listener);
+	}
+	
+	/**
+	 * Removes specified listener registered by {@link #addConversionListener(ConversionListener)}.
+	 * 
+	 * @param listener - listener to remove
+	 * @return <code>true</code> if listener was removed, and <code>false</code>
+	 * if it was not registered
+	 * @since 1.1
+	 */
+	public static boolean removeConversionListener(ConversionListener listener) {
+		
+		return listeners.remove(listener);
+	}
+
 	/**
 	 * <p>Convert documents using configuration of the specified {@link PivotTable}.
 	 * Opens document described as source document of the table, converts it
@@ -63,6 +103,30 @@ public class PivotTableConverter {
 	 */
 	public static WorkBook convert(PivotTable table, boolean writeTarget) throws IllegalStateException, Exception {
 		
+		return convert(table, writeTarget, null);
+	}
+	
+	/**
+	 * <p>Convert documents using configuration of the specified {@link PivotTable},
+	 * the same way as {@link #convert(PivotTable, boolean)} does, and report phases
+	 * of the conversion to the specified listener.</p>
+	 * 
+	 * <p>Listener is called in addition to the listeners registered
+	 * by {@link #addConversionListener(ConversionListener)}.</p>
+	 * 
+	 * @param table - {@link PivotTable} to use converting configuration from
+	 * @param writeTarget - if <code>true</code> converted state will be saved into
+	 * target document from table
+	 * @param listener - listener to report phases of the conversion to (optional)
+	 * @return {@link WorkBook} read from source document and converted by specified configuration
+	 * @throws IllegalStateException if source document is <code>null</code> or if writeTarget
+	 * parameter is <code>true</code> and target document is <code>null</code>
+	 * @throws Exception if read, converting, or write process has failed
+	 * @since 1.1
+	 */
+	public static WorkBook convert(PivotTable table, boolean writeTarget, ConversionListener listener)
+			throws IllegalStateException, Exception {
+		
 		if (table == null)
 			throw new IllegalArgumentException("Pivot table cannot be null!");
 
@@ -77,20 +141,317 @@ public class PivotTableConverter {
 			throw new IllegalStateException(
 					"Cannot write target without target document settings!");
 		
-		WorkBook wb = sourceDocument.read();
+		PhaseTracker tracker = createTracker(listener, table.getName(), sourceDocument);
+		try {
+			
+			ConversionEvent conversion = tracker.start(ConversionPhase.CONVERSION, null, null);
+			
+			WorkBook wb = read(sourceDocument, tracker);
+			
+			convert(wb, ConversionPlan.compile(table), tracker);
+			
+			if (writeTarget)
+				write(wb, targetDocument, tracker);
+			
+			tracker.finish(conversion);
+			
+			return wb;
+			
+		} catch (Exception e) {
+			
+			tracker.fail(e);
+			throw e;
+			
+		} catch (Error e) {
+			
+			tracker.fail(e);
+			throw e;
+		}
+	}
+	
+	/**
+	 * <p>Convert documents using configuration of the specified {@link PivotTable}
+	 * the same way as {@link #convert(PivotTable)} does, unless the result of the same
+	 * configuration and the same source document is cached.</p>
+	 * 
+	 * <p>If specified cache contains the result (see {@link ResultCache#getKey(PivotTable)}),
+	 * it's copied into the target document and table is not converted. Otherwise table
+	 * is converted, and written target document is stored into the cache.</p>
+	 * 
+	 * @param table - {@link PivotTable} to use converting configuration from
+	 * @param cache - cache of the converted documents
+	 * @return <code>true</code> if target document was copied from the cache,
+	 * or <code>false</code> if table was converted
+	 * @throws IllegalArgumentException if table or cache is <code>null</code>
+	 * @throws IllegalStateException if source or target document is <code>null</code>,
+	 * or file of the source document doesn't exist
+	 * @throws Exception if read, converting, write or caching process has failed
+	 * @since 1.1
+	 */
+	public static boolean convertCached(PivotTable table, ResultCache cache)
+			throws IllegalArgumentException, IllegalStateException, Exception {
 		
-		convert(wb, table);
+		if (table == null)
+			throw new IllegalArgumentException("Pivot table cannot be null!");
 		
-		if (writeTarget)
-			targetDocument.write(wb);
+		if (cache == null)
+			throw new IllegalArgumentException("Result cache cannot be null!");
 		
-		return wb;
+		Document targetDocument = table.getTargetDocument();
+		if (targetDocument == null)
+			throw new IllegalStateException(
+					"Cannot write target without target document settings!");
+		
+		// key of the source state before the conversion
+		String key = cache.getKey(table);
+		
+		if (cache.restore(key, targetDocument))
+			return true;
+		
+		convert(table, true);
+		cache.store(key, targetDocument);
+		
+		return false;
+	}
+	
+	/**
+	 * <p>Starts conversion of the documents using configuration of the specified
+	 * {@link PivotTable} by specified executor, the same way as {@link #convert(PivotTable, boolean)}
+	 * does, and returns without waiting for the conversion.</p>
+	 * 
+	 * <p>Returned result can be waited for, observed by {@link ConversionCallback}s,
+	 * or cancelled: cancelled conversion is stopped at the start of its next phase.</p>
+	 * 
+	 * @param table - {@link PivotTable} to use converting configuration from
+	 * @param writeTarget - if <code>true</code> converted state will be saved into
+	 * target document from table
+	 * @param executor - executor to run the conversion
+	 * @return result of the started conversion
+	 * @throws IllegalArgumentException if table or executor is <code>null</code>
+	 * @throws java.util.concurrent.RejectedExecutionException if executor
+	 * doesn't accept the conversion
+	 * @since 1.1
+	 */
+	public static ConversionResult convertAsync(PivotTable table, boolean writeTarget, Executor executor)
+			throws IllegalArgumentException {
+		
+		return convertAsync(table, writeTarget, null, executor);
+	}
+	
+	/**
+	 * <p>Starts conversion of the documents using configuration of the specified
+	 * {@link PivotTable} by specified executor, the same way as
+	 * {@link #convertAsync(PivotTable, boolean, Executor)} does, and reports phases
+	 * of the conversion to the specified listener.</p>
+	 * 
+	 * @param table - {@link PivotTable} to use converting configuration from
+	 * @param writeTarget - if <code>true</code> converted state will be saved into
+	 * target document from table
+	 * @param listener - listener to report phases of the conversion to (optional)
+	 * @param executor - executor to run the conversion
+	 * @return result of the started conversion
+	 * @throws IllegalArgumentException if table or executor is <code>null</code>
+	 * @throws java.util.concurrent.RejectedExecutionException if executor
+	 * doesn't accept the conversion
+	 * @since 1.1
+	 */
+	public static ConversionResult convertAsync(PivotTable table, boolean writeTarget,
+			ConversionListener listener, Executor executor) throws IllegalArgumentException {
+		
+		if (table == null)
+			throw new IllegalArgumentException("Pivot table cannot be null!");
+		
+		if (executor == null)
+			throw new IllegalArgumentException("Executor cannot be null!");
+		
+		ConversionResult result = new ConversionResult(table, writeTarget, listener);
+		executor.execute(result);
+		
+		return result;
+	}
+	
+	/**
+	 * <p>Convert documents using configurations of all the specified {@link PivotTable}s.
+	 * Works the same way as {@link #convert(List, boolean)} with <code>writeTarget</code>
+	 * parameter set to <code>true</code>.</p>
+	 * 
+	 * @param tables - list of {@link PivotTable}s to use converting configurations from
+	 * @return list of converted {@link WorkBook}s in the order of the specified tables
+	 * @throws IllegalStateException if source or target document of any table is <code>null</code>
+	 * @throws Exception if read, converting, or write process has failed
+	 * @see #convert(List, boolean)
+	 * @since 1.1
+	 */
+	public static List<WorkBook> convert(List<PivotTable> tables) throws IllegalStateException, Exception {
+		
+		return convert(tables, true);
+	}
+	
+	/**
+	 * <p>Convert documents using configurations of all the specified {@link PivotTable}s.</p>
+	 * 
+	 * <p>Tables are grouped by their source documents (documents with the same
+	 * format, path and password are considered the same), and each source document
+	 * is read only once. Every table of the group is converted on its own copy
+	 * of the read {@link WorkBook}, so tables don't affect each other. If writeTarget
+	 * parameter is <code>true</code> - each converted state is written into the
+	 * target document of its table.</p>
+	 * 
+	 * <p><b>Note:</b> source document required to be set in every table.
+	 * If writeTarget parameter is <code>true</code> - target documents
+	 * are also required.</p>
+	 * 
+	 * @param tables - list of {@link PivotTable}s to use converting configurations from
+	 * @param writeTarget - if <code>true</code> converted states will be saved into
+	 * target documents from tables
+	 * @return list of converted {@link WorkBook}s in the order of the specified tables
+	 * @throws IllegalArgumentException if list of tables is <code>null</code> or contains
+	 * <code>null</code> table
+	 * @throws IllegalStateException if source document of any table is <code>null</code> or
+	 * if writeTarget parameter is <code>true</code> and target document of any table is <code>null</code>
+	 * @throws Exception if read, converting, or write process has failed
+	 * @since 1.1
+	 */
+	public static List<WorkBook> convert(List<PivotTable> tables, boolean writeTarget)
+			throws IllegalArgumentException, IllegalStateException, Exception {
+		
+		return convert(tables, writeTarget, null);
+	}
+	
+	/**
+	 * <p>Convert documents using configurations of all the specified {@link PivotTable}s,
+	 * the same way as {@link #convert(List, boolean)} does, and report phases
+	 * of the conversions to the specified listener.</p>
+	 * 
+	 * <p>Read of the source document shared by several tables is reported
+	 * outside of their conversion phases and without table name.</p>
+	 * 
+	 * @param tables - list of {@link PivotTable}s to use converting configurations from
+	 * @param writeTarget - if <code>true</code> converted states will be saved into
+	 * target documents from tables
+	 * @param listener - listener to report phases of the conversions to (optional)
+	 * @return list of converted {@link WorkBook}s in the order of the specified tables
+	 * @throws IllegalArgumentException if list of tables is <code>null</code> or contains
+	 * <code>null</code> table
+	 * @throws IllegalStateException if source document of any table is <code>null</code> or
+	 * if writeTarget parameter is <code>true</code> and target document of any table is <code>null</code>
+	 * @throws Exception if read, converting, or write process has failed
+	 * @since 1.1
+	 */
+	public static List<WorkBook> convert(List<PivotTable> tables, boolean writeTarget,
+			ConversionListener listener) throws IllegalArgumentException, IllegalStateException, Exception {
+		
+		if (tables == null)
+			throw new IllegalArgumentException("List of pivot tables cannot be null!");
+		
+		/*
+		 * Group tables by source document
+		 */
+		
+		Map<DocumentKey, List<Integer>> groups = new LinkedHashMap<DocumentKey, List<Integer>>();
+		
+		for (int i = 0; i < tables.size(); i++) {
+			
+			PivotTable table = tables.get(i);
+			if (table == null)
+				throw new IllegalArgumentException("Pivot table cannot be null!");
+			
+			Document sourceDocument = table.getSourceDocument();
+			if (sourceDocument == null)
+				throw new IllegalStateException(
+						"Cannot convert table without source document settings!");
+			
+			if (writeTarget && table.getTargetDocument() == null)
+				throw new IllegalStateException(
+						"Cannot write target without target document settings!");
+			
+			DocumentKey key = new DocumentKey(sourceDocument);
+			List<Integer> group = groups.get(key);
+			if (group == null) {
+				
+				group = new ArrayList<Integer>();
+				groups.put(key, group);
+			}
+			
+			group.add(i);
+		}
+		
+		/*
+		 * Read each source once and convert all tables of the group
+		 */
+		
+		WorkBook[] result = new WorkBook[tables.size()];
+		
+		for (Map.Entry<DocumentKey, List<Integer>> e : groups.entrySet()) {
+			
+			List<Integer> group = e.getValue();
+			
+			PhaseTracker readTracker = createTracker(listener, null, e.getKey().document);
+			WorkBook source;
+			try {
+				
+				source = read(e.getKey().document, readTracker);
+				
+			} catch (Exception ex) {
+				
+				readTracker.fail(ex);
+				throw ex;
+				
+			} catch (Error ex) {
+				
+				readTracker.fail(ex);
+				throw ex;
+			}
+			
+			for (int i = 0; i < group.size(); i++) {
+				
+				int index = group.get(i);
+				PivotTable table = tables.get(index);
+				
+				PhaseTracker tracker = createTracker(listener, table.getName(), table.getSourceDocument());
+				try {
+					
+					ConversionEvent conversion = tracker.start(ConversionPhase.CONVERSION, null, null);
+					
+					/*
+					 * Last table of the group gets original workbook,
+					 * all copies are made before it is changed
+					 */
+					WorkBook wb = i == group.size() - 1 ? source : copy(source);
+					
+					convert(wb, ConversionPlan.compile(table), tracker);
+					
+					if (writeTarget)
+						write(wb, table.getTargetDocument(), tracker);
+					
+					tracker.finish(conversion);
+					
+					result[index] = wb;
+					
+				} catch (Exception ex) {
+					
+					tracker.fail(ex);
+					throw ex;
+					
+				} catch (Error ex) {
+					
+					tracker.fail(ex);
+					throw ex;
+				}
+			}
+		}
+		
+		return Arrays.asList(result);
 	}
 	
 	/**
 	 * <p>Convert specified {@link WorkBook} by configuration described in specified
 	 * {@link PivotTable}.</p>
 	 * 
+	 * <p>Configuration is compiled into {@link ConversionPlan} for this call only.
+	 * If the same table is converted many times - compile the plan once
+	 * and use {@link #convert(WorkBook, ConversionPlan)}.</p>
+	 * 
 	 * @param source - {@link WorkBook} to convert
 	 * @param table - {@link PivotTable} to use configuration from
 	 * @throws IllegalArgumentException - if either workbook or pivot table is <code>null</code>
@@ -104,12 +465,79 @@ public class PivotTableConverter {
 		
 		if (table == null)
 			throw new IllegalArgumentException("Pivot table cannot be null!");
+		
+		convert(source, ConversionPlan.compile(table));
+	}
+	
+	/**
+	 * <p>Convert specified {@link WorkBook} by specified compiled {@link ConversionPlan}.</p>
+	 * 
+	 * @param source - {@link WorkBook} to convert
+	 * @param plan - {@link ConversionPlan} to replay
+	 * @throws IllegalArgumentException - if either workbook or plan is <code>null</code>
+	 * @throws Exception - if converting process has failed
+	 * @see ConversionPlan#compile(PivotTable)
+	 * @since 1.1
+	 */
+	public static void convert(WorkBook source, ConversionPlan plan) throws IllegalArgumentException, Exception {
+
+		convert(source, plan, (ConversionListener) null);
+	}
+	
+	/**
+	 * <p>Convert specified {@link WorkBook} by specified compiled {@link ConversionPlan},
+	 * and report phases of the conversion to the specified listener.</p>
+	 * 
+	 * <p>Listener is called in addition to the listeners registered
+	 * by {@link #addConversionListener(ConversionListener)}.</p>
+	 * 
+	 * @param source - {@link WorkBook} to convert
+	 * @param plan - {@link ConversionPlan} to replay
+	 * @param listener - listener to report phases of the conversion to (optional)
+	 * @throws IllegalArgumentException - if either workbook or plan is <code>null</code>
+	 * @throws Exception - if converting process has failed
+	 * @since 1.1
+	 */
+	public static void convert(WorkBook source, ConversionPlan plan, ConversionListener listener)
+			throws IllegalArgumentException, Exception {
+		
+		if (source == null)
+			throw new IllegalArgumentException("Source workbook cannot be null!");
+		
+		if (plan == null)
+			throw new IllegalArgumentException("Conversion plan cannot be null!");
+		
+		PhaseTracker tracker = createTracker(listener, plan.getName(), null);
+		try {
+			
+			ConversionEvent conversion = tracker.start(ConversionPhase.CONVERSION, null, null);
+			
+			convert(source, plan, tracker);
+			
+			tracker.finish(conversion);
+			
+		} catch (Exception e) {
+			
+			tracker.fail(e);
+			throw e;
+			
+		} catch (Error e) {
+			
+			tracker.fail(e);
+			throw e;
+		}
+	}
+	
+	/*
+	 * Converts workbook by the plan, reporting every phase to the tracker
+	 */
+	private static void convert(WorkBook source, ConversionPlan plan, PhaseTracker tracker) throws Exception {
 
 		/*
 		 * Source sheet
 		 */
 		
-		int sourceSheet = table.getSourceSheet();
+		int sourceSheet = plan.getSourceSheet();
 		if (sourceSheet >= 0)
 			source.setSheet(sourceSheet);
 		else
@@ -119,24 +547,37 @@ public class PivotTableConverter {
 		 * Source range
 		 */
 		
-		TableRange sourceRange = table.getSourceRange();
+		TableRange sourceRange = plan.getSourceRange();
 		if (sourceRange == null)
 			sourceRange = TableRange.createRange(source);
 		
 		String range = sourceRange.getRange(source);
 		
+		if (tracker.isEnabled()) {
+			
+			try {
+				
+				int[] bounds = sourceRange.getBounds(source);
+				tracker.setSourceSize(bounds[2] - bounds[0] + 1, bounds[3] - bounds[1] + 1);
+				
+			} catch (IllegalStateException ignore) {}
+		}
+		
 		/*
 		 * Create model
 		 */
 		
 		BookPivotRangeModel pmodel = source.getPivotModel();
+		
+		ConversionEvent phase = tracker.start(ConversionPhase.SET_LIST, null, null);
 		pmodel.setList(range);
+		tracker.finish(phase);
 
 		/*
 		 * Target cell
 		 */
 		
-		TableCell targetCell = table.getTargetCell();
+		TableCell targetCell = plan.getTargetCell();
 		
 		int targetRow = 0, targetCol = 0;
 		if (targetCell != null) {
@@ -167,7 +608,7 @@ public class PivotTableConverter {
 		 * Sheet name
 		 */
 		
-		String name = table.getName();
+		String name = plan.getName();
 		if (name != null) {
 			source.setSheetName(0, name);
 		}
@@ -179,17 +620,17 @@ public class PivotTableConverter {
 		source.setSelection(targetRow, targetCol, targetRow, targetCol);
 
 		BookPivotRange prange = pmodel.getActivePivotRange();
-		prange.setDataOnRow(table.isShowDataColumnsOnRow());
-		prange.setShowDrill(table.isShowRowButtons());
-		prange.setShowRowGrandTotal(table.isShowTotalRow());
-		prange.setShowColGrandTotal(table.isShowTotalCol());
-		prange.setShowHeader(table.isShowHeader());
+		prange.setDataOnRow(plan.isShowDataColumnsOnRow());
+		prange.setShowDrill(plan.isShowRowButtons());
+		prange.setShowRowGrandTotal(plan.isShowTotalRow());
+		prange.setShowColGrandTotal(plan.isShowTotalCol());
+		prange.setShowHeader(plan.isShowHeader());
 		
-		String dataCaption = table.getDataCaption();
+		String dataCaption = plan.getDataCaption();
 		if (dataCaption != null)
 			prange.setDataCaption(dataCaption);
 		
-		PivotBuiltInStyles style = table.getStyle();
+		PivotBuiltInStyles style = plan.getStyle();
 		if (style != null)
 			prange.setTableStyle(style);
 		
@@ -197,136 +638,179 @@ public class PivotTableConverter {
 		 * Fields
 		 */
 		
-		List<PivotField> fields = table.getFields();
-		Collections.sort(fields, COMPARE_BY_AREA);
-		
-		PivotArea lastArea = null;
-		BookPivotArea parea = null;
-		
-		int columnFields = -1;
-		
-		for (PivotField f : fields) {
+		for (int group = 0; group < plan.getGroupCount(); group++) {
 			
-			PivotArea newArea = f.getPivotArea();
-			if (newArea == null) {
+			BookPivotArea parea = plan.getGroupArea(group).getArea(prange);
+			
+			for (int i = plan.getGroupStart(group); i < plan.getGroupEnd(group); i++) {
 				
-				String sourceField = f.getSource();
-				if (sourceField == null)
-					sourceField = "unknown";
+				PivotField f = plan.getField(i);
 				
-				throw new IllegalStateException(
-					"Unidentified pivot area for the field: " + sourceField + "!");
-			}
-			
-			if (newArea != lastArea) {
+				phase = tracker.start(ConversionPhase.CREATE_FIELD, f, null);
 				
-				if (newArea == PivotArea.DATA && columnFields < 0) {
-					
-					columnFields = PivotArea.COLUMN.getArea(prange).getFieldCount();
-				}
+				int lastFieldCount = parea.getFieldCount();
+				BookPivotField newField = f.createField(prange);
 				
-				lastArea = newArea;
-				parea = newArea.getArea(prange);
+				if (lastFieldCount == parea.getFieldCount())
+					parea.addField(newField);
+				
+				tracker.finish(phase);
+				phase = tracker.start(ConversionPhase.CONFIGURE_FIELD, f, null);
+				
+				newField = parea.getField(parea.getFieldCount() - 1);
+				f.configureField(newField);
+				
+				tracker.finish(phase);
 			}
-
-			int lastFieldCount = parea.getFieldCount();
-			BookPivotField newField = f.createField(prange);
-			
-			if (lastFieldCount == parea.getFieldCount())
-				parea.addField(newField);
-			
-			newField = parea.getField(parea.getFieldCount() - 1);
-			f.configureField(newField);
 		}
 		
 		/*
 		 * Width
 		 */
 		
-		int column = 0;
-		int firstColumnField = -1;
+		phase = tracker.start(ConversionPhase.WIDTH, null, null);
+		ColumnWidthPlanner.apply(source, plan);
+		tracker.finish(phase);
+	}
+	
+	/*
+	 * Reads specified document, reporting the phase to the tracker
+	 */
+	private static WorkBook read(Document document, PhaseTracker tracker) throws Exception {
+		
+		ConversionEvent phase = tracker.start(ConversionPhase.READ, null, document);
+		WorkBook wb = document.read();
+		tracker.finish(phase, wb);
 		
-		PivotArea lastAddedArea = null;
-		boolean compactRowAdded = false;
+		return wb;
+	}
+	
+	/*
+	 * Writes workbook into specified document, reporting the phase to the tracker
+	 */
+	private static void write(WorkBook wb, Document document, PhaseTracker tracker) throws Exception {
 		
-		int dataFields = PivotArea.DATA.getArea(prange).getFieldCount();
-		if (dataFields > 0 && table.isShowDataColumnsOnRow())
-			dataFields = 0;
-
-		boolean[] widthChanged = new boolean[source.getLastCol() + 1];
+		ConversionEvent phase = tracker.start(ConversionPhase.WRITE, null, document);
+		document.write(wb);
+		tracker.finish(phase);
+	}
+	
+	/*
+	 * Creates tracker that reports phases to the registered
+	 * listeners and to the specified one
+	 */
+	private static PhaseTracker createTracker(ConversionListener listener, String tableName, Document sourceDocument) {
+		
+		if (!listeners.isEmpty())
+			listener = new ListenerChain(listeners.toArray(new ConversionListener[0]), listener);
 		
-		for (PivotField f : fields) {
+		return new PhaseTracker(listener, tableName, sourceDocument);
+	}
+	
+	/*
+	 * Listener that calls all registered listeners
+	 * and listener of the conversion call
+	 */
+	private static class ListenerChain implements ConversionListener {
+		
+		private final ConversionListener[] registered;
+		private final ConversionListener listener;
+		
+		private ListenerChain(ConversionListener[] registered, ConversionListener listener) {
 			
-			/*
-			 * Column index
-			 */
+			this.registered = registered;
+			this.listener = listener;
+		}
+		
+		@Override
+		public void phaseStarted(ConversionEvent event) {
 			
-			PivotArea newArea = f.getPivotArea();
-			if (newArea == PivotArea.ROW) {
-				
-				if (lastAddedArea == PivotArea.ROW && !compactRowAdded) {
-					
-					column++;
-				}
-				
-				compactRowAdded = f.isFieldCompact();
-			}
-			else if (newArea == PivotArea.COLUMN) {
-				
-				if (firstColumnField < 0) {
-					
-					column++;
-					firstColumnField = column;
-				}
-			}
-			else if (newArea == PivotArea.DATA) {
-
-				if (lastAddedArea != newArea) {
-
-					if (firstColumnField < 0) {
-						
-						column++;
-						firstColumnField = column;
-					}
-					else
-						column = firstColumnField;
-				}
-				else if (dataFields > 0) {
-				
-					column++;
-				}
-			}
+			for (ConversionListener l : registered)
+				l.phaseStarted(event);
 			
-			lastAddedArea = newArea;
-
-			Size width = f.getColumnWidth();
-			if (width == null)
-				continue;
-
-			int startColumn = column;
-			int lastColumn = column;
+			if (listener != null)
+				listener.phaseStarted(event);
+		}
+		
+		@Override
+		public void phaseFinished(ConversionEvent event) {
 			
-			if (newArea == PivotArea.COLUMN || (newArea == PivotArea.DATA && dataFields > 0))
-				lastColumn = source.getLastCol();
+			for (ConversionListener l : registered)
+				l.phaseFinished(event);
 			
-			while (startColumn <= lastColumn) {
+			if (listener != null)
+				listener.phaseFinished(event);
+		}
+		
+		@Override
+		public void phaseFailed(ConversionEvent event, Throwable error) {
 			
-				int oldWidth = source.getColWidth(startColumn);
-				int newWidth = width.getActualSize();
-				if (!widthChanged[startColumn] || newWidth > oldWidth) {
-					
-					source.setColWidth(startColumn, newWidth);
-					widthChanged[startColumn] = true;
-				}
-				
-				if (newArea == PivotArea.DATA && dataFields > 0)
-					startColumn += dataFields;
-				else
-					startColumn++;
-			}
+			for (ConversionListener l : registered)
+				l.phaseFailed(event, error);
+			
+			if (listener != null)
+				listener.phaseFailed(event, error);
 		}
 	}
 
+	/*
+	 * Creates full copy of the specified workbook,
+	 * with the same sheet selected
+	 */
+	static WorkBook copy(WorkBook source) throws Exception {
+		
+		WorkBook copy = new WorkBook();
+		copy.copyAll(source);
+		copy.setSheet(source.getSheet());
+		
+		return copy;
+	}
+	
+	/*
+	 * Key to group tables by source document. Documents
+	 * are the same if they have the same format, path and password.
+	 */
+	private static class DocumentKey {
+		
+		private final Document document;
+		
+		private DocumentKey(Document document) {
+			
+			this.document = document;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			
+			if (this == obj)
+				return true;
+			
+			if (obj == null || obj.getClass() != getClass())
+				return false;
+			
+			Document d = ((DocumentKey) obj).document;
+			
+			return d.getDocumentFormat() == document.getDocumentFormat()
+					&& equal(d.getPath(), document.getPath())
+					&& equal(d.getPassword(), document.getPassword());
+		}
+		
+		@Override
+		public int hashCode() {
+			
+			int hash = document.getDocumentFormat() == null ? 0 : document.getDocumentFormat().hashCode();
+			hash = hash * 31 + (document.getPath() == null ? 0 : document.getPath().hashCode());
+			hash = hash * 31 + (document.getPassword() == null ? 0 : document.getPassword().hashCode());
+			
+			return hash;
+		}
+		
+		private static boolean equal(String s1, String s2) {
+			
+			return s1 == null ? s2 == null : s1.equals(s2);
+		}
+	}
+	
 	/**
 	 * Compares pivot fields by area they meant to be put into.
 	 * @since 1.0
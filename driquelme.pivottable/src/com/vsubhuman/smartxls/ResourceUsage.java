@@ -0,0 +1,199 @@
+package com.vsubhuman.smartxls;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Class accumulates CPU time and allocated heap bytes spent by a conversion. If
+ * conversion runs on several threads (like in {@link ConversionPipeline}, or parallel
+ * tasks of {@link com.vsubhuman.smartxls.engine.NativePivotEngine}), every thread
+ * measures its own part and the parts are summed.</p>
+ * 
+ * <p>Values are taken from the {@link ThreadMXBean} of the JVM: CPU time by
+ * {@link ThreadMXBean#getCurrentThreadCpuTime()}, and allocated bytes by
+ * <code>com.sun.management.ThreadMXBean.getThreadAllocatedBytes(long)</code>
+ * where it's available (HotSpot and OpenJ9 JVMs). Values that JVM doesn't
+ * support or has disabled stay 0, see {@link #isCpuTimeSupported()}
+ * and {@link #isAllocationSupported()}.</p>
+ * 
+ * <p>Example:<pre>
+ * ConversionResult result = PivotTableConverter.convertAsync(table, true, executor);
+ * result.get();
+ * 
+ * ResourceUsage usage = result.getUsage();
+ * System.out.println(table.getName() + ": " + usage);</pre>
+ * 
+ * <p>Usage is thread safe.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public final class ResourceUsage {
+	
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	
+	// com.sun.management.ThreadMXBean.getThreadAllocatedBytes(long), or null
+	private static final Method ALLOCATED_BYTES = findAllocatedBytes();
+	
+	private final AtomicLong cpuTime = new AtomicLong();
+	private final AtomicLong allocatedBytes = new AtomicLong();
+	
+	/**
+	 * Creates new empty usage.
+	 * @since 1.1
+	 */
+	public ResourceUsage() {}
+	
+	/**
+	 * @return CPU time spent by all measured threads in nanoseconds
+	 * @since 1.1
+	 */
+	public long getCpuTime() {
+		return cpuTime.get();
+	}
+	
+	/**
+	 * @return heap bytes allocated by all measured threads
+	 * @since 1.1
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes.get();
+	}
+	
+	/**
+	 * Adds values of the specified usage to this one,
+	 * for example to sum usage of the batch.
+	 * 
+	 * @param usage - usage to add
+	 * @throws IllegalArgumentException - if usage is <code>null</code>
+	 * @since 1.1
+	 */
+	public void add(ResourceUsage usage) throws IllegalArgumentException {
+		
+		if (usage == null)
+			throw new IllegalArgumentException(
+				"Usage cannot be null!");
+		
+		cpuTime.addAndGet(usage.getCpuTime());
+		allocatedBytes.addAndGet(usage.getAllocatedBytes());
+	}
+	
+	/**
+	 * @return <code>true</code> if JVM measures CPU time of the threads
+	 * @since 1.1
+	 */
+	public static boolean isCpuTimeSupported() {
+		return THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+	}
+	
+	/**
+	 * @return <code>true</code> if JVM measures heap bytes allocated by the threads
+	 * @since 1.1
+	 */
+	public static boolean isAllocationSupported() {
+		return ALLOCATED_BYTES != null && currentAllocatedBytes() >= 0;
+	}
+	
+	/**
+	 * Starts measuring of the current thread. Measured part
+	 * is added to this usage when measurement is stopped.
+	 * 
+	 * @return started measurement
+	 * @since 1.1
+	 */
+	public Measurement start() {
+		return new Measurement();
+	}
+	
+	@Override
+	public String toString() {
+		return "cpuTime=" + getCpuTime() + "ns allocated=" + getAllocatedBytes() + "B";
+	}
+	
+	private static Method findAllocatedBytes() {
+		
+		try {
+			
+			Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+			if (!type.isInstance(THREADS))
+				return null;
+			
+			Method method = type.getMethod("getThreadAllocatedBytes", long.class);
+			method.invoke(THREADS, Thread.currentThread().getId());
+			
+			return method;
+		
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	/*
+	 * Allocated bytes of the current thread, or -1 if not measured
+	 */
+	private static long currentAllocatedBytes() {
+		
+		if (ALLOCATED_BYTES == null)
+			return -1;
+		
+		try {
+			return (Long) ALLOCATED_BYTES.invoke(THREADS, Thread.currentThread().getId());
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+	
+	/*
+	 * CPU time of the current thread, or -1 if not measured
+	 */
+	private static long currentCpuTime() {
+		
+		if (!THREADS.isCurrentThreadCpuTimeSupported())
+			return -1;
+		
+		return THREADS.getCurrentThreadCpuTime();
+	}
+	
+	/**
+	 * Measurement of the part of the conversion made by one thread.
+	 * 
+	 * @author vsubhuman
+	 * @version 1.1
+	 */
+	public final class Measurement {
+		
+		private final long startCpuTime = currentCpuTime();
+		private final long startAllocatedBytes = currentAllocatedBytes();
+		
+		/*
+		 * Constructor
+		 */
+		private Measurement() {}
+		
+		/**
+		 * Adds resources spent by the current thread since the start of the
+		 * measurement to the usage. Should be called by the thread that
+		 * started the measurement.
+		 * 
+		 * @since 1.1
+		 */
+		public void stop() {
+			
+			if (startCpuTime >= 0) {
+				
+				long now = currentCpuTime();
+				if (now >= startCpuTime)
+					cpuTime.addAndGet(now - startCpuTime);
+			}
+			
+			if (startAllocatedBytes >= 0) {
+				
+				long now = currentAllocatedBytes();
+				if (now >= startAllocatedBytes)
+					allocatedBytes.addAndGet(now - startAllocatedBytes);
+			}
+		}
+	}
+}
@@ -0,0 +1,274 @@
+package com.vsubhuman.smartxls;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+
+/**
+ * <p>Class caches converted target documents on disk, so table which configuration
+ * and source document are not changed is not converted again.</p>
+ * 
+ * <p>Documents are cached by the key made of two parts: hash of the {@link ConfigurationHash}
+ * of the table, and hash of the {@link DocumentFingerprint} of its source document. Table
+ * has only one cached document: when document is stored for the changed source, document
+ * of the previous version of the source is removed. Cached document is copied
+ * into the target file by {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+ * so copying doesn't pass the content through the heap.</p>
+ * 
+ * <p>Example:<pre>
+ * ResultCache cache = new ResultCache("/var/cache/pivots");
+ * PivotTableConverter.convertCached(table, cache);</pre>
+ * 
+ * <p>Cached files of the tables are never removed automatically,
+ * use {@link #clear()} to remove them.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class ResultCache {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	// extension of the cached files
+	private static final String EXTENSION = ".result";
+	
+	// separator of the table and the source parts of the key
+	private static final char SEPARATOR = '-';
+	
+	private final File directory;
+	
+	/**
+	 * Create new cache in the specified directory. Directory
+	 * is created if it doesn't exist.
+	 * 
+	 * @param directory - path of the directory of the cached files
+	 * @throws IllegalArgumentException - if directory is <code>null</code>
+	 * @throws IllegalStateException - if directory cannot be created
+	 * @since 1.1
+	 */
+	public ResultCache(String directory) throws IllegalArgumentException, IllegalStateException {
+		
+		if (directory == null)
+			throw new IllegalArgumentException(
+				"Directory cannot be null!");
+		
+		this.directory = new File(directory);
+		if (!this.directory.isDirectory() && !this.directory.mkdirs())
+			throw new IllegalStateException(
+				"Cannot create cache directory '" + directory + "'!");
+	}
+	
+	/**
+	 * @return directory of the cached files
+	 * @since 1.1
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+	
+	/**
+	 * Returns key of the cached target document of the specified table,
+	 * for the current state of its source document.
+	 * 
+	 * @param table - pivot table
+	 * @return key of the cached document
+	 * @throws IllegalArgumentException - if table is <code>null</code>
+	 * @throws IllegalStateException - if table has no source document,
+	 * or file of the source document doesn't exist
+	 * @throws Exception - if key cannot be computed
+	 * @since 1.1
+	 */
+	public String getKey(PivotTable table) throws IllegalArgumentException, IllegalStateException, Exception {
+		
+		if (table == null)
+			throw new IllegalArgumentException(
+				"Pivot table cannot be null!");
+		
+		Document source = table.getSourceDocument();
+		if (source == null)
+			throw new IllegalStateException(
+				"Cannot cache table without source document settings!");
+		
+		DocumentFingerprint fingerprint = DocumentFingerprint.create(source);
+		
+		MessageDigest md = MessageDigest.getInstance("SHA-256");
+		md.update(ConfigurationHash.compute(table).getBytes(UTF8));
+		md.update((byte) 0);
+		if (source.getPassword() != null)
+			md.update(source.getPassword().getBytes(UTF8));
+		
+		String tablePart = ConfigurationHash.toHex(md.digest());
+		
+		md.reset();
+		md.update(fingerprint.toString().getBytes(UTF8));
+		
+		return tablePart + SEPARATOR + ConfigurationHash.toHex(md.digest());
+	}
+	
+	/**
+	 * Copies cached document by specified key into the file of the specified document.
+	 * 
+	 * @param key - key of the cached document
+	 * @param target - document to copy cached document into
+	 * @return <code>true</code> if document was copied, or <code>false</code>
+	 * if there's no cached document by specified key
+	 * @throws IllegalArgumentException - if key or target is <code>null</code>
+	 * @throws IllegalStateException - if path of the target is <code>null</code>
+	 * @throws Exception - if copying has failed
+	 * @since 1.1
+	 */
+	public boolean restore(String key, Document target) throws IllegalArgumentException,
+			IllegalStateException, Exception {
+		
+		File file = getFile(key);
+		if (target == null)
+			throw new IllegalArgumentException(
+				"Target document cannot be null!");
+		
+		if (target.getPath() == null)
+			throw new IllegalStateException(
+				"Cannot restore document without path!");
+		
+		if (!file.isFile())
+			return false;
+		
+		copy(file, new File(target.getPath()));
+		return true;
+	}
+	
+	/**
+	 * Copies file of the specified document into the cache by specified key.
+	 * Documents cached for the same table and other versions of its
+	 * source document are removed.
+	 * 
+	 * @param key - key of the cached document
+	 * @param target - written target document
+	 * @throws IllegalArgumentException - if key or target is <code>null</code>
+	 * @throws IllegalStateException - if file of the target doesn't exist
+	 * @throws Exception - if copying has failed
+	 * @since 1.1
+	 */
+	public void store(String key, Document target) throws IllegalArgumentException,
+			IllegalStateException, Exception {
+		
+		File file = getFile(key);
+		if (target == null)
+			throw new IllegalArgumentException(
+				"Target document cannot be null!");
+		
+		File source = target.getPath() == null ? null : new File(target.getPath());
+		if (source == null || !source.isFile())
+			throw new IllegalStateException(
+				"Target document file doesn't exist!");
+		
+		/*
+		 * File is written under temporary name and renamed,
+		 * so partially written file is never restored
+		 */
+		File temp = File.createTempFile(key, ".tmp", directory);
+		try {
+			
+			copy(source, temp);
+			
+			file.delete();
+			if (!temp.renameTo(file))
+				throw new IllegalStateException(
+					"Cannot store cached document '" + file + "'!");
+			
+		} finally {
+			temp.delete();
+		}
+		
+		removeStale(key);
+	}
+	
+	/**
+	 * Removes all cached documents.
+	 * 
+	 * @since 1.1
+	 */
+	public void clear() {
+		
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		
+		for (File file : files) {
+			
+			if (file.getName().endsWith(EXTENSION))
+				file.delete();
+		}
+	}
+	
+	/*
+	 * Removes files with the same table part of the key,
+	 * but with the other source part
+	 */
+	private void removeStale(String key) {
+		
+		int separator = key.lastIndexOf(SEPARATOR);
+		if (separator < 0)
+			return;
+		
+		String prefix = key.substring(0, separator + 1);
+		String name = key + EXTENSION;
+		
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		
+		for (File file : files) {
+			
+			String n = file.getName();
+			if (n.startsWith(prefix) && n.endsWith(EXTENSION) && !n.equals(name))
+				file.delete();
+		}
+	}
+	
+	private File getFile(String key) {
+		
+		if (key == null)
+			throw new IllegalArgumentException(
+				"Key cannot be null!");
+		
+		return new File(directory, key + EXTENSION);
+	}
+	
+	/*
+	 * Copies file by channels, without passing
+	 * content through the heap
+	 */
+	private static void copy(File from, File to) throws Exception {
+		
+		FileInputStream in = new FileInputStream(from);
+		try {
+			
+			FileOutputStream out = new FileOutputStream(to);
+			try {
+				
+				FileChannel source = in.getChannel();
+				FileChannel target = out.getChannel();
+				
+				long size = source.size();
+				long position = 0;
+				while (position < size)
+					position += source.transferTo(position, size - position, target);
+				
+			} finally {
+				
+				try {
+					out.close();
+				} catch (Exception ignore) {}
+			}
+			
+		} finally {
+			
+			try {
+				in.close();
+			} catch (Exception ignore) {}
+		}
+	}
+}
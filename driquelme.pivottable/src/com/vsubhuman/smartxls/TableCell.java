@@ -117,4 +117,44 @@ public class TableCell {
 		
 		return wb.formatRCNr(getRow(), getCol(), false);
 	}
-}
\ No newline at end of file
+	
+	/*
+	 * Parses Excel style address of one cell (like "B12", "$B$12"
+	 * or "Sheet1!B12") into pair {row, column}. Returns null if
+	 * address cannot be parsed.
+	 */
+	static int[] parseAddress(String address) {
+		
+		int sheet = address.lastIndexOf('!');
+		if (sheet >= 0)
+			address = address.substring(sheet + 1);
+		
+		int col = 0, row = 0;
+		int letters = 0, digits = 0;
+		
+		for (int i = 0; i < address.length(); i++) {
+			
+			char c = Character.toUpperCase(address.charAt(i));
+			if (c == '$' || Character.isWhitespace(c))
+				continue;
+			
+			if (c >= 'A' && c <= 'Z' && digits == 0) {
+				
+				col = col * 26 + (c - 'A' + 1);
+				letters++;
+			}
+			else if (c >= '0' && c <= '9' && letters > 0) {
+				
+				row = row * 10 + (c - '0');
+				digits++;
+			}
+			else
+				return null;
+		}
+		
+		if (letters == 0 || digits == 0 || row == 0)
+			return null;
+		
+		return new int[] {row - 1, col - 1};
+	}
+}
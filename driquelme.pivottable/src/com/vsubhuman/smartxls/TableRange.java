@@ -139,6 +139,50 @@ public class TableRange {
 		return new StringBuilder(cell1).append(':').append(cell2).toString();
 	}
 
+	/**
+	 * <p>Returns coordinates of the range as array of four numbers:
+	 * row and column of the top-left cell, and row and column of the
+	 * bottom-right cell of the range.</p>
+	 * 
+	 * <p>Specified {@link WorkBook} used to format address, see {@link #getRange(WorkBook)}.</p>
+	 * 
+	 * @param wb - {@link WorkBook} to format address
+	 * @return array of the coordinates: {row1, col1, row2, col2}
+	 * @throws IllegalStateException - if address of the range cannot be parsed
+	 * @throws Exception - if address formatting has failed
+	 * @since 1.1
+	 */
+	public int[] getBounds(WorkBook wb) throws IllegalStateException, Exception {
+		
+		if (isCells() && startCell.isNumbers() && endCell.isNumbers()) {
+			
+			return new int[] {
+				Math.min(startCell.getRow(), endCell.getRow()),
+				Math.min(startCell.getCol(), endCell.getCol()),
+				Math.max(startCell.getRow(), endCell.getRow()),
+				Math.max(startCell.getCol(), endCell.getCol())
+			};
+		}
+		
+		String address = getRange(wb);
+		
+		int separator = address.indexOf(':');
+		String first = separator < 0 ? address : address.substring(0, separator);
+		String second = separator < 0 ? address : address.substring(separator + 1);
+		
+		int[] c1 = TableCell.parseAddress(first);
+		int[] c2 = TableCell.parseAddress(second);
+		
+		if (c1 == null || c2 == null)
+			throw new IllegalStateException(
+				"Cannot parse table range: '" + address + "'!");
+		
+		return new int[] {
+			Math.min(c1[0], c2[0]), Math.min(c1[1], c2[1]),
+			Math.max(c1[0], c2[0]), Math.max(c1[1], c2[1])
+		};
+	}
+
 	/**
 	 * Create table range of all data on selected sheet of the specified {@link WorkBook}.
 	 * Result range described by string address.
@@ -0,0 +1,251 @@
+package com.vsubhuman.smartxls;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.smartxls.WorkBook;
+
+/**
+ * <p>Class caches {@link WorkBook}s read from the documents, so document that is
+ * converted again is not read from the file.</p>
+ * 
+ * <p>Workbooks are cached by {@link DocumentFingerprint}, so changed file is read again
+ * (and older workbook of the file is dropped). Size of the cache is limited by the sum of
+ * the estimated heap footprints of the workbooks, least recently used workbooks are evicted
+ * first. Workbook that alone exceeds the limit is not cached.</p>
+ * 
+ * <p>Cached workbooks are never handed out: every read returns a full copy
+ * of the cached workbook, so conversions can change returned workbooks freely.</p>
+ * 
+ * <p>Cache is used by {@link Document#read()} once it's set by
+ * {@link Document#setWorkBookCache(WorkBookCache)}:<pre>
+ * Document.setWorkBookCache(new WorkBookCache(512L &lt;&lt; 20));</pre>
+ * 
+ * <p>Cache is thread safe.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class WorkBookCache {
+	
+	// estimated number of bytes taken by one used cell
+	private static final int CELL_FOOTPRINT = 48;
+	
+	private final long maxFootprint;
+	
+	// entries in the order of access, the least recently used first
+	private final Map<DocumentFingerprint, Entry> entries =
+		new LinkedHashMap<DocumentFingerprint, Entry>(16, 0.75f, true);
+	
+	private long footprint;
+	private long hits;
+	private long misses;
+	
+	/**
+	 * Create new empty cache, limited by specified footprint.
+	 * 
+	 * @param maxFootprint - maximal sum of the estimated footprints
+	 * of the cached workbooks in bytes
+	 * @throws IllegalArgumentException - if limit is not positive
+	 * @since 1.1
+	 */
+	public WorkBookCache(long maxFootprint) throws IllegalArgumentException {
+		
+		if (maxFootprint <= 0)
+			throw new IllegalArgumentException(
+				"Maximal footprint should be positive!");
+		
+		this.maxFootprint = maxFootprint;
+	}
+	
+	/**
+	 * Reads specified document, or copies its cached workbook if file of the
+	 * document is not changed since it was cached. Documents without existing
+	 * file are read without cache.
+	 * 
+	 * @param doc - document to read
+	 * @return read workbook, owned by the caller
+	 * @throws IllegalArgumentException - if document is <code>null</code>
+	 * @throws IllegalStateException - if format or path of the document is <code>null</code>
+	 * @throws Exception - if reading has failed
+	 * @since 1.1
+	 */
+	public WorkBook read(Document doc) throws IllegalArgumentException,
+			IllegalStateException, Exception {
+		
+		if (doc == null)
+			throw new IllegalArgumentException(
+				"Document cannot be null!");
+		
+		DocumentFormat format = doc.getDocumentFormat();
+		String path = doc.getPath();
+		
+		if (format == null || path == null)
+			throw new IllegalStateException(
+				"Cannot read document without format or path!");
+		
+		if (!new File(path).isFile())
+			return format.read(path, doc.getPassword());
+		
+		DocumentFingerprint key = DocumentFingerprint.create(doc);
+		
+		Entry entry;
+		synchronized (this) {
+			
+			entry = entries.get(key);
+			if (entry != null)
+				hits++;
+			else
+				misses++;
+		}
+		
+		if (entry != null) {
+			
+			// one copy of the workbook at a time
+			synchronized (entry) {
+				return PivotTableConverter.copy(entry.wb);
+			}
+		}
+		
+		WorkBook wb = format.read(path, doc.getPassword());
+		
+		// workbooks that don't fit are not copied at all
+		long size = estimateFootprint(wb);
+		if (size <= maxFootprint)
+			put(key, new Entry(PivotTableConverter.copy(wb), size));
+		else
+			removeVersions(key);
+		
+		return wb;
+	}
+	
+	/**
+	 * Removes all cached workbooks.
+	 * 
+	 * @since 1.1
+	 */
+	public synchronized void clear() {
+		
+		entries.clear();
+		footprint = 0;
+	}
+	
+	/**
+	 * @return number of the cached workbooks
+	 * @since 1.1
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * @return sum of the estimated footprints of the cached workbooks in bytes
+	 * @since 1.1
+	 */
+	public synchronized long getFootprint() {
+		return footprint;
+	}
+	
+	/**
+	 * @return maximal sum of the footprints of the cached workbooks in bytes
+	 * @since 1.1
+	 */
+	public long getMaxFootprint() {
+		return maxFootprint;
+	}
+	
+	/**
+	 * @return number of the reads served from the cache
+	 * @since 1.1
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+	
+	/**
+	 * @return number of the reads of the files
+	 * @since 1.1
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+	
+	/**
+	 * Estimates heap footprint of the specified workbook by the number
+	 * of the cells in the used ranges of all its sheets.
+	 * 
+	 * @param wb - workbook
+	 * @return estimated footprint in bytes
+	 * @throws Exception - if workbook cannot be inspected
+	 * @since 1.1
+	 */
+	public static long estimateFootprint(WorkBook wb) throws Exception {
+		
+		int selected = wb.getSheet();
+		long cells = 0;
+		
+		try {
+			
+			for (int i = 0; i < wb.getNumSheets(); i++) {
+				
+				wb.setSheet(i);
+				cells += (wb.getLastRow() + 1L) * (wb.getLastCol() + 1L);
+			}
+		
+		} finally {
+			wb.setSheet(selected);
+		}
+		
+		return cells * CELL_FOOTPRINT;
+	}
+	
+	private synchronized void put(DocumentFingerprint key, Entry entry) {
+		
+		removeVersions(key);
+		
+		entries.put(key, entry);
+		footprint += entry.footprint;
+		
+		// least recently used
+		Iterator<Map.Entry<DocumentFingerprint, Entry>> it = entries.entrySet().iterator();
+		while (footprint > maxFootprint && it.hasNext()) {
+			
+			footprint -= it.next().getValue().footprint;
+			it.remove();
+		}
+	}
+	
+	/*
+	 * Removes cached versions of the file of the specified key
+	 */
+	private synchronized void removeVersions(DocumentFingerprint key) {
+		
+		Iterator<Map.Entry<DocumentFingerprint, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			
+			Map.Entry<DocumentFingerprint, Entry> e = it.next();
+			if (e.getKey().getPath().equals(key.getPath()) && e.getKey().getFormat() == key.getFormat()) {
+				
+				footprint -= e.getValue().footprint;
+				it.remove();
+			}
+		}
+	}
+	
+	/*
+	 * Cached workbook
+	 */
+	private static class Entry {
+		
+		final WorkBook wb;
+		final long footprint;
+		
+		Entry(WorkBook wb, long footprint) {
+			
+			this.wb = wb;
+			this.footprint = footprint;
+		}
+	}
+}
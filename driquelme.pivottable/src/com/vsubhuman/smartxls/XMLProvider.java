@@ -1,29 +1,32 @@
 package com.vsubhuman.smartxls;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
 
 import com.smartxls.enums.PivotBuiltInStyles;
 import com.vsubhuman.smartxls.SizeUnit.Size;
-import com.vsubhuman.xml.ElementIterator;
 
 /**
  * <p>Implementation of {@link ConfigurationProvider} that uses
@@ -39,6 +42,11 @@ import com.vsubhuman.xml.ElementIterator;
  * See methods: {@link #putFieldProvider(Class, XMLFieldProvider)},
  * {@link #getFieldProvider(Class)}, {@link #removeFieldProvider(Class)}.</p>
  * 
+ * <p>Configuration is read and written in one pass: document is read by StAX
+ * and written element by element, so only the element of the current field is
+ * held in memory. Field providers get standalone {@link Element}s of their fields,
+ * with all their child nodes.</p>
+ * 
  * @author vsubhuman
  * @version 1.0
  */
@@ -83,6 +91,16 @@ public class XMLProvider implements ConfigurationProvider {
 	public static final String VA_TYPE_TARGET = "target"; 
 	
 	
+	// factories are created once, they're costly to look up
+	private static final XMLInputFactory INPUT_FACTORY = newInputFactory();
+	private static final DocumentBuilderFactory DOCUMENT_FACTORY = DocumentBuilderFactory.newInstance();
+	
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
+	private static final String INDENT = "  ";
+	
+	// property of the JDK parser, by default it reports CDATA as text
+	private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+	
 	// providers for the fields
 	private Map<String, XMLFieldProvider> providers =
 			new HashMap<String, XMLFieldProvider>();
@@ -187,9 +205,8 @@ public class XMLProvider implements ConfigurationProvider {
 			throw new IllegalArgumentException(
 					"Output stream or table configuration cannot be null!");
 		
-		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-		DocumentBuilder db = dbf.newDocumentBuilder();
-		Document doc = db.newDocument();
+		// only builds standalone elements, nothing is appended to it
+		Document doc = newDocument();
 
 		Element root = doc.createElement(EL_ROOT);
 		
@@ -259,18 +276,31 @@ public class XMLProvider implements ConfigurationProvider {
 		if (dataCaption != null)
 			root.setAttribute(AT_DATA_CAPTION, dataCaption);
 		
+		List<PivotField> fields = table.getFields();
+		
+		boolean empty = table.getSourceDocument() == null && table.getTargetDocument() == null;
+		for (int i = 0; empty && i < fields.size(); i++)
+			empty = fields.get(i) == null;
+		
+		Writer w = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"));
+		w.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+		w.write(LINE_SEPARATOR);
+		
+		writeStart(w, root);
+		w.write(empty ? "/>" : ">");
+		w.write(LINE_SEPARATOR);
+		
 		/*
 		 * Documents
 		 */
 		
-		exportDocument(doc, root, VA_TYPE_SOURCE, table.getSourceDocument());
-		exportDocument(doc, root, VA_TYPE_TARGET, table.getTargetDocument());
+		writeElement(w, exportDocument(doc, VA_TYPE_SOURCE, table.getSourceDocument()), INDENT);
+		writeElement(w, exportDocument(doc, VA_TYPE_TARGET, table.getTargetDocument()), INDENT);
 		
 		/*
 		 * Fields
 		 */
 		
-		List<PivotField> fields = table.getFields();
 		for (PivotField f : fields) {
 			
 			if (f == null)
@@ -296,24 +326,17 @@ public class XMLProvider implements ConfigurationProvider {
 				typeStr = type.getCanonicalName();
 			
 			e.setAttribute(AT_TYPE, typeStr);
-			root.appendChild(e);
+			writeElement(w, e, INDENT);
 		}
 		
-		doc.appendChild(root);
-		
-		/*
-		 * Save document
-		 */
-
-		TransformerFactory tf = TransformerFactory.newInstance();
-		Transformer transformer = tf.newTransformer();
-		transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-		transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-		
-		DOMSource source = new DOMSource(doc);
-		StreamResult stream = new StreamResult(os);
+		if (!empty) {
+			
+			writeEnd(w, root);
+			w.write(LINE_SEPARATOR);
+		}
 		
-		transformer.transform(source, stream);
+		// stream belongs to the caller, so it's not closed
+		w.flush();
 		
 		return true;
 	}
@@ -335,13 +358,13 @@ public class XMLProvider implements ConfigurationProvider {
 	}
 	
 	/*
-	 * Creates element for the specified document, exports document data into it and places
-	 * element into specified parent element
+	 * Creates element for the specified document and exports document data into it,
+	 * returns null if document is null
 	 */
-	private static void exportDocument(Document d, Element parent, String type, com.vsubhuman.smartxls.Document doc) {
+	private static Element exportDocument(Document d, String type, com.vsubhuman.smartxls.Document doc) {
 		
 		if (doc == null)
-			return;
+			return null;
 		
 		Element e = d.createElement(EL_DOCUMENT);
 		e.setAttribute(AT_TYPE, type);
@@ -359,7 +382,259 @@ public class XMLProvider implements ConfigurationProvider {
 		if (pass != null)
 			e.setAttribute(AT_DOCUMENT_PASS, pass);
 		
-		parent.appendChild(e);
+		return e;
+	}
+	
+	/*
+	 * Writing
+	 */
+	
+	/*
+	 * Writes start tag of the specified element, with attributes sorted by name
+	 * (the same as DOM serializer does). Tag is left open
+	 */
+	private static void writeStart(Writer w, Element e) throws Exception {
+		
+		w.write('<');
+		w.write(e.getTagName());
+		
+		NamedNodeMap attributes = e.getAttributes();
+		String[] names = new String[attributes.getLength()];
+		for (int i = 0; i < names.length; i++)
+			names[i] = attributes.item(i).getNodeName();
+		
+		Arrays.sort(names);
+		
+		for (String name : names) {
+			
+			w.write(' ');
+			w.write(name);
+			w.write("=\"");
+			writeEscaped(w, e.getAttribute(name), true);
+			w.write('"');
+		}
+	}
+	
+	/*
+	 * Writes end tag of the specified element
+	 */
+	private static void writeEnd(Writer w, Element e) throws Exception {
+		
+		w.write("</");
+		w.write(e.getTagName());
+		w.write('>');
+	}
+	
+	/*
+	 * Writes specified element with all its children on the new line.
+	 * Does nothing if element is null
+	 */
+	private static void writeElement(Writer w, Element e, String indent) throws Exception {
+		
+		if (e == null)
+			return;
+		
+		w.write(indent);
+		writeNode(w, e, indent);
+		w.write(LINE_SEPARATOR);
+	}
+	
+	/*
+	 * Writes specified element and its subtree indented the same way DOM serializer
+	 * does: elements and comments start new lines, text and CDATA start new line
+	 * only if it's not the first child, and text that follows the new line loses
+	 * its leading line feeds. End tag starts new line unless element has only one
+	 * child and it's text
+	 */
+	private static void writeNode(Writer w, Element e, String indent) throws Exception {
+		
+		writeStart(w, e);
+		
+		String childIndent = LINE_SEPARATOR + indent + INDENT;
+		StringBuilder text = new StringBuilder();
+		boolean open = true;
+		boolean prevText = false;
+		int count = 0;
+		
+		for (Node child = e.getFirstChild(); child != null; child = child.getNextSibling()) {
+			
+			String value = child.getNodeValue();
+			switch (child.getNodeType()) {
+			
+			case Node.TEXT_NODE:
+				if (value.length() > 0) {
+					
+					if (open)
+						w.write('>');
+					
+					open = false;
+					text.append(value);
+				}
+				break;
+			case Node.CDATA_SECTION_NODE:
+				// text before CDATA is not counted as a child
+				if (text.length() > 0)
+					prevText |= writeText(w, text, count > 1 ? childIndent : null);
+				
+				if (value.length() > 0) {
+					
+					if (open)
+						w.write('>');
+					
+					open = false;
+					if (count > 1)
+						w.write(childIndent);
+					
+					w.write("<![CDATA[");
+					w.write(value.replace("]]>", "]]]]><![CDATA[>").replace("\n", LINE_SEPARATOR));
+					w.write("]]>");
+					prevText = true;
+				}
+				break;
+			case Node.ELEMENT_NODE:
+			case Node.COMMENT_NODE:
+				count++;
+				if (text.length() > 0) {
+					
+					count++;
+					prevText |= writeText(w, text, count > 1 ? childIndent : null);
+				}
+				if (open)
+					w.write('>');
+				
+				open = false;
+				w.write(childIndent);
+				
+				if (child.getNodeType() == Node.ELEMENT_NODE) {
+					
+					writeNode(w, (Element) child, indent + INDENT);
+					prevText = false;
+				}
+				else {
+					
+					w.write("<!--");
+					w.write(value);
+					w.write("-->");
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		
+		if (text.length() > 0) {
+			
+			count++;
+			prevText |= writeText(w, text, count > 1 ? childIndent : null);
+		}
+		
+		if (open) {
+			
+			w.write("/>");
+			return;
+		}
+		
+		if (count > 1 || !prevText)
+			w.write(LINE_SEPARATOR + indent);
+		
+		writeEnd(w, e);
+	}
+	
+	/*
+	 * Writes and clears collected text. If indent is specified, text starts
+	 * the new line without its leading line feeds. Returns false if nothing
+	 * is written after the indent
+	 */
+	private static boolean writeText(Writer w, StringBuilder text, String indent) throws Exception {
+		
+		int start = 0;
+		if (indent != null) {
+			
+			w.write(indent);
+			while (start < text.length() && text.charAt(start) == '\n')
+				start++;
+		}
+		
+		String value = text.substring(start);
+		text.setLength(0);
+		
+		writeEscaped(w, value, false);
+		return value.length() > 0;
+	}
+	
+	/*
+	 * Writes text escaped for the attribute value or the element content.
+	 * Characters are written as references where DOM serializer does it:
+	 * supplementary characters and control characters, also C1 controls
+	 * in the element content
+	 */
+	private static void writeEscaped(Writer w, String value, boolean attribute) throws Exception {
+		
+		for (int i = 0; i < value.length(); i++) {
+			
+			char c = value.charAt(i);
+			switch (c) {
+			
+			case '&':
+				w.write("&amp;");
+				break;
+			case '<':
+				w.write("&lt;");
+				break;
+			case '>':
+				w.write("&gt;");
+				break;
+			case '"':
+				w.write(attribute ? "&quot;" : "\"");
+				break;
+			case '\r':
+				w.write("&#13;");
+				break;
+			case '\n':
+				w.write(attribute ? "&#10;" : LINE_SEPARATOR);
+				break;
+			case '\t':
+				w.write(attribute ? "&#9;" : "\t");
+				break;
+			default:
+				int code = c;
+				if (Character.isHighSurrogate(c) && i + 1 < value.length()
+						&& Character.isLowSurrogate(value.charAt(i + 1)))
+					code = Character.toCodePoint(c, value.charAt(++i));
+				else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+					throw new IOException(
+						"Invalid UTF-16 surrogate detected: " + Integer.toHexString(c) + "!");
+				
+				if (code > 0xFFFF || code < ' ' || (!attribute && code >= 0x7F && code <= 0x9F))
+					w.write("&#" + code + ';');
+				else
+					w.write(c);
+			}
+		}
+	}
+	
+	/*
+	 * Creates StAX factory that reports CDATA sections
+	 * separately from text, the same as DOM parser
+	 */
+	private static XMLInputFactory newInputFactory() {
+		
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		if (factory.isPropertySupported(REPORT_CDATA))
+			factory.setProperty(REPORT_CDATA, Boolean.TRUE);
+		
+		return factory;
+	}
+	
+	/*
+	 * Creates empty DOM document
+	 */
+	private static Document newDocument() throws Exception {
+		
+		// factory is not thread safe
+		synchronized (DOCUMENT_FACTORY) {
+			return DOCUMENT_FACTORY.newDocumentBuilder().newDocument();
+		}
 	}
 
 	/**
@@ -405,13 +680,67 @@ public class XMLProvider implements ConfigurationProvider {
 	 */
 	@Override
 	public PivotTable loadConfiguration(InputStream is) throws Exception {
+		
+		ConversionMetrics metrics = ConversionMetrics.getInstance();
+		if (metrics == null)
+			return parseConfiguration(is);
+		
+		ConversionMetrics.CountingInputStream counting = new ConversionMetrics.CountingInputStream(is);
+		long start = System.nanoTime();
+		
+		boolean loaded = false;
+		try {
+			
+			PivotTable table = parseConfiguration(counting);
+			loaded = true;
+			
+			metrics.configurationLoaded(counting.getCount(), System.nanoTime() - start);
+			return table;
+			
+		} finally {
+			
+			if (!loaded)
+				metrics.configurationFailed(counting.getCount());
+		}
+	}
+	
+	/*
+	 * Parses table configuration from specified stream
+	 */
+	private PivotTable parseConfiguration(InputStream is) throws Exception {
 
-		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-		DocumentBuilder db = dbf.newDocumentBuilder();
-		Document doc = db.parse(is);
+		XMLStreamReader reader;
+		synchronized (INPUT_FACTORY) {
+			reader = INPUT_FACTORY.createXMLStreamReader(is);
+		}
+		
+		try {
+			
+			return parseConfiguration(reader);
+			
+		} finally {
+			
+			try {
+				reader.close();
+			} catch (Exception ignore) {}
+		}
+	}
+	
+	/*
+	 * Parses table configuration in one pass: root element is read with its
+	 * attributes only, then every document and field element is read and
+	 * imported before the next one is read
+	 */
+	private PivotTable parseConfiguration(XMLStreamReader reader) throws Exception {
+		
+		// only builds standalone elements, nothing is appended to it
+		Document doc = newDocument();
+		
+		if (!nextElement(reader))
+			throw new IllegalStateException(
+				"Root element is missing!");
 		
-		Element root = doc.getDocumentElement();
-		root.normalize();
+		Element root = readAttributes(reader, doc);
 
 		PivotTable table = new PivotTable();
 
@@ -486,51 +815,154 @@ public class XMLProvider implements ConfigurationProvider {
 			table.setDataCaption(root.getAttribute(AT_DATA_CAPTION).trim());
 		
 		/*
-		 * Documents
+		 * Documents and fields
 		 */
 		
-		ElementIterator documents = ElementIterator.create(root, EL_DOCUMENT);
-		for (Element e : documents) {
-			
-			String type = e.getAttribute(AT_TYPE).trim();
-			if (type.isEmpty())
-				throw new IllegalStateException(
-					"Type is missing for a document element!");
+		while (nextElement(reader)) {
 			
-			com.vsubhuman.smartxls.Document document = parseDocument(e, type);
-			if (type.equals(VA_TYPE_SOURCE))
-				table.setSourceDocument(document);
-			else if (type.equals(VA_TYPE_TARGET))
-				table.setTargetDocument(document);
-			else
-				throw new IllegalStateException(
-					"Illegal type for a document element: '" + type + "'!");
+			String name = getName(reader);
+			if (name.equals(EL_DOCUMENT))
+				parseDocument(table, readElement(reader, doc));
+			else if (name.equals(EL_FIELD))
+				table.addField(parseField(readElement(reader, doc)));
 		}
 		
-		/*
-		 * Fields
-		 */
+		return table;
+	}
+	
+	/*
+	 * Parses document of the specified table from specified element
+	 */
+	private void parseDocument(PivotTable table, Element e) {
 		
-		ElementIterator fields = ElementIterator.create(root, EL_FIELD);
-		for (Element e : fields) {
-
-			String type = e.getAttribute(AT_TYPE).trim();
-			XMLFieldProvider provider = providers.get(type);
-			if (provider == null) {
+		String type = e.getAttribute(AT_TYPE).trim();
+		if (type.isEmpty())
+			throw new IllegalStateException(
+				"Type is missing for a document element!");
+		
+		com.vsubhuman.smartxls.Document document = parseDocument(e, type);
+		if (type.equals(VA_TYPE_SOURCE))
+			table.setSourceDocument(document);
+		else if (type.equals(VA_TYPE_TARGET))
+			table.setTargetDocument(document);
+		else
+			throw new IllegalStateException(
+				"Illegal type for a document element: '" + type + "'!");
+	}
+		
+	/*
+	 * Parses field from specified element
+	 */
+	private PivotField parseField(Element e) {
+		
+		String type = e.getAttribute(AT_TYPE).trim();
+		XMLFieldProvider provider = providers.get(type);
+		if (provider == null) {
 
-				String fullType = XMLProvider.class.getPackage().getName() + "." + type;
-				provider = providers.get(fullType);
-				if (provider == null)
-					throw new IllegalStateException(
-						"XML provider not found for field type: '" + type + "'!");
-			}
+			String fullType = XMLProvider.class.getPackage().getName() + "." + type;
+			provider = providers.get(fullType);
+			if (provider == null)
+				throw new IllegalStateException(
+					"XML provider not found for field type: '" + type + "'!");
+		}
 
-			PivotField f = provider.importField(e);
+		return provider.importField(e);
+	}
 			
-			table.addField(f);
+	/*
+	 * Reading
+	 */
+	
+	/*
+	 * Moves reader to the start of the next element,
+	 * returns false if document is ended
+	 */
+	private static boolean nextElement(XMLStreamReader reader) throws Exception {
+		
+		while (reader.hasNext()) {
+			
+			if (reader.next() == XMLStreamConstants.START_ELEMENT)
+				return true;
 		}
 		
-		return table;
+		return false;
+	}
+	
+	/*
+	 * Returns qualified name of the current element
+	 */
+	private static String getName(XMLStreamReader reader) {
+		
+		String prefix = reader.getPrefix();
+		if (prefix == null || prefix.isEmpty())
+			return reader.getLocalName();
+		
+		return prefix + ":" + reader.getLocalName();
+	}
+	
+	/*
+	 * Creates standalone element for the current element
+	 * of the reader, with all its attributes
+	 */
+	private static Element readAttributes(XMLStreamReader reader, Document doc) {
+		
+		Element e = doc.createElement(getName(reader));
+		
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			
+			String prefix = reader.getAttributePrefix(i);
+			String name = reader.getAttributeLocalName(i);
+			if (prefix != null && !prefix.isEmpty())
+				name = prefix + ":" + name;
+			
+			e.setAttribute(name, reader.getAttributeValue(i));
+		}
+		
+		return e;
+	}
+	
+	/*
+	 * Reads the current element till its end. Creates standalone element with
+	 * the whole subtree of the element: child elements with their attributes, text,
+	 * CDATA sections and comments, the same nodes DOM parser creates
+	 */
+	private static Element readElement(XMLStreamReader reader, Document doc) throws Exception {
+		
+		Element e = readAttributes(reader, doc);
+		
+		Node parent = e;
+		while (parent != null) {
+			
+			switch (reader.next()) {
+			
+			case XMLStreamConstants.START_ELEMENT:
+				parent = parent.appendChild(readAttributes(reader, doc));
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				parent = parent == e ? null : parent.getParentNode();
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.SPACE:
+				
+				// parser may report one text in several parts
+				Node last = parent.getLastChild();
+				if (last != null && last.getNodeType() == Node.TEXT_NODE)
+					((Text) last).appendData(reader.getText());
+				else
+					parent.appendChild(doc.createTextNode(reader.getText()));
+				break;
+			case XMLStreamConstants.CDATA:
+				parent.appendChild(doc.createCDATASection(reader.getText()));
+				break;
+			case XMLStreamConstants.COMMENT:
+				parent.appendChild(doc.createComment(reader.getText()));
+				break;
+			default:
+				break;
+			}
+		}
+		
+		return e;
 	}
 
 	/*
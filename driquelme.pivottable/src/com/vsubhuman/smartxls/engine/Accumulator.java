@@ -0,0 +1,403 @@
+package com.vsubhuman.smartxls.engine;
+
+import com.vsubhuman.smartxls.SummarizeType;
+
+/**
+ * <p>Class represents entity accumulating values of one data field
+ * in one cell of the pivot table.</p>
+ * 
+ * <p>Use {@link #create(SummarizeType)} to get accumulator for the
+ * specific summarize type. Numbers are added with {@link #add(double)},
+ * not empty cells without number - with {@link #addText()}, empty cells
+ * are not added at all.</p>
+ * 
+ * <p>Accumulators of the same type can be merged by {@link #merge(Accumulator)},
+ * so parts of the source can be accumulated separately (e.g. on the different threads)
+ * and combined afterwards. Merging is associative: result doesn't depend on how
+ * parts are grouped, up to the floating-point rounding.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public abstract class Accumulator {
+	
+	/**
+	 * Creates new accumulator for the specified summarize type.
+	 * If type is <code>null</code> - accumulator summarizes values
+	 * like Excel does by default: sum for the number fields,
+	 * count for the others, see {@link #getResult(boolean)}.
+	 * 
+	 * @param type - summarize type or <code>null</code>
+	 * @return new accumulator
+	 * @since 1.1
+	 */
+	public static Accumulator create(SummarizeType type) {
+		
+		if (type == null)
+			return new Automatic();
+		
+		switch (type) {
+		
+		case SUM:
+			return new Sum();
+		case COUNT:
+			return new Count();
+		case COUNT_NUMS:
+			return new CountNums();
+		case AVERAGE:
+			return new Average();
+		case MIN:
+			return new Min();
+		case MAX:
+			return new Max();
+		case PRODUCT:
+			return new Product();
+		case STD_DEV:
+			return new Variance(true, true);
+		case STD_DEVP:
+			return new Variance(true, false);
+		case VAR:
+			return new Variance(false, true);
+		case VARP:
+			return new Variance(false, false);
+		default:
+			throw new IllegalArgumentException("Unknown summarize type: " + type + '!');
+		}
+	}
+	
+	/**
+	 * Adds number to the accumulator.
+	 * 
+	 * @param value - number value of the cell
+	 * @since 1.1
+	 */
+	public abstract void add(double value);
+	
+	/**
+	 * Adds not empty cell without number to the accumulator.
+	 * Only counting accumulators are affected, by default - does nothing.
+	 * 
+	 * @since 1.1
+	 */
+	public void addText() {}
+	
+	/**
+	 * Adds all values of the specified accumulator to this accumulator.
+	 * Specified accumulator is not changed.
+	 * 
+	 * @param other - accumulator of the same type
+	 * @throws IllegalArgumentException - if accumulator has different type
+	 * @since 1.1
+	 */
+	public void merge(Accumulator other) throws IllegalArgumentException {
+		
+		if (other == null || other.getClass() != getClass())
+			throw new IllegalArgumentException(
+				"Cannot merge accumulators of different types!");
+		
+		doMerge(other);
+	}
+	
+	/*
+	 * Merges accumulator of the same type
+	 */
+	abstract void doMerge(Accumulator other);
+	
+	/**
+	 * @return result of the accumulation, or {@link Double#NaN} if result
+	 * cannot be calculated (Excel shows error in this case)
+	 * @since 1.1
+	 */
+	public abstract double getResult();
+	
+	/**
+	 * Returns result of the accumulation with the known summarize type.
+	 * Accumulator without summarize type returns sum if <code>numeric</code>
+	 * is <code>true</code> and count otherwise, others ignore the parameter.
+	 * 
+	 * @param numeric - <code>true</code> if the whole field contains only numbers
+	 * @return result of the accumulation
+	 * @since 1.1
+	 */
+	public double getResult(boolean numeric) {
+		return getResult();
+	}
+	
+	/*
+	 * Accumulators
+	 */
+	
+	private static class Sum extends Accumulator {
+		
+		double sum;
+		
+		@Override
+		public void add(double value) {
+			sum += value;
+		}
+		
+		@Override
+		void doMerge(Accumulator other) {
+			sum += ((Sum) other).sum;
+		}
+		
+		@Override
+		public double getResult() {
+			return sum;
+		}
+	}
+	
+	private static class Count extends Accumulator {
+		
+		long count;
+		
+		@Override
+		public void add(double value) {
+			count++;
+		}
+		
+		@Override
+		public void addText() {
+			count++;
+		}
+		
+		@Override
+		void doMerge(Accumulator other) {
+			count += ((Count) other).count;
+		}
+		
+		@Override
+		public double getResult() {
+			return count;
+		}
+	}
+	
+	private static class CountNums extends Accumulator {
+		
+		long count;
+		
+		@Override
+		public void add(double value) {
+			count++;
+		}
+		
+		@Override
+		void doMerge(Accumulator other) {
+			count += ((CountNums) other).count;
+		}
+		
+		@Override
+		public double getResult() {
+			return count;
+		}
+	}
+	
+	private static class Automatic extends Accumulator {
+		
+		double sum;
+		long count;
+		
+		@Override
+		public void add(double value) {
+			
+			sum += value;
+			count++;
+		}
+		
+		@Override
+		public void addText() {
+			count++;
+		}
+		
+		@Override
+		void doMerge(Accumulator other) {
+			
+			Automatic automatic = (Automatic) other;
+			sum += automatic.sum;
+			count += automatic.count;
+		}
+		
+		@Override
+		public double getResult() {
+			return sum;
+		}
+		
+		@Override
+		public double getResult(boolean numeric) {
+			return numeric ? sum : count;
+		}
+	}
+	
+	private static class Average extends Accumulator {
+		
+		double sum;
+		long count;
+		
+		@Override
+		public void add(double value) {
+			
+			sum += value;
+			count++;
+		}
+		
+		@Override
+		void doMerge(Accumulator other) {
+			
+			Average average = (Average) other;
+			sum += average.sum;
+			count += average.count;
+		}
+		
+		@Override
+		public double getResult() {
+			return count == 0 ? Double.NaN : sum / count;
+		}
+	}
+	
+	private static class Min extends Accumulator {
+		
+		double min = Double.POSITIVE_INFINITY;
+		
+		@Override
+		public void add(double value) {
+			
+			if (value < min)
+				min = value;
+		}
+		
+		@Override
+		void doMerge(Accumulator other) {
+			
+			double value = ((Min) other).min;
+			if (value < min)
+				min = value;
+		}
+		
+		@Override
+		public double getResult() {
+			return min == Double.POSITIVE_INFINITY ? 0 : min;
+		}
+	}
+	
+	private static class Max extends Accumulator {
+		
+		double max = Double.NEGATIVE_INFINITY;
+		
+		@Override
+		public void add(double value) {
+			
+			if (value > max)
+				max = value;
+		}
+		
+		@Override
+		void doMerge(Accumulator other) {
+			
+			double value = ((Max) other).max;
+			if (value > max)
+				max = value;
+		}
+		
+		@Override
+		public double getResult() {
+			return max == Double.NEGATIVE_INFINITY ? 0 : max;
+		}
+	}
+	
+	private static class Product extends Accumulator {
+		
+		double product = 1;
+		long count;
+		
+		@Override
+		public void add(double value) {
+			
+			product *= value;
+			count++;
+		}
+		
+		@Override
+		void doMerge(Accumulator other) {
+			
+			Product product = (Product) other;
+			this.product *= product.product;
+			count += product.count;
+		}
+		
+		@Override
+		public double getResult() {
+			return count == 0 ? 0 : product;
+		}
+	}
+	
+	/*
+	 * Variance is accumulated by Welford's algorithm and merged
+	 * by Chan's formula, so it's stable for the big values
+	 */
+	private static class Variance extends Accumulator {
+		
+		// if true - result is square root of the variance
+		private final boolean deviation;
+		
+		// if true - variance of the sample, otherwise - of the population
+		private final boolean sample;
+		
+		long count;
+		double mean;
+		
+		// sum of the squared differences from the mean
+		double m2;
+		
+		Variance(boolean deviation, boolean sample) {
+			
+			this.deviation = deviation;
+			this.sample = sample;
+		}
+		
+		@Override
+		public void add(double value) {
+			
+			count++;
+			double delta = value - mean;
+			mean += delta / count;
+			m2 += delta * (value - mean);
+		}
+		
+		@Override
+		public void merge(Accumulator other) throws IllegalArgumentException {
+			
+			if (other instanceof Variance && (((Variance) other).deviation != deviation
+					|| ((Variance) other).sample != sample))
+				throw new IllegalArgumentException(
+					"Cannot merge accumulators of different types!");
+			
+			super.merge(other);
+		}
+		
+		@Override
+		void doMerge(Accumulator other) {
+			
+			Variance variance = (Variance) other;
+			if (variance.count == 0)
+				return;
+			
+			long total = count + variance.count;
+			double delta = variance.mean - mean;
+			
+			m2 += variance.m2 + delta * delta * ((double) count * variance.count / total);
+			mean += delta * variance.count / total;
+			count = total;
+		}
+		
+		@Override
+		public double getResult() {
+			
+			long divisor = sample ? count - 1 : count;
+			if (divisor <= 0)
+				return Double.NaN;
+			
+			double variance = m2 / divisor;
+			return deviation ? Math.sqrt(variance) : variance;
+		}
+	}
+}
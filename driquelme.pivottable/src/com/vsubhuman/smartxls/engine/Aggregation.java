@@ -0,0 +1,368 @@
+package com.vsubhuman.smartxls.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.vsubhuman.smartxls.ResourceUsage;
+
+/**
+ * <p>Class aggregates rows of the source table into the cells
+ * and totals of the pivot table.</p>
+ * 
+ * <p>Every source row is added as the codes of the row and column fields
+ * (see {@link Dictionary}) and the accumulated values (see {@link PivotSpec}).</p>
+ * 
+ * <p>Parts of the source can be aggregated separately, with their own codes
+ * of the fields, and merged by {@link #merge(Aggregation, int[][], int[][])}.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+final class Aggregation {
+	
+	/**
+	 * Kind of the empty value
+	 */
+	static final byte EMPTY = 0;
+	
+	/**
+	 * Kind of the number value
+	 */
+	static final byte NUMBER = 1;
+	
+	/**
+	 * Kind of the not empty value without number
+	 */
+	static final byte TEXT = 2;
+	
+	private final PivotSpec spec;
+	private final int valueCount;
+	private final int dataCount;
+	
+	private final GroupTable rows;
+	private final GroupTable columns;
+	private final GroupTable cells;
+	
+	// accumulators of the cells by cell * valueCount + value
+	private final List<Accumulator> cellValues = new ArrayList<Accumulator>();
+	
+	// true if value contains only numbers
+	private final boolean[] numeric;
+	
+	private final int[] cellKey = new int[2];
+	
+	/**
+	 * Creates empty aggregation.
+	 * 
+	 * @param spec - specification of the pivot table
+	 * @since 1.1
+	 */
+	Aggregation(PivotSpec spec) {
+		
+		this.spec = spec;
+		this.valueCount = spec.valueColumns.length;
+		this.dataCount = spec.dataValues.length;
+		this.rows = new GroupTable(spec.rowColumns.length, 64);
+		this.columns = new GroupTable(spec.columnColumns.length, 16);
+		this.cells = new GroupTable(2, 256);
+		this.numeric = new boolean[valueCount];
+		
+		Arrays.fill(numeric, true);
+	}
+	
+	/**
+	 * Adds source row to the aggregation.
+	 * 
+	 * @param rowKey - codes of the row fields
+	 * @param columnKey - codes of the column fields
+	 * @param kinds - kinds of the accumulated values
+	 * @param values - numbers of the accumulated values
+	 * @since 1.1
+	 */
+	void add(int[] rowKey, int[] columnKey, byte[] kinds, double[] values) {
+		
+		int row = rows.add(rowKey);
+		int column = columns.add(columnKey);
+		
+		cellKey[0] = row;
+		cellKey[1] = column;
+		int cell = cells.add(cellKey);
+		
+		ensure(cellValues, cells.size());
+		
+		int offset = cell * valueCount;
+		for (int v = 0; v < valueCount; v++) {
+			
+			byte kind = kinds[v];
+			if (kind == NUMBER) {
+				
+				cellValues.get(offset + v).add(values[v]);
+			}
+			else {
+				
+				numeric[v] = false;
+				if (kind == TEXT)
+					cellValues.get(offset + v).addText();
+			}
+		}
+	}
+	
+	/**
+	 * Adds all cells of the specified aggregation to this aggregation.
+	 * Specified aggregation is not changed.
+	 * 
+	 * @param other - aggregation of the same pivot table
+	 * @param rowCodes - codes of the row fields of this aggregation
+	 * by codes of the other one, for every field
+	 * @param columnCodes - codes of the column fields of this aggregation
+	 * by codes of the other one, for every field
+	 * @since 1.1
+	 */
+	void merge(Aggregation other, int[][] rowCodes, int[][] columnCodes) {
+		
+		int[] rowKey = new int[rows.getArity()];
+		int[] columnKey = new int[columns.getArity()];
+		
+		// groups of this aggregation by groups of the other
+		int[] rowGroups = new int[other.rows.size()];
+		for (int g = 0; g < rowGroups.length; g++) {
+			
+			for (int f = 0; f < rowKey.length; f++)
+				rowKey[f] = rowCodes[f][other.rows.getKey(g, f)];
+			
+			rowGroups[g] = rows.add(rowKey);
+		}
+		
+		int[] columnGroups = new int[other.columns.size()];
+		for (int g = 0; g < columnGroups.length; g++) {
+			
+			for (int f = 0; f < columnKey.length; f++)
+				columnKey[f] = columnCodes[f][other.columns.getKey(g, f)];
+			
+			columnGroups[g] = columns.add(columnKey);
+		}
+		
+		for (int cell = 0; cell < other.cells.size(); cell++) {
+			
+			cellKey[0] = rowGroups[other.cells.getKey(cell, 0)];
+			cellKey[1] = columnGroups[other.cells.getKey(cell, 1)];
+			
+			int target = cells.add(cellKey);
+			ensure(cellValues, cells.size());
+			
+			for (int v = 0; v < valueCount; v++)
+				cellValues.get(target * valueCount + v).merge(other.cellValues.get(cell * valueCount + v));
+		}
+		
+		for (int v = 0; v < valueCount; v++)
+			numeric[v] &= other.numeric[v];
+	}
+	
+	/*
+	 * Creates accumulators for the new groups
+	 */
+	private void ensure(List<Accumulator> accumulators, int groups) {
+		
+		while (accumulators.size() < groups * valueCount)
+			accumulators.add(Accumulator.create(spec.valueTypes[accumulators.size() % valueCount]));
+	}
+	
+	/*
+	 * Creates accumulators for the specified number of groups
+	 */
+	private List<Accumulator> create(int groups) {
+		
+		List<Accumulator> accumulators = new ArrayList<Accumulator>(groups * valueCount);
+		ensure(accumulators, groups);
+		
+		return accumulators;
+	}
+	
+	/**
+	 * Creates result of the aggregation.
+	 * 
+	 * @param rowDictionaries - dictionaries of the row fields
+	 * @param columnDictionaries - dictionaries of the column fields
+	 * @param usage - resources spent by the computation
+	 * @return pivot result
+	 * @since 1.1
+	 */
+	PivotResult toResult(Dictionary[] rowDictionaries, Dictionary[] columnDictionaries, ResourceUsage usage) {
+		
+		int[] rowOrder = order(rows, rowDictionaries, spec.rowDescending, spec.rowManual);
+		int[] columnOrder = order(columns, columnDictionaries, spec.columnDescending, spec.columnManual);
+		
+		int rowCount = rowOrder.length;
+		int columnCount = columnOrder.length;
+		
+		// position of the group in the result, by group index
+		int[] rowPosition = new int[rowCount];
+		for (int i = 0; i < rowCount; i++)
+			rowPosition[rowOrder[i]] = i;
+		
+		int[] columnPosition = new int[columnCount];
+		for (int i = 0; i < columnCount; i++)
+			columnPosition[columnOrder[i]] = i;
+		
+		double[] values = new double[rowCount * columnCount * dataCount];
+		Arrays.fill(values, Double.NaN);
+		
+		// totals are merged from the cells, by group index
+		List<Accumulator> rowTotals = create(rowCount);
+		List<Accumulator> columnTotals = create(columnCount);
+		List<Accumulator> grandTotals = create(1);
+		
+		Evaluator evaluator = new Evaluator();
+		
+		for (int cell = 0; cell < cells.size(); cell++) {
+			
+			int rowGroup = cells.getKey(cell, 0);
+			int columnGroup = cells.getKey(cell, 1);
+			int offset = (rowPosition[rowGroup] * columnCount + columnPosition[columnGroup]) * dataCount;
+			
+			evaluator.evaluate(cellValues, cell, values, offset);
+			
+			for (int v = 0; v < valueCount; v++) {
+				
+				Accumulator accumulator = cellValues.get(cell * valueCount + v);
+				rowTotals.get(rowGroup * valueCount + v).merge(accumulator);
+				columnTotals.get(columnGroup * valueCount + v).merge(accumulator);
+			}
+		}
+		
+		for (int row = 0; row < rowCount; row++) {
+			
+			for (int v = 0; v < valueCount; v++)
+				grandTotals.get(v).merge(rowTotals.get(row * valueCount + v));
+		}
+		
+		String[] dataNames = new String[dataCount];
+		for (int d = 0; d < dataCount; d++)
+			dataNames[d] = spec.getDataName(d, spec.dataValues[d] < 0 || numeric[spec.dataValues[d]]);
+		
+		return new PivotResult(spec.rowNames, spec.columnNames, dataNames,
+			keys(rows, rowOrder, rowDictionaries), keys(columns, columnOrder, columnDictionaries),
+			values, totals(evaluator, rowTotals, rowOrder), totals(evaluator, columnTotals, columnOrder),
+			totals(evaluator, grandTotals, new int[] {0}), usage);
+	}
+	
+	private double[] totals(Evaluator evaluator, List<Accumulator> accumulators, int[] order) {
+		
+		double[] result = new double[order.length * dataCount];
+		for (int i = 0; i < order.length; i++)
+			evaluator.evaluate(accumulators, order[i], result, i * dataCount);
+		
+		return result;
+	}
+	
+	/*
+	 * Computes results of the data fields from the accumulated values,
+	 * evaluates formulas with preallocated registers
+	 */
+	private class Evaluator {
+		
+		private final double[][] arguments = new double[dataCount][];
+		private final double[][] registers = new double[dataCount][];
+		
+		Evaluator() {
+			
+			for (int d = 0; d < dataCount; d++) {
+				
+				if (spec.formulas[d] != null) {
+					
+					arguments[d] = new double[spec.formulaValues[d].length];
+					registers[d] = spec.formulas[d].createRegisters();
+				}
+			}
+		}
+		
+		void evaluate(List<Accumulator> accumulators, int group, double[] target, int offset) {
+			
+			int base = group * valueCount;
+			for (int d = 0; d < dataCount; d++) {
+				
+				Formula formula = spec.formulas[d];
+				if (formula == null) {
+					
+					int value = spec.dataValues[d];
+					target[offset + d] = accumulators.get(base + value).getResult(numeric[value]);
+					continue;
+				}
+				
+				int[] references = spec.formulaValues[d];
+				for (int i = 0; i < references.length; i++)
+					arguments[d][i] = accumulators.get(base + references[i]).getResult();
+				
+				target[offset + d] = formula.evaluate(arguments[d], registers[d]);
+			}
+		}
+	}
+	
+	private static Object[][] keys(GroupTable groups, int[] order, Dictionary[] dictionaries) {
+		
+		Object[][] result = new Object[order.length][];
+		for (int i = 0; i < order.length; i++) {
+			
+			Object[] key = new Object[dictionaries.length];
+			for (int f = 0; f < key.length; f++)
+				key[f] = dictionaries[f].get(groups.getKey(order[i], f));
+			
+			result[i] = key;
+		}
+		
+		return result;
+	}
+	
+	/*
+	 * Returns indexes of the groups in the sorted order
+	 */
+	private static int[] order(final GroupTable groups, Dictionary[] dictionaries,
+			boolean[] descending, boolean[] manual) {
+		
+		final int arity = groups.getArity();
+		
+		// rank of every code, by field
+		final int[][] ranks = new int[arity][];
+		for (int f = 0; f < arity; f++) {
+			
+			if (!manual[f])
+				ranks[f] = dictionaries[f].ranks(descending[f]);
+		}
+		
+		Integer[] order = new Integer[groups.size()];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		
+		Arrays.sort(order, new Comparator<Integer>() {
+			
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				
+				for (int f = 0; f < arity; f++) {
+					
+					int c1 = groups.getKey(o1, f);
+					int c2 = groups.getKey(o2, f);
+					
+					if (ranks[f] != null) {
+						
+						c1 = ranks[f][c1];
+						c2 = ranks[f][c2];
+					}
+					
+					if (c1 != c2)
+						return c1 < c2 ? -1 : 1;
+				}
+				
+				return 0;
+			}
+		});
+		
+		int[] result = new int[order.length];
+		for (int i = 0; i < order.length; i++)
+			result[i] = order[i];
+		
+		return result;
+	}
+}
@@ -0,0 +1,89 @@
+package com.vsubhuman.smartxls.engine;
+
+/**
+ * <p>Class represents one column of the {@link ColumnarTable}.</p>
+ * 
+ * <p>Numbers are stored in the primitive array, texts are encoded by the
+ * {@link Dictionary} into the array of codes, empty cells are marked in the
+ * bitmap. Arrays that are not needed by the column (no numbers or no texts)
+ * are not allocated. Cell is empty if its bit is set, contains text if its code
+ * is not negative, and contains number otherwise.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+final class Column {
+	
+	final String name;
+	final int size;
+	
+	// numbers by row, null if column has no numbers
+	final double[] numbers;
+	
+	// codes of the texts by row (-1 if not text), null if column has no texts
+	final int[] codes;
+	
+	// dictionary of the texts, null if column has no texts
+	final Dictionary dictionary;
+	
+	// bitmap of the empty cells, null if column has no empty cells
+	final long[] nulls;
+	
+	/*
+	 * Constructor
+	 */
+	Column(String name, int size, double[] numbers, int[] codes, Dictionary dictionary, long[] nulls) {
+		
+		this.name = name;
+		this.size = size;
+		this.numbers = numbers;
+		this.codes = codes;
+		this.dictionary = dictionary;
+		this.nulls = nulls;
+	}
+	
+	boolean isEmpty(int row) {
+		return nulls != null && (nulls[row >>> 6] & (1L << row)) != 0;
+	}
+	
+	boolean isText(int row) {
+		return codes != null && codes[row] >= 0;
+	}
+	
+	boolean isNumber(int row) {
+		return numbers != null && !isEmpty(row) && !isText(row);
+	}
+	
+	double getNumber(int row) {
+		return isNumber(row) ? numbers[row] : Double.NaN;
+	}
+	
+	String getText(int row) {
+		
+		if (isEmpty(row))
+			return null;
+		
+		if (isText(row))
+			return (String) dictionary.get(codes[row]);
+		
+		return RowSource.format(numbers[row]);
+	}
+	
+	/*
+	 * Returns estimated number of bytes used by arrays of the column
+	 */
+	long getMemorySize() {
+		
+		long bytes = 0;
+		if (numbers != null)
+			bytes += 8L * numbers.length;
+		if (codes != null)
+			bytes += 4L * codes.length;
+		if (nulls != null)
+			bytes += 8L * nulls.length;
+		if (dictionary != null)
+			bytes += 64L * dictionary.size();
+		
+		return bytes;
+	}
+}
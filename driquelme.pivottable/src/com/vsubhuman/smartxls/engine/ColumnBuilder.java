@@ -0,0 +1,242 @@
+package com.vsubhuman.smartxls.engine;
+
+import java.util.Arrays;
+
+/**
+ * <p>Class builds {@link Column} from the values added one by one.</p>
+ * 
+ * <p>Arrays of the numbers, codes and empty cells are allocated on the first
+ * value of the corresponding kind and grow by doubling.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+final class ColumnBuilder {
+	
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private int size;
+	private int capacity = INITIAL_CAPACITY;
+	
+	private double[] numbers;
+	private int[] codes;
+	private Dictionary dictionary;
+	private long[] nulls;
+	
+	/**
+	 * @return number of the added values
+	 * @since 1.1
+	 */
+	int size() {
+		return size;
+	}
+	
+	/**
+	 * Adds value of the specified column of the current row of the source.
+	 * 
+	 * @param source - source table
+	 * @param column - index of the column
+	 * @since 1.1
+	 */
+	void add(RowSource source, int column) {
+		
+		if (source.isNumber(column))
+			addNumber(source.getNumber(column));
+		else if (source.isEmpty(column))
+			addEmpty();
+		else
+			addText(source, column);
+	}
+	
+	/**
+	 * Adds number value.
+	 * 
+	 * @param number - value to add
+	 * @since 1.1
+	 */
+	void addNumber(double number) {
+		
+		ensure(size + 1);
+		if (numbers == null)
+			numbers = new double[capacity];
+		
+		numbers[size++] = number;
+	}
+	
+	/**
+	 * Adds text value.
+	 * 
+	 * @param text - value to add
+	 * @since 1.1
+	 */
+	void addText(String text) {
+		
+		prepareText();
+		codes[size++] = dictionary.encode(text);
+	}
+	
+	/*
+	 * Adds text of the specified column of the current row of the
+	 * source, shared strings are decoded only once
+	 */
+	private void addText(RowSource source, int column) {
+		
+		prepareText();
+		codes[size++] = dictionary.encodeText(source, column);
+	}
+	
+	private void prepareText() {
+		
+		ensure(size + 1);
+		if (codes == null) {
+			
+			codes = new int[capacity];
+			Arrays.fill(codes, -1);
+			dictionary = new Dictionary();
+		}
+	}
+	
+	/**
+	 * Adds empty value.
+	 * 
+	 * @since 1.1
+	 */
+	void addEmpty() {
+		
+		ensure(size + 1);
+		if (nulls == null)
+			nulls = new long[(capacity + 63) >>> 6];
+		
+		nulls[size >>> 6] |= 1L << size;
+		size++;
+	}
+	
+	/**
+	 * Removes values after the specified number of the values.
+	 * 
+	 * @param count - number of the values to keep
+	 * @since 1.1
+	 */
+	void truncate(int count) {
+		
+		if (count >= size)
+			return;
+		
+		for (int i = count; i < size; i++) {
+			
+			if (codes != null)
+				codes[i] = -1;
+			
+			if (nulls != null)
+				nulls[i >>> 6] &= ~(1L << i);
+		}
+		
+		size = count;
+	}
+	
+	/**
+	 * Creates column from the added values. Arrays are trimmed to the
+	 * size of the column, builder should not be used after this call.
+	 * 
+	 * @param name - name of the column
+	 * @return created column
+	 * @since 1.1
+	 */
+	Column build(String name) {
+		
+		if (dictionary != null)
+			dictionary.releaseShared();
+		
+		return new Column(name, size,
+			numbers == null ? null : Arrays.copyOf(numbers, size),
+			codes == null ? null : Arrays.copyOf(codes, size),
+			dictionary,
+			nulls == null ? null : Arrays.copyOf(nulls, (size + 63) >>> 6));
+	}
+	
+	/**
+	 * Adds all values of the specified builder after the values of this builder.
+	 * Texts are encoded by the dictionary of this builder.
+	 * 
+	 * @param other - builder to add values of
+	 * @param count - number of the values to add, from the start of the other builder
+	 * @since 1.1
+	 */
+	void append(ColumnBuilder other, int count) {
+		
+		count = Math.min(count, other.size);
+		if (count <= 0)
+			return;
+		
+		ensure(size + count);
+		
+		if (other.numbers != null) {
+			
+			if (numbers == null)
+				numbers = new double[capacity];
+			
+			System.arraycopy(other.numbers, 0, numbers, size, count);
+		}
+		
+		if (other.codes != null) {
+			
+			if (codes == null) {
+				
+				codes = new int[capacity];
+				Arrays.fill(codes, -1);
+				dictionary = new Dictionary();
+			}
+			
+			// codes of this builder by codes of the other
+			int[] translation = new int[other.dictionary.size()];
+			for (int i = 0; i < translation.length; i++)
+				translation[i] = dictionary.encode(other.dictionary.get(i));
+			
+			for (int i = 0; i < count; i++) {
+				
+				int code = other.codes[i];
+				codes[size + i] = code < 0 ? -1 : translation[code];
+			}
+		}
+		
+		if (other.nulls != null) {
+			
+			if (nulls == null)
+				nulls = new long[(capacity + 63) >>> 6];
+			
+			for (int i = 0; i < count; i++) {
+				
+				if ((other.nulls[i >>> 6] & (1L << i)) != 0)
+					nulls[(size + i) >>> 6] |= 1L << (size + i);
+			}
+		}
+		
+		size += count;
+	}
+	
+	/*
+	 * Grows allocated arrays if there's no space
+	 * for the specified number of values
+	 */
+	private void ensure(int required) {
+		
+		if (required <= capacity)
+			return;
+		
+		int length = capacity;
+		while (capacity < required)
+			capacity = capacity * 2;
+		
+		if (numbers != null)
+			numbers = Arrays.copyOf(numbers, capacity);
+		
+		if (codes != null) {
+			
+			codes = Arrays.copyOf(codes, capacity);
+			Arrays.fill(codes, length, capacity, -1);
+		}
+		
+		if (nulls != null)
+			nulls = Arrays.copyOf(nulls, (capacity + 63) >>> 6);
+	}
+}
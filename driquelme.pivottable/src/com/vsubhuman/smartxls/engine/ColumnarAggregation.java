@@ -0,0 +1,387 @@
+package com.vsubhuman.smartxls.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.vsubhuman.smartxls.ResourceUsage;
+
+/**
+ * <p>Class aggregates {@link ColumnarTable} sequentially or in parallel.</p>
+ * 
+ * <p>Rows are split into chunks, every chunk is aggregated into its own
+ * {@link Aggregation} by separate task. Task encodes values of the row and
+ * column fields of its rows into its own codes, so no task reads all the rows
+ * and dictionaries are not shared between threads. Partial aggregations are
+ * merged pairwise, level by level, till the one is left: codes of the second
+ * part are translated into the codes of the first one once per distinct value.
+ * Tasks of the level are submitted only after the previous level is done,
+ * so tasks never wait for each other and executor of any size can be used.</p>
+ * 
+ * <p>Calling thread and every task are measured into the {@link ResourceUsage}
+ * of the result.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+final class ColumnarAggregation {
+	
+	/**
+	 * Minimal number of the rows in one chunk
+	 */
+	static final int MIN_CHUNK_SIZE = 1 << 16;
+	
+	private final PivotSpec spec;
+	private final int rowCount;
+	
+	private final Column[] rowColumns;
+	private final Column[] columnColumns;
+	private final Column[] valueColumns;
+	
+	private final ResourceUsage usage = new ResourceUsage();
+	
+	/**
+	 * Creates aggregation of the specified table.
+	 * 
+	 * @param spec - specification of the pivot table
+	 * @param data - source table
+	 * @since 1.1
+	 */
+	ColumnarAggregation(PivotSpec spec, ColumnarTable data) {
+		
+		this.spec = spec;
+		this.rowCount = data.getRowCount();
+		this.rowColumns = columns(data, spec.rowColumns);
+		this.columnColumns = columns(data, spec.columnColumns);
+		this.valueColumns = columns(data, spec.valueColumns);
+	}
+	
+	/**
+	 * Aggregates all rows in the current thread.
+	 * 
+	 * @return pivot result
+	 * @since 1.1
+	 */
+	PivotResult compute() {
+		
+		ResourceUsage.Measurement measurement = usage.start();
+		try {
+			
+			return toResult(aggregate(0, rowCount));
+		
+		} finally {
+			measurement.stop();
+		}
+	}
+	
+	/**
+	 * Aggregates rows by tasks of the specified executor. Current thread
+	 * waits for the tasks to finish.
+	 * 
+	 * @param executor - executor to run the tasks
+	 * @return pivot result
+	 * @throws InterruptedException - if current thread was interrupted
+	 * @throws ExecutionException - if task has failed
+	 * @since 1.1
+	 */
+	PivotResult compute(ExecutorService executor) throws InterruptedException, ExecutionException {
+		
+		ResourceUsage.Measurement measurement = usage.start();
+		try {
+			
+			return computeParallel(executor);
+		
+		} finally {
+			measurement.stop();
+		}
+	}
+	
+	/*
+	 * Runs the tasks, current thread is measured by the caller
+	 */
+	private PivotResult computeParallel(ExecutorService executor)
+			throws InterruptedException, ExecutionException {
+		
+		/*
+		 * Aggregation of the chunks
+		 */
+		
+		int chunks = Math.min((rowCount + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE,
+			Runtime.getRuntime().availableProcessors() * 4);
+		chunks = Math.max(chunks, 1);
+		
+		List<Future<Partial>> partials = new ArrayList<Future<Partial>>(chunks);
+		for (int i = 0; i < chunks; i++) {
+			
+			int from = (int) ((long) rowCount * i / chunks);
+			int to = (int) ((long) rowCount * (i + 1) / chunks);
+			partials.add(executor.submit(new ChunkTask(from, to)));
+		}
+		
+		/*
+		 * Merging
+		 */
+		
+		List<Partial> level = new ArrayList<Partial>(chunks);
+		for (Future<Partial> partial : partials)
+			level.add(partial.get());
+		
+		while (level.size() > 1) {
+			
+			List<Future<Partial>> merged = new ArrayList<Future<Partial>>();
+			for (int i = 0; i + 1 < level.size(); i += 2)
+				merged.add(executor.submit(new MergeTask(level.get(i), level.get(i + 1), usage)));
+			
+			Partial odd = level.size() % 2 == 0 ? null : level.get(level.size() - 1);
+			
+			level = new ArrayList<Partial>(merged.size() + 1);
+			for (Future<Partial> future : merged)
+				level.add(future.get());
+			
+			if (odd != null)
+				level.add(odd);
+		}
+		
+		return toResult(level.get(0));
+	}
+	
+	/*
+	 * Encodes and aggregates specified rows,
+	 * with the codes of the fields of its own
+	 */
+	private Partial aggregate(int from, int to) {
+		
+		Partial partial = new Partial(encoders(rowColumns), encoders(columnColumns));
+		
+		ColumnEncoder[] rowEncoders = partial.rowEncoders;
+		ColumnEncoder[] columnEncoders = partial.columnEncoders;
+		Aggregation aggregation = partial.aggregation;
+		
+		int[] rowKey = new int[rowEncoders.length];
+		int[] columnKey = new int[columnEncoders.length];
+		byte[] kinds = new byte[valueColumns.length];
+		double[] values = new double[valueColumns.length];
+		
+		for (int row = from; row < to; row++) {
+			
+			for (int i = 0; i < rowKey.length; i++)
+				rowKey[i] = rowEncoders[i].encode(row);
+			
+			for (int i = 0; i < columnKey.length; i++)
+				columnKey[i] = columnEncoders[i].encode(row);
+			
+			for (int v = 0; v < kinds.length; v++) {
+				
+				Column column = valueColumns[v];
+				if (column.isEmpty(row)) {
+					
+					kinds[v] = Aggregation.EMPTY;
+				}
+				else if (column.isText(row)) {
+					
+					kinds[v] = Aggregation.TEXT;
+				}
+				else {
+					
+					kinds[v] = Aggregation.NUMBER;
+					values[v] = column.numbers[row];
+				}
+			}
+			
+			aggregation.add(rowKey, columnKey, kinds, values);
+		}
+		
+		return partial;
+	}
+	
+	private PivotResult toResult(Partial partial) {
+		
+		return partial.aggregation.toResult(dictionaries(partial.rowEncoders),
+			dictionaries(partial.columnEncoders), usage);
+	}
+	
+	private static Column[] columns(ColumnarTable data, int[] columns) {
+		
+		Column[] result = new Column[columns.length];
+		for (int i = 0; i < columns.length; i++)
+			result[i] = data.getColumn(columns[i]);
+		
+		return result;
+	}
+	
+	private static ColumnEncoder[] encoders(Column[] columns) {
+		
+		ColumnEncoder[] result = new ColumnEncoder[columns.length];
+		for (int i = 0; i < columns.length; i++)
+			result[i] = new ColumnEncoder(columns[i]);
+		
+		return result;
+	}
+	
+	private static Dictionary[] dictionaries(ColumnEncoder[] encoders) {
+		
+		Dictionary[] result = new Dictionary[encoders.length];
+		for (int i = 0; i < encoders.length; i++)
+			result[i] = encoders[i].dictionary;
+		
+		return result;
+	}
+	
+	/*
+	 * Returns codes of the target encoders by codes of the source
+	 * encoders, for every field. Values missing in the target are
+	 * added to its dictionary.
+	 */
+	private static int[][] translate(ColumnEncoder[] target, ColumnEncoder[] source) {
+		
+		int[][] result = new int[target.length][];
+		for (int f = 0; f < target.length; f++) {
+			
+			Dictionary from = source[f].dictionary;
+			Dictionary to = target[f].dictionary;
+			
+			int[] codes = new int[from.size()];
+			for (int code = 0; code < codes.length; code++)
+				codes[code] = to.encode(from.get(code));
+			
+			result[f] = codes;
+		}
+		
+		return result;
+	}
+	
+	/*
+	 * Aggregation of the part of the rows,
+	 * with the encoders of its own
+	 */
+	private final class Partial {
+		
+		final ColumnEncoder[] rowEncoders;
+		final ColumnEncoder[] columnEncoders;
+		final Aggregation aggregation = new Aggregation(spec);
+		
+		Partial(ColumnEncoder[] rowEncoders, ColumnEncoder[] columnEncoders) {
+			
+			this.rowEncoders = rowEncoders;
+			this.columnEncoders = columnEncoders;
+		}
+		
+		/*
+		 * Adds other part to this one, codes of the other
+		 * part are translated into the codes of this one
+		 */
+		void merge(Partial other) {
+			
+			aggregation.merge(other.aggregation, translate(rowEncoders, other.rowEncoders),
+				translate(columnEncoders, other.columnEncoders));
+		}
+	}
+	
+	/*
+	 * Tasks
+	 */
+	
+	private class ChunkTask implements Callable<Partial> {
+		
+		private final int from;
+		private final int to;
+		
+		ChunkTask(int from, int to) {
+			
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		public Partial call() {
+			
+			ResourceUsage.Measurement measurement = usage.start();
+			try {
+				
+				return aggregate(from, to);
+			
+			} finally {
+				measurement.stop();
+			}
+		}
+	}
+	
+	private static class MergeTask implements Callable<Partial> {
+		
+		private final Partial first;
+		private final Partial second;
+		private final ResourceUsage usage;
+		
+		MergeTask(Partial first, Partial second, ResourceUsage usage) {
+			
+			this.first = first;
+			this.second = second;
+			this.usage = usage;
+		}
+		
+		@Override
+		public Partial call() {
+			
+			ResourceUsage.Measurement measurement = usage.start();
+			try {
+				
+				first.merge(second);
+				return first;
+			
+			} finally {
+				measurement.stop();
+			}
+		}
+	}
+	
+	/*
+	 * Encodes values of the column into codes of the field.
+	 * Codes of the texts are translated from the dictionary
+	 * of the column once per text, numbers are encoded
+	 * without boxing.
+	 */
+	private static final class ColumnEncoder {
+		
+		private final Column column;
+		private final Dictionary dictionary = new Dictionary();
+		
+		// codes of the field by codes of the column, -1 if not translated
+		private final int[] translation;
+		
+		private int emptyCode = -1;
+		
+		ColumnEncoder(Column column) {
+			
+			this.column = column;
+			this.translation = new int[column.dictionary == null ? 0 : column.dictionary.size()];
+			
+			Arrays.fill(translation, -1);
+		}
+		
+		int encode(int row) {
+			
+			if (column.isEmpty(row)) {
+				
+				if (emptyCode < 0)
+					emptyCode = dictionary.encode(null);
+				
+				return emptyCode;
+			}
+			
+			if (column.isText(row)) {
+				
+				int code = column.codes[row];
+				if (translation[code] < 0)
+					translation[code] = dictionary.encode(column.dictionary.get(code));
+				
+				return translation[code];
+			}
+			
+			return dictionary.encodeNumber(column.numbers[row]);
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package com.vsubhuman.smartxls.engine;
+
+import com.vsubhuman.smartxls.ResourceUsage;
+
+/**
+ * <p>Class represents source table loaded into memory by columns.</p>
+ * 
+ * <p>Numbers of every column are stored in the primitive arrays, texts are
+ * encoded into the integer codes by the dictionary of the column, empty cells
+ * are marked in the bitmap. So cell takes 8 bytes for numbers and 4 bytes for
+ * texts (plus distinct texts once), instead of hundreds of bytes of the cell
+ * in {@link com.smartxls.WorkBook}.</p>
+ * 
+ * <p>Table is immutable and can be computed by {@link NativePivotEngine} many times,
+ * also from the different threads.</p>
+ * 
+ * <p>CPU time and heap bytes spent to load the table, by the calling thread
+ * and by the parallel tasks of {@link MappedCsvReader}, are available
+ * from {@link #getUsage()}.</p>
+ * 
+ * <p>Example:<pre>
+ * RowSource source = NativePivotEngine.open(table);
+ * ColumnarTable data;
+ * try {
+ *   data = ColumnarTable.load(source);
+ * } finally {
+ *   source.close();
+ * }
+ * 
+ * PivotResult result = NativePivotEngine.compute(table, data);</pre>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public final class ColumnarTable {
+	
+	private final Column[] columns;
+	private final String[] names;
+	private final int rowCount;
+	
+	private final ResourceUsage usage;
+	
+	/*
+	 * Constructor
+	 */
+	ColumnarTable(Column[] columns, int rowCount, ResourceUsage usage) {
+		
+		this.columns = columns;
+		this.rowCount = rowCount;
+		this.usage = usage;
+		this.names = new String[columns.length];
+		
+		for (int i = 0; i < columns.length; i++)
+			names[i] = columns[i].name;
+	}
+	
+	/**
+	 * Loads all rows of the specified source. Source is read till the
+	 * end but not closed.
+	 * 
+	 * @param source - source table
+	 * @return loaded table
+	 * @throws IllegalArgumentException - if source is <code>null</code>
+	 * @throws Exception - if reading of the source has failed
+	 * @since 1.1
+	 */
+	public static ColumnarTable load(RowSource source) throws IllegalArgumentException, Exception {
+		
+		if (source == null)
+			throw new IllegalArgumentException(
+				"Source cannot be null!");
+		
+		ResourceUsage usage = new ResourceUsage();
+		ResourceUsage.Measurement measurement = usage.start();
+		try {
+			
+			return load(source, usage);
+		
+		} finally {
+			measurement.stop();
+		}
+	}
+	
+	private static ColumnarTable load(RowSource source, ResourceUsage usage) throws Exception {
+		
+		int count = source.getColumnCount();
+		
+		ColumnBuilder[] builders = new ColumnBuilder[count];
+		for (int i = 0; i < count; i++)
+			builders[i] = new ColumnBuilder();
+		
+		int rows = 0;
+		while (source.next()) {
+			
+			for (int i = 0; i < count; i++)
+				builders[i].add(source, i);
+			
+			rows++;
+		}
+		
+		Column[] columns = new Column[count];
+		for (int i = 0; i < count; i++)
+			columns[i] = builders[i].build(source.getColumnName(i));
+		
+		return new ColumnarTable(columns, rows, usage);
+	}
+	
+	/**
+	 * @return number of the rows (without header)
+	 * @since 1.1
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+	
+	/**
+	 * @return number of the columns
+	 * @since 1.1
+	 */
+	public int getColumnCount() {
+		return columns.length;
+	}
+	
+	/**
+	 * @param column - index of the column
+	 * @return name of the column
+	 * @since 1.1
+	 */
+	public String getColumnName(int column) {
+		return names[column];
+	}
+	
+	/**
+	 * @return names of all the columns
+	 * @since 1.1
+	 */
+	public String[] getColumnNames() {
+		return names.clone();
+	}
+	
+	/**
+	 * Returns index of the column with specified name, see
+	 * {@link RowSource#getColumnIndex(String)}.
+	 * 
+	 * @param name - name of the column
+	 * @return index of the column, or -1 if table has no such column
+	 * @since 1.1
+	 */
+	public int getColumnIndex(String name) {
+		return RowSource.indexOf(names, name);
+	}
+	
+	/**
+	 * @param row - index of the row
+	 * @param column - index of the column
+	 * @return <code>true</code> if specified cell is empty
+	 * @since 1.1
+	 */
+	public boolean isEmpty(int row, int column) {
+		return columns[column].isEmpty(row);
+	}
+	
+	/**
+	 * @param row - index of the row
+	 * @param column - index of the column
+	 * @return <code>true</code> if specified cell contains number
+	 * @since 1.1
+	 */
+	public boolean isNumber(int row, int column) {
+		return columns[column].isNumber(row);
+	}
+	
+	/**
+	 * @param row - index of the row
+	 * @param column - index of the column
+	 * @return number of the specified cell, or {@link Double#NaN}
+	 * if cell doesn't contain number
+	 * @since 1.1
+	 */
+	public double getNumber(int row, int column) {
+		return columns[column].getNumber(row);
+	}
+	
+	/**
+	 * @param row - index of the row
+	 * @param column - index of the column
+	 * @return text of the specified cell, or <code>null</code> if cell is empty
+	 * @since 1.1
+	 */
+	public String getText(int row, int column) {
+		return columns[column].getText(row);
+	}
+	
+	/**
+	 * @return estimated number of bytes used by the data of the table
+	 * @since 1.1
+	 */
+	public long getMemorySize() {
+		
+		long bytes = 0;
+		for (Column column : columns)
+			bytes += column.getMemorySize();
+		
+		return bytes;
+	}
+	
+	/**
+	 * @return CPU time and allocated bytes spent to load the table
+	 * @since 1.1
+	 */
+	public ResourceUsage getUsage() {
+		return usage;
+	}
+	
+	/*
+	 * Returns column by index
+	 */
+	Column getColumn(int column) {
+		return columns[column];
+	}
+	
+	@Override
+	public String toString() {
+		return "ColumnarTable{columns: " + columns.length + ", rows: " + rowCount + '}';
+	}
+}
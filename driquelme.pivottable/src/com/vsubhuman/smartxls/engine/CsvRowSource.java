@@ -0,0 +1,405 @@
+package com.vsubhuman.smartxls.engine;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vsubhuman.smartxls.DocumentFormat;
+
+/**
+ * <p>Implementation of {@link RowSource} that streams rows of the CSV file.</p>
+ * 
+ * <p>Only the current row is kept in memory, so file of any size can be read.
+ * Values can be quoted by double quotes, quoted values can contain separators,
+ * line breaks and doubled quotes. Values that can be parsed as numbers
+ * are treated as numbers, empty values as empty cells.</p>
+ * 
+ * <p>Source can be limited by the bounds of the range (like {@link com.vsubhuman.smartxls.TableRange#getBounds(com.smartxls.WorkBook)}
+ * returns), then first row of the range is used as header, and only
+ * columns of the range are returned.</p>
+ * 
+ * <p>Source supports projection: values of the not referenced columns
+ * are skipped by the parser without creating strings.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class CsvRowSource extends RowSource {
+	
+	/**
+	 * Default separator of the values.
+	 * @since 1.1
+	 */
+	public static final char DEFAULT_SEPARATOR = ',';
+	
+	/**
+	 * Default charset of the files.
+	 * @since 1.1
+	 */
+	public static final String DEFAULT_CHARSET = "UTF-8";
+	
+	private final Reader reader;
+	private final char separator;
+	
+	// bounds of the range
+	private final int firstCol;
+	private final int lastRow;
+	
+	// names of the columns
+	private final String[] header;
+	
+	// index of the last read line (record)
+	private int line = -1;
+	
+	// values of the current row
+	private final String[] texts;
+	private final double[] numbers;
+	
+	// projection, null if all columns are read
+	private SourceProjection.Selection selection;
+	
+	// buffers of the record parser
+	private final List<String> record = new ArrayList<String>();
+	private final StringBuilder value = new StringBuilder();
+	
+	/**
+	 * Create new source of the CSV file by specified path, with default separator.
+	 * 
+	 * @param path - path of the CSV file
+	 * @throws Exception - if file cannot be opened or header cannot be read
+	 * @since 1.1
+	 */
+	public CsvRowSource(String path) throws Exception {
+		this(path, DEFAULT_SEPARATOR);
+	}
+	
+	/**
+	 * Create new source of the CSV file by specified path, with specified separator.
+	 * 
+	 * @param path - path of the CSV file
+	 * @param separator - separator of the values
+	 * @throws Exception - if file cannot be opened or header cannot be read
+	 * @since 1.1
+	 */
+	public CsvRowSource(String path, char separator) throws Exception {
+		this(path, separator, null);
+	}
+	
+	/**
+	 * Create new source of the specified range of the CSV file by specified path,
+	 * with specified separator.
+	 * 
+	 * @param path - path of the CSV file
+	 * @param separator - separator of the values
+	 * @param bounds - bounds of the range: {row1, col1, row2, col2} (optional)
+	 * @throws Exception - if file cannot be opened or header cannot be read
+	 * @since 1.1
+	 */
+	public CsvRowSource(String path, char separator, int[] bounds) throws Exception {
+		this(new InputStreamReader(new FileInputStream(path), DEFAULT_CHARSET), separator, bounds);
+	}
+	
+	/**
+	 * Create new source of the specified range of the CSV data from specified reader,
+	 * with specified separator.
+	 * 
+	 * @param reader - reader of the CSV data
+	 * @param separator - separator of the values
+	 * @param bounds - bounds of the range: {row1, col1, row2, col2} (optional)
+	 * @throws IllegalArgumentException - if reader is <code>null</code>
+	 * @throws Exception - if header cannot be read
+	 * @since 1.1
+	 */
+	public CsvRowSource(Reader reader, char separator, int[] bounds) throws IllegalArgumentException, Exception {
+		
+		if (reader == null)
+			throw new IllegalArgumentException(
+				"Reader cannot be null!");
+		
+		if (!(reader instanceof BufferedReader))
+			reader = new BufferedReader(reader, 1 << 16);
+		
+		this.reader = reader;
+		this.separator = separator;
+		
+		int firstRow = bounds == null ? 0 : bounds[0];
+		this.firstCol = bounds == null ? 0 : bounds[1];
+		this.lastRow = bounds == null ? Integer.MAX_VALUE : bounds[2];
+		
+		/*
+		 * Header
+		 */
+		
+		boolean read;
+		do {
+			
+			read = readRecord();
+		
+		} while (read && line < firstRow);
+		
+		if (!read) {
+			
+			reader.close();
+			throw new IllegalStateException(
+				"CSV source has no header row!");
+		}
+		
+		int columns = bounds == null ? record.size() - firstCol : bounds[3] - bounds[1] + 1;
+		columns = Math.max(columns, 0);
+		
+		this.header = new String[columns];
+		for (int i = 0; i < columns; i++)
+			header[i] = firstCol + i < record.size() ? record.get(firstCol + i) : null;
+		
+		this.texts = new String[columns];
+		this.numbers = new double[columns];
+	}
+	
+	/**
+	 * Returns separator specified for the CSV documents instead of password
+	 * (see {@link DocumentFormat#CSV}).
+	 * 
+	 * @param password - password of the CSV document
+	 * @return separator character, or {@link #DEFAULT_SEPARATOR} if password is <code>null</code>
+	 * @throws IllegalArgumentException - if password is not 1 character long
+	 * @since 1.1
+	 */
+	public static char getSeparator(String password) throws IllegalArgumentException {
+		
+		if (password == null)
+			return DEFAULT_SEPARATOR;
+		
+		if ((password = password.trim()).length() != 1)
+			throw new IllegalArgumentException("Separator should be 1 character long!");
+		
+		return password.charAt(0);
+	}
+	
+	@Override
+	public int getColumnCount() {
+		return header.length;
+	}
+	
+	@Override
+	public String getColumnName(int column) {
+		return header[column];
+	}
+	
+	@Override
+	public void setProjection(SourceProjection projection) throws IllegalStateException {
+		
+		this.selection = projection == null ? null : projection.bind(header);
+	}
+	
+	@Override
+	public boolean next() throws Exception {
+		
+		while (true) {
+			
+			if (line >= lastRow || !readRecord())
+				return false;
+			
+			for (int i = 0; i < texts.length; i++) {
+				
+				int index = firstCol + i;
+				
+				String text = index < record.size() ? record.get(index) : null;
+				if (text != null && text.isEmpty())
+					text = null;
+				
+				texts[i] = text;
+				numbers[i] = parseNumber(text);
+			}
+			
+			if (selection == null || !selection.isFiltered() || selection.accept(this))
+				return true;
+		}
+	}
+	
+	@Override
+	public boolean isEmpty(int column) {
+		return texts[column] == null;
+	}
+	
+	@Override
+	public boolean isNumber(int column) {
+		return !Double.isNaN(numbers[column]);
+	}
+	
+	@Override
+	public double getNumber(int column) {
+		return numbers[column];
+	}
+	
+	@Override
+	public String getText(int column) {
+		return texts[column];
+	}
+	
+	@Override
+	public void close() throws Exception {
+		
+		reader.close();
+	}
+	
+	/*
+	 * Reads next record into the record buffer,
+	 * returns false if end of the data is reached.
+	 * Values of the skipped columns are null.
+	 */
+	private boolean readRecord() throws IOException {
+		
+		record.clear();
+		value.setLength(0);
+		
+		int c = reader.read();
+		if (c < 0)
+			return false;
+		
+		boolean quoted = false;
+		
+		// if no characters of the value are read yet
+		boolean empty = true;
+		boolean keep = isKept(0);
+		
+		while (true) {
+			
+			if (quoted) {
+				
+				if (c < 0)
+					throw new IllegalStateException(
+						"Unclosed quote in the CSV record: " + (line + 1) + "!");
+				
+				if (c == '"') {
+					
+					c = reader.read();
+					if (c == '"') {
+						
+						if (keep)
+							value.append('"');
+					}
+					else {
+						
+						quoted = false;
+						continue;
+					}
+				}
+				else if (keep)
+					value.append((char) c);
+			}
+			else if (c < 0 || c == '\n' || c == '\r') {
+				
+				if (c == '\r') {
+					
+					reader.mark(1);
+					if (reader.read() != '\n')
+						reader.reset();
+				}
+				
+				record.add(keep ? value.toString() : null);
+				break;
+			}
+			else if (c == separator) {
+				
+				record.add(keep ? value.toString() : null);
+				value.setLength(0);
+				
+				empty = true;
+				keep = isKept(record.size());
+			}
+			else if (c == '"' && empty) {
+				
+				quoted = true;
+				empty = false;
+			}
+			else {
+				
+				if (keep)
+					value.append((char) c);
+				
+				empty = false;
+			}
+			
+			c = reader.read();
+		}
+		
+		line++;
+		return true;
+	}
+	
+	/*
+	 * Checks if value of the specified field of the
+	 * record should be kept by the projection
+	 */
+	private boolean isKept(int field) {
+		return selection == null || selection.isSelected(field - firstCol);
+	}
+	
+	/*
+	 * Parses number from the text, or returns NaN
+	 * if text doesn't contain number
+	 */
+	static double parseNumber(String text) {
+		
+		// checked first, exceptions are too slow for the text cells
+		if (text == null || !isNumber(text))
+			return Double.NaN;
+		
+		return Double.parseDouble(text);
+	}
+	
+	/*
+	 * Checks if text is decimal number: [+-]digits[.digits][e[+-]digits],
+	 * digits may be omitted on one side of the point, spaces around are allowed
+	 */
+	static boolean isNumber(String text) {
+		
+		int length = text.length();
+		while (length > 0 && text.charAt(length - 1) == ' ')
+			length--;
+		
+		int i = 0;
+		while (i < length && text.charAt(i) == ' ')
+			i++;
+		
+		if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+'))
+			i++;
+		
+		int digits = 0;
+		for (; i < length && isDigit(text.charAt(i)); i++)
+			digits++;
+		
+		if (i < length && text.charAt(i) == '.') {
+			
+			for (i++; i < length && isDigit(text.charAt(i)); i++)
+				digits++;
+		}
+		
+		if (digits == 0)
+			return false;
+		
+		if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+			
+			i++;
+			if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+'))
+				i++;
+			
+			int exponent = 0;
+			for (; i < length && isDigit(text.charAt(i)); i++)
+				exponent++;
+			
+			if (exponent == 0)
+				return false;
+		}
+		
+		return i == length;
+	}
+	
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+}
@@ -0,0 +1,275 @@
+package com.vsubhuman.smartxls.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Class encodes distinct values of one column into integer codes.</p>
+ * 
+ * <p>Values are {@link String}s, {@link Double}s or <code>null</code> (empty cell).
+ * Codes are assigned in the order of the first appearance of the values,
+ * starting with 0.</p>
+ * 
+ * <p>Numbers are kept in the separate open addressing table by the bits
+ * of the number (like {@link Double#equals(Object)} compares them), so
+ * {@link #encodeNumber(double)} boxes the number only when it's met
+ * for the first time.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+final class Dictionary {
+	
+	// codes of the texts and empty value
+	private final Map<Object, Integer> codes = new HashMap<Object, Integer>();
+	private final List<Object> values = new ArrayList<Object>();
+	
+	// slots of the numbers: bits of the number, and code + 1 (0 if slot is free)
+	private long[] numberBits = new long[16];
+	private int[] numberSlots = new int[16];
+	private int numberCount;
+	
+	// codes by index of the shared string, -1 if string is not met yet
+	private int[] sharedCodes;
+	
+	/**
+	 * Returns code of the specified value, new code is assigned
+	 * if value is met for the first time.
+	 * 
+	 * @param value - value to encode
+	 * @return code of the value
+	 * @since 1.1
+	 */
+	int encode(Object value) {
+		
+		if (value instanceof Double)
+			return encodeNumber((Double) value);
+		
+		Integer code = codes.get(value);
+		if (code == null) {
+			
+			code = values.size();
+			codes.put(value, code);
+			values.add(value);
+		}
+		
+		return code;
+	}
+	
+	/**
+	 * Returns code of the specified number, new code is assigned
+	 * if number is met for the first time.
+	 * 
+	 * @param value - number to encode
+	 * @return code of the number
+	 * @since 1.1
+	 */
+	int encodeNumber(double value) {
+		
+		long bits = Double.doubleToLongBits(value);
+		int mask = numberSlots.length - 1;
+		
+		for (int slot = hash(bits) & mask; ; slot = (slot + 1) & mask) {
+			
+			int code = numberSlots[slot] - 1;
+			if (code < 0) {
+				
+				code = values.size();
+				values.add(Double.valueOf(value));
+				
+				numberBits[slot] = bits;
+				numberSlots[slot] = code + 1;
+				
+				if (++numberCount * 2 > numberSlots.length)
+					rehashNumbers();
+				
+				return code;
+			}
+			
+			if (numberBits[slot] == bits)
+				return code;
+		}
+	}
+	
+	/**
+	 * Returns code of the text of the specified column of the current row of the
+	 * source. If cell contains shared string, its code is cached by the index of the
+	 * string, so text of the string is decoded only when it's met for the first time.
+	 * 
+	 * @param source - source table
+	 * @param column - index of the column
+	 * @return code of the text
+	 * @see RowSource#getSharedIndex(int)
+	 * @since 1.1
+	 */
+	int encodeText(RowSource source, int column) {
+		
+		int index = source.getSharedIndex(column);
+		if (index < 0)
+			return encode(source.getText(column));
+		
+		if (sharedCodes == null || index >= sharedCodes.length) {
+			
+			int length = sharedCodes == null ? 1024 : sharedCodes.length;
+			while (length <= index)
+				length *= 2;
+			
+			int start = sharedCodes == null ? 0 : sharedCodes.length;
+			sharedCodes = sharedCodes == null ? new int[length] : Arrays.copyOf(sharedCodes, length);
+			Arrays.fill(sharedCodes, start, length, -1);
+		}
+		
+		int code = sharedCodes[index];
+		if (code < 0)
+			sharedCodes[index] = code = encode(source.getText(column));
+		
+		return code;
+	}
+	
+	/**
+	 * Releases cache of the codes of the shared strings,
+	 * when no more values will be encoded.
+	 * 
+	 * @since 1.1
+	 */
+	void releaseShared() {
+		sharedCodes = null;
+	}
+	
+	/**
+	 * @param value - value to find code of
+	 * @return code of the value, or -1 if value is not encoded
+	 * @since 1.1
+	 */
+	int find(Object value) {
+		
+		if (value instanceof Double) {
+			
+			long bits = Double.doubleToLongBits((Double) value);
+			int mask = numberSlots.length - 1;
+			
+			for (int slot = hash(bits) & mask; ; slot = (slot + 1) & mask) {
+				
+				if (numberSlots[slot] == 0)
+					return -1;
+				
+				if (numberBits[slot] == bits)
+					return numberSlots[slot] - 1;
+			}
+		}
+		
+		Integer code = codes.get(value);
+		return code == null ? -1 : code;
+	}
+	
+	/**
+	 * @return number of the distinct values
+	 * @since 1.1
+	 */
+	int size() {
+		return values.size();
+	}
+	
+	/**
+	 * @param code - code of the value
+	 * @return value by the specified code
+	 * @since 1.1
+	 */
+	Object get(int code) {
+		return values.get(code);
+	}
+	
+	/**
+	 * Returns position of every value in the sorted order of the values,
+	 * by code of the value. Values are sorted like Excel sorts pivot items:
+	 * numbers first, than texts ignoring case, than empty value.
+	 * 
+	 * @param descending - if <code>true</code> - order is reversed,
+	 * though empty value is still the last
+	 * @return array of the positions by code
+	 * @since 1.1
+	 */
+	int[] ranks(final boolean descending) {
+		
+		Integer[] order = new Integer[values.size()];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		
+		Arrays.sort(order, new Comparator<Integer>() {
+			
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				
+				Object v1 = values.get(o1);
+				Object v2 = values.get(o2);
+				
+				if (v1 == null || v2 == null)
+					return v1 == v2 ? 0 : v1 == null ? 1 : -1;
+				
+				int result = compareValues(v1, v2);
+				return descending ? -result : result;
+			}
+		});
+		
+		int[] ranks = new int[order.length];
+		for (int i = 0; i < order.length; i++)
+			ranks[order[i]] = i;
+		
+		return ranks;
+	}
+	
+	private static int hash(long bits) {
+		
+		long h = bits * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+	
+	private void rehashNumbers() {
+		
+		long[] oldBits = numberBits;
+		int[] oldSlots = numberSlots;
+		
+		numberBits = new long[oldSlots.length * 2];
+		numberSlots = new int[oldSlots.length * 2];
+		int mask = numberSlots.length - 1;
+		
+		for (int i = 0; i < oldSlots.length; i++) {
+			
+			if (oldSlots[i] == 0)
+				continue;
+			
+			int slot = hash(oldBits[i]) & mask;
+			while (numberSlots[slot] != 0)
+				slot = (slot + 1) & mask;
+			
+			numberBits[slot] = oldBits[i];
+			numberSlots[slot] = oldSlots[i];
+		}
+	}
+	
+	/*
+	 * Compares two not null values: numbers before texts,
+	 * texts ignoring case
+	 */
+	static int compareValues(Object v1, Object v2) {
+		
+		boolean n1 = v1 instanceof Double;
+		boolean n2 = v2 instanceof Double;
+		
+		if (n1 && n2)
+			return ((Double) v1).compareTo((Double) v2);
+		
+		if (n1 != n2)
+			return n1 ? -1 : 1;
+		
+		String s1 = v1.toString();
+		String s2 = v2.toString();
+		
+		int result = s1.compareToIgnoreCase(s2);
+		return result != 0 ? result : s1.compareTo(s2);
+	}
+}
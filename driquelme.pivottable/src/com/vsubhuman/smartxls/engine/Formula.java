@@ -0,0 +1,216 @@
+package com.vsubhuman.smartxls.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Class represents compiled formula of the formula field
+ * (see {@link com.vsubhuman.smartxls.FormulaField}).</p>
+ * 
+ * <p>Formula is parsed by the Excel syntax (see {@link #compile(String)}) into the
+ * expression tree, constant subexpressions are folded and common subexpressions
+ * are merged. Then tree is compiled into the linear program over the array of the
+ * registers: first registers contain values of the fields, others - constants
+ * and results of the operations, every operation writes into its own register. So formula like
+ * <code>IF((a + b) / 2 = 0, 0, c / ((a + b) / 2))</code> computes <code>(a + b) / 2</code>
+ * only once, and evaluation allocates nothing.</p>
+ * 
+ * <p>Like in Excel pivot tables, formula is evaluated over the aggregated values
+ * of the fields (sums), errors (like division by zero) result in {@link Double#NaN}.</p>
+ * 
+ * <p>Example:<pre>
+ * Formula formula = Formula.compile("Stock / ('07/10/2013' + '14/10/2013')");
+ * double[] registers = formula.createRegisters();
+ * double result = formula.evaluate(new double[] {stock, week1, week2}, registers);</pre>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public final class Formula {
+	
+	// size of the instruction: operation, target, and three arguments
+	private static final int INSTRUCTION = 5;
+	
+	private final String text;
+	private final List<String> fields;
+	
+	// initial values of the registers (constants)
+	private final double[] constants;
+	
+	private final int[] program;
+	
+	// register of the result
+	private final int result;
+	
+	/*
+	 * Constructor
+	 */
+	private Formula(String text, List<String> fields, double[] constants, int[] program, int result) {
+		
+		this.text = text;
+		this.fields = fields;
+		this.constants = constants;
+		this.program = program;
+		this.result = result;
+	}
+	
+	/**
+	 * Parses and compiles specified formula.
+	 * 
+	 * @param text - formula in Excel syntax
+	 * @return compiled formula
+	 * @throws IllegalArgumentException - if formula is <code>null</code>
+	 * or cannot be parsed
+	 * @since 1.1
+	 */
+	public static Formula compile(String text) throws IllegalArgumentException {
+		
+		List<String> fields = new ArrayList<String>();
+		FormulaNode root = FormulaParser.parse(text, fields);
+		
+		Compiler compiler = new Compiler(fields.size());
+		int result = compiler.compile(root);
+		
+		double[] constants = new double[compiler.registers];
+		for (int i = 0; i < compiler.constants.size(); i++)
+			constants[compiler.constantRegisters.get(i)] = compiler.constants.get(i);
+		
+		int[] program = new int[compiler.program.size()];
+		for (int i = 0; i < program.length; i++)
+			program[i] = compiler.program.get(i);
+		
+		return new Formula(text, Collections.unmodifiableList(fields), constants, program, result);
+	}
+	
+	/**
+	 * @return text of the formula
+	 * @since 1.1
+	 */
+	public String getText() {
+		return text;
+	}
+	
+	/**
+	 * @return unmodifiable list of the names of the fields referenced by the formula,
+	 * values of the fields are passed to {@link #evaluate(double[], double[])} in this order
+	 * @since 1.1
+	 */
+	public List<String> getFields() {
+		return fields;
+	}
+	
+	/**
+	 * @return number of the operations of the compiled program
+	 * @since 1.1
+	 */
+	public int getOperationCount() {
+		return program.length / INSTRUCTION;
+	}
+	
+	/**
+	 * @return new array of the registers, that can be used to evaluate
+	 * this formula many times
+	 * @since 1.1
+	 */
+	public double[] createRegisters() {
+		return constants.clone();
+	}
+	
+	/**
+	 * Evaluates formula with specified values of the fields.
+	 * 
+	 * @param values - values of the fields, in the order of {@link #getFields()}
+	 * @return result of the formula
+	 * @since 1.1
+	 */
+	public double evaluate(double... values) {
+		return evaluate(values, createRegisters());
+	}
+	
+	/**
+	 * Evaluates formula with specified values of the fields,
+	 * using specified array of the registers, so nothing is allocated.
+	 * 
+	 * @param values - values of the fields, in the order of {@link #getFields()}
+	 * @param registers - array created by {@link #createRegisters()}, it should
+	 * not be used by the other threads at the same time
+	 * @return result of the formula
+	 * @since 1.1
+	 */
+	public double evaluate(double[] values, double[] registers) {
+		
+		System.arraycopy(values, 0, registers, 0, fields.size());
+		
+		int[] program = this.program;
+		for (int i = 0; i < program.length; i += INSTRUCTION) {
+			
+			registers[program[i + 1]] = FormulaNode.apply(program[i],
+				registers[program[i + 2]], registers[program[i + 3]], registers[program[i + 4]]);
+		}
+		
+		return registers[result];
+	}
+	
+	@Override
+	public String toString() {
+		return text;
+	}
+	
+	/*
+	 * Compiles expression tree into the program, every node
+	 * (which are shared by equal subexpressions) once
+	 */
+	private static class Compiler {
+		
+		final List<Double> constants = new ArrayList<Double>();
+		final List<Integer> constantRegisters = new ArrayList<Integer>();
+		final List<Integer> program = new ArrayList<Integer>();
+		final Map<FormulaNode, Integer> compiled = new IdentityHashMap<FormulaNode, Integer>();
+		
+		int registers;
+		
+		Compiler(int fieldCount) {
+			
+			// first registers are the fields
+			this.registers = fieldCount;
+		}
+		
+		int compile(FormulaNode node) {
+			
+			Integer register = compiled.get(node);
+			if (register != null)
+				return register;
+			
+			if (node.operation == FormulaNode.FIELD) {
+				
+				register = node.field;
+			}
+			else if (node.isConstant()) {
+				
+				register = registers++;
+				constants.add(node.value);
+				constantRegisters.add(register);
+			}
+			else {
+				
+				int[] arguments = new int[3];
+				for (int i = 0; i < node.arguments.length; i++)
+					arguments[i] = compile(node.arguments[i]);
+				
+				register = registers++;
+				
+				program.add(node.operation);
+				program.add(register);
+				program.add(arguments[0]);
+				program.add(arguments[1]);
+				program.add(arguments[2]);
+			}
+			
+			compiled.put(node, register);
+			return register;
+		}
+	}
+}
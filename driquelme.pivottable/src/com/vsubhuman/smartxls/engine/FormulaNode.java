@@ -0,0 +1,223 @@
+package com.vsubhuman.smartxls.engine;
+
+/**
+ * <p>Class represents node of the expression tree of the formula.</p>
+ * 
+ * <p>Nodes are immutable and interned by {@link FormulaParser}: equal
+ * subexpressions are represented by the same node, so arguments are compared
+ * by reference. Every node has the type of its result: number or boolean
+ * (boolean is 1 or 0 when used as number, like in Excel).</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+final class FormulaNode {
+	
+	/*
+	 * Operations
+	 */
+	
+	static final int CONSTANT = 0;
+	static final int FIELD = 1;
+	
+	static final int NEGATE = 2;
+	static final int ADD = 3;
+	static final int SUBTRACT = 4;
+	static final int MULTIPLY = 5;
+	static final int DIVIDE = 6;
+	static final int POWER = 7;
+	
+	static final int EQUAL = 8;
+	static final int NOT_EQUAL = 9;
+	static final int LESS = 10;
+	static final int LESS_OR_EQUAL = 11;
+	static final int GREATER = 12;
+	static final int GREATER_OR_EQUAL = 13;
+	
+	static final int AND = 14;
+	static final int OR = 15;
+	static final int NOT = 16;
+	static final int IF = 17;
+	
+	static final int ABS = 18;
+	static final int ROUND = 19;
+	static final int MIN = 20;
+	static final int MAX = 21;
+	static final int SQRT = 22;
+	
+	final int operation;
+	
+	// value of the constant
+	final double value;
+	
+	// index of the field
+	final int field;
+	
+	final FormulaNode[] arguments;
+	
+	// true if result of the node is boolean
+	final boolean bool;
+	
+	private final int hash;
+	
+	/*
+	 * Constructor
+	 */
+	private FormulaNode(int operation, double value, int field, boolean bool, FormulaNode... arguments) {
+		
+		this.operation = operation;
+		this.value = value;
+		this.field = field;
+		this.bool = bool;
+		this.arguments = arguments;
+		
+		int h = operation * 31 + field;
+		long bits = Double.doubleToLongBits(value);
+		h = h * 31 + (int) (bits ^ (bits >>> 32));
+		for (FormulaNode argument : arguments)
+			h = h * 31 + System.identityHashCode(argument);
+		
+		this.hash = h;
+	}
+	
+	static FormulaNode constant(double value, boolean bool) {
+		return new FormulaNode(CONSTANT, value, -1, bool);
+	}
+	
+	static FormulaNode field(int field) {
+		return new FormulaNode(FIELD, 0, field, false);
+	}
+	
+	static FormulaNode operation(int operation, FormulaNode... arguments) {
+		return new FormulaNode(operation, 0, -1, isBoolean(operation), arguments);
+	}
+	
+	boolean isConstant() {
+		return operation == CONSTANT;
+	}
+	
+	/*
+	 * Returns true if operation returns boolean
+	 */
+	private static boolean isBoolean(int operation) {
+		return operation >= EQUAL && operation <= NOT;
+	}
+	
+	/*
+	 * Returns true if result of the operation doesn't
+	 * depend on the order of the arguments
+	 */
+	static boolean isCommutative(int operation) {
+		
+		return operation == ADD || operation == MULTIPLY || operation == EQUAL
+			|| operation == NOT_EQUAL || operation == AND || operation == OR
+			|| operation == MIN || operation == MAX;
+	}
+	
+	/**
+	 * Applies operation to the values of the arguments. Errors (like division
+	 * by zero) are represented by {@link Double#NaN} and propagated like Excel does.
+	 * 
+	 * @param operation - operation (not constant or field)
+	 * @param a - value of the first argument
+	 * @param b - value of the second argument (if any)
+	 * @param c - value of the third argument (if any)
+	 * @return result of the operation
+	 * @since 1.1
+	 */
+	static double apply(int operation, double a, double b, double c) {
+		
+		switch (operation) {
+		
+		case NEGATE:
+			return -a;
+		case ADD:
+			return a + b;
+		case SUBTRACT:
+			return a - b;
+		case MULTIPLY:
+			return a * b;
+		case DIVIDE:
+			return b == 0 ? Double.NaN : a / b;
+		case POWER:
+			return Math.pow(a, b);
+		
+		case EQUAL:
+			return a != a || b != b ? Double.NaN : a == b ? 1 : 0;
+		case NOT_EQUAL:
+			return a != a || b != b ? Double.NaN : a != b ? 1 : 0;
+		case LESS:
+			return a != a || b != b ? Double.NaN : a < b ? 1 : 0;
+		case LESS_OR_EQUAL:
+			return a != a || b != b ? Double.NaN : a <= b ? 1 : 0;
+		case GREATER:
+			return a != a || b != b ? Double.NaN : a > b ? 1 : 0;
+		case GREATER_OR_EQUAL:
+			return a != a || b != b ? Double.NaN : a >= b ? 1 : 0;
+		
+		case AND:
+			return a != a || b != b ? Double.NaN : a != 0 && b != 0 ? 1 : 0;
+		case OR:
+			return a != a || b != b ? Double.NaN : a != 0 || b != 0 ? 1 : 0;
+		case NOT:
+			return a != a ? Double.NaN : a == 0 ? 1 : 0;
+		case IF:
+			return a != a ? Double.NaN : a != 0 ? b : c;
+		
+		case ABS:
+			return Math.abs(a);
+		case ROUND:
+			return round(a, b);
+		case MIN:
+			return a != a || b != b ? Double.NaN : Math.min(a, b);
+		case MAX:
+			return a != a || b != b ? Double.NaN : Math.max(a, b);
+		case SQRT:
+			return a < 0 ? Double.NaN : Math.sqrt(a);
+		
+		default:
+			throw new IllegalArgumentException("Unknown operation: " + operation + '!');
+		}
+	}
+	
+	/*
+	 * Rounds half away from zero, like Excel does
+	 */
+	private static double round(double value, double digits) {
+		
+		if (value != value || digits != digits)
+			return Double.NaN;
+		
+		double scale = Math.pow(10, (int) digits);
+		return Math.signum(value) * Math.floor(Math.abs(value) * scale + 0.5) / scale;
+	}
+	
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		
+		if (this == obj)
+			return true;
+		
+		if (!(obj instanceof FormulaNode))
+			return false;
+		
+		FormulaNode node = (FormulaNode) obj;
+		if (hash != node.hash || operation != node.operation || field != node.field || bool != node.bool
+				|| Double.doubleToLongBits(value) != Double.doubleToLongBits(node.value)
+				|| arguments.length != node.arguments.length)
+			return false;
+		
+		for (int i = 0; i < arguments.length; i++) {
+			
+			if (arguments[i] != node.arguments[i])
+				return false;
+		}
+		
+		return true;
+	}
+}
@@ -0,0 +1,467 @@
+package com.vsubhuman.smartxls.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Class parses formula of the pivot table formula field into the
+ * expression tree.</p>
+ * 
+ * <p>Formula uses Excel syntax: numbers, names of the source fields (names with
+ * spaces or special characters are quoted by apostrophes, like <code>'07/10/2013'</code>),
+ * operators <code>+ - * / ^ = &lt;&gt; &lt; &lt;= &gt; &gt;=</code>, parentheses,
+ * constants <code>TRUE</code> and <code>FALSE</code> and functions <code>IF, AND, OR,
+ * NOT, ABS, ROUND, MIN, MAX, SQRT</code>. Names of the fields and functions
+ * are not case sensitive.</p>
+ * 
+ * <p>While parsing, subexpressions with constant arguments are folded into constants,
+ * and equal subexpressions are interned into the same node (arguments of the commutative
+ * operations are ordered), so common subexpressions are computed only once.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+final class FormulaParser {
+	
+	private final String text;
+	private int position;
+	
+	// interned nodes and their indexes (in the order of creation)
+	private final Map<FormulaNode, FormulaNode> nodes = new HashMap<FormulaNode, FormulaNode>();
+	private final Map<FormulaNode, Integer> indexes = new IdentityHashMap<FormulaNode, Integer>();
+	
+	// names of the referenced fields, by index
+	private final List<String> fields = new ArrayList<String>();
+	
+	/*
+	 * Constructor
+	 */
+	private FormulaParser(String text) {
+		this.text = text;
+	}
+	
+	/**
+	 * Parses specified formula.
+	 * 
+	 * @param text - formula
+	 * @param fields - list to add names of the referenced fields to, index
+	 * of the name is the index of the field in the {@link FormulaNode#FIELD} nodes
+	 * @return root of the expression tree
+	 * @throws IllegalArgumentException - if formula is <code>null</code>
+	 * or cannot be parsed
+	 * @since 1.1
+	 */
+	static FormulaNode parse(String text, List<String> fields) throws IllegalArgumentException {
+		
+		if (text == null)
+			throw new IllegalArgumentException(
+				"Formula cannot be null!");
+		
+		FormulaParser parser = new FormulaParser(text);
+		
+		FormulaNode root = parser.parseComparison();
+		parser.skipSpaces();
+		
+		if (parser.position < text.length())
+			throw parser.error("Unexpected character '" + text.charAt(parser.position) + '\'');
+		
+		fields.addAll(parser.fields);
+		return root;
+	}
+	
+	/*
+	 * Grammar
+	 */
+	
+	private FormulaNode parseComparison() {
+		
+		FormulaNode node = parseAdditive();
+		while (true) {
+			
+			int operation;
+			if (consume("<="))
+				operation = FormulaNode.LESS_OR_EQUAL;
+			else if (consume(">="))
+				operation = FormulaNode.GREATER_OR_EQUAL;
+			else if (consume("<>"))
+				operation = FormulaNode.NOT_EQUAL;
+			else if (consume("<"))
+				operation = FormulaNode.LESS;
+			else if (consume(">"))
+				operation = FormulaNode.GREATER;
+			else if (consume("="))
+				operation = FormulaNode.EQUAL;
+			else
+				return node;
+			
+			node = make(operation, node, parseAdditive());
+		}
+	}
+	
+	private FormulaNode parseAdditive() {
+		
+		FormulaNode node = parseMultiplicative();
+		while (true) {
+			
+			if (consume("+"))
+				node = make(FormulaNode.ADD, node, parseMultiplicative());
+			else if (consume("-"))
+				node = make(FormulaNode.SUBTRACT, node, parseMultiplicative());
+			else
+				return node;
+		}
+	}
+	
+	private FormulaNode parseMultiplicative() {
+		
+		FormulaNode node = parsePower();
+		while (true) {
+			
+			if (consume("*"))
+				node = make(FormulaNode.MULTIPLY, node, parsePower());
+			else if (consume("/"))
+				node = make(FormulaNode.DIVIDE, node, parsePower());
+			else
+				return node;
+		}
+	}
+	
+	private FormulaNode parsePower() {
+		
+		// like in Excel, power is left associative and
+		// has lower priority than unary minus: -2^2 = 4
+		FormulaNode node = parseUnary();
+		while (consume("^"))
+			node = make(FormulaNode.POWER, node, parseUnary());
+		
+		return node;
+	}
+	
+	private FormulaNode parseUnary() {
+		
+		if (consume("-"))
+			return make(FormulaNode.NEGATE, parseUnary());
+		
+		if (consume("+"))
+			return parseUnary();
+		
+		return parsePrimary();
+	}
+	
+	private FormulaNode parsePrimary() {
+		
+		skipSpaces();
+		if (position >= text.length())
+			throw error("Unexpected end of formula");
+		
+		char c = text.charAt(position);
+		
+		if (c == '(') {
+			
+			position++;
+			FormulaNode node = parseComparison();
+			expect(")");
+			
+			return node;
+		}
+		
+		if (Character.isDigit(c) || c == '.')
+			return parseNumber();
+		
+		if (c == '\'')
+			return field(parseQuoted());
+		
+		if (Character.isLetter(c) || c == '_') {
+			
+			String name = parseName();
+			if (consume("("))
+				return parseFunction(name);
+			
+			if (name.equalsIgnoreCase("TRUE"))
+				return intern(FormulaNode.constant(1, true));
+			
+			if (name.equalsIgnoreCase("FALSE"))
+				return intern(FormulaNode.constant(0, true));
+			
+			return field(name);
+		}
+		
+		throw error("Unexpected character '" + c + '\'');
+	}
+	
+	private FormulaNode parseFunction(String name) {
+		
+		List<FormulaNode> arguments = new ArrayList<FormulaNode>();
+		if (!consume(")")) {
+			
+			do {
+				arguments.add(parseComparison());
+			} while (consume(","));
+			
+			expect(")");
+		}
+		
+		String function = name.toUpperCase();
+		int count = arguments.size();
+		
+		if (function.equals("IF")) {
+			
+			if (count == 2)
+				arguments.add(intern(FormulaNode.constant(0, true)));
+			else
+				checkCount(function, count, 3, 3);
+			
+			return make(FormulaNode.IF, arguments.get(0), arguments.get(1), arguments.get(2));
+		}
+		
+		if (function.equals("AND") || function.equals("OR")) {
+			
+			checkCount(function, count, 1, Integer.MAX_VALUE);
+			
+			int operation = function.equals("AND") ? FormulaNode.AND : FormulaNode.OR;
+			FormulaNode node = arguments.get(0);
+			
+			// single argument is converted to boolean
+			if (count == 1)
+				return make(operation, node, node);
+			
+			for (int i = 1; i < count; i++)
+				node = make(operation, node, arguments.get(i));
+			
+			return node;
+		}
+		
+		if (function.equals("MIN") || function.equals("MAX")) {
+			
+			checkCount(function, count, 1, Integer.MAX_VALUE);
+			
+			int operation = function.equals("MIN") ? FormulaNode.MIN : FormulaNode.MAX;
+			FormulaNode node = arguments.get(0);
+			
+			for (int i = 1; i < count; i++)
+				node = make(operation, node, arguments.get(i));
+			
+			return node;
+		}
+		
+		if (function.equals("ROUND")) {
+			
+			checkCount(function, count, 1, 2);
+			if (count == 1)
+				arguments.add(intern(FormulaNode.constant(0, false)));
+			
+			return make(FormulaNode.ROUND, arguments.get(0), arguments.get(1));
+		}
+		
+		int operation;
+		if (function.equals("NOT"))
+			operation = FormulaNode.NOT;
+		else if (function.equals("ABS"))
+			operation = FormulaNode.ABS;
+		else if (function.equals("SQRT"))
+			operation = FormulaNode.SQRT;
+		else
+			throw error("Unknown function '" + name + '\'');
+		
+		checkCount(function, count, 1, 1);
+		return make(operation, arguments.get(0));
+	}
+	
+	private void checkCount(String function, int count, int min, int max) {
+		
+		if (count < min || count > max)
+			throw error("Wrong number of arguments of the function " + function);
+	}
+	
+	/*
+	 * Tokens
+	 */
+	
+	private FormulaNode parseNumber() {
+		
+		int start = position;
+		while (position < text.length() && (Character.isDigit(text.charAt(position)) || text.charAt(position) == '.'))
+			position++;
+		
+		if (position < text.length() && (text.charAt(position) == 'e' || text.charAt(position) == 'E')) {
+			
+			int mark = position++;
+			if (position < text.length() && (text.charAt(position) == '+' || text.charAt(position) == '-'))
+				position++;
+			
+			if (position < text.length() && Character.isDigit(text.charAt(position))) {
+				
+				while (position < text.length() && Character.isDigit(text.charAt(position)))
+					position++;
+			}
+			else {
+				
+				position = mark;
+			}
+		}
+		
+		try {
+			
+			return intern(FormulaNode.constant(Double.parseDouble(text.substring(start, position)), false));
+		
+		} catch (NumberFormatException e) {
+			
+			position = start;
+			throw error("Invalid number");
+		}
+	}
+	
+	private String parseQuoted() {
+		
+		StringBuilder sb = new StringBuilder();
+		int start = position++;
+		
+		while (position < text.length()) {
+			
+			char c = text.charAt(position++);
+			if (c == '\'') {
+				
+				// doubled apostrophe is the apostrophe in the name
+				if (position < text.length() && text.charAt(position) == '\'') {
+					
+					sb.append(c);
+					position++;
+				}
+				else {
+					
+					return sb.toString();
+				}
+			}
+			else {
+				
+				sb.append(c);
+			}
+		}
+		
+		position = start;
+		throw error("Unclosed quote");
+	}
+	
+	private String parseName() {
+		
+		int start = position;
+		while (position < text.length()) {
+			
+			char c = text.charAt(position);
+			if (!Character.isLetterOrDigit(c) && c != '_' && c != '.')
+				break;
+			
+			position++;
+		}
+		
+		return text.substring(start, position);
+	}
+	
+	private void skipSpaces() {
+		
+		while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+			position++;
+	}
+	
+	private boolean consume(String token) {
+		
+		skipSpaces();
+		if (!text.startsWith(token, position))
+			return false;
+		
+		position += token.length();
+		return true;
+	}
+	
+	private void expect(String token) {
+		
+		if (!consume(token))
+			throw error("Expected '" + token + '\'');
+	}
+	
+	private IllegalArgumentException error(String message) {
+		
+		return new IllegalArgumentException(
+			message + " at position " + position + " of the formula: " + text + '!');
+	}
+	
+	/*
+	 * Nodes
+	 */
+	
+	private FormulaNode field(String name) {
+		
+		name = name.trim();
+		
+		int index = -1;
+		for (int i = 0; i < fields.size(); i++) {
+			
+			if (fields.get(i).equalsIgnoreCase(name)) {
+				
+				index = i;
+				break;
+			}
+		}
+		
+		if (index < 0) {
+			
+			index = fields.size();
+			fields.add(name);
+		}
+		
+		return intern(FormulaNode.field(index));
+	}
+	
+	/*
+	 * Creates node of the operation with folding of the constants
+	 * and ordering of the arguments of the commutative operations
+	 */
+	private FormulaNode make(int operation, FormulaNode... arguments) {
+		
+		boolean constant = true;
+		for (FormulaNode argument : arguments)
+			constant &= argument.isConstant();
+		
+		if (constant) {
+			
+			double a = arguments[0].value;
+			double b = arguments.length > 1 ? arguments[1].value : 0;
+			double c = arguments.length > 2 ? arguments[2].value : 0;
+			
+			FormulaNode node = FormulaNode.operation(operation, arguments);
+			return intern(FormulaNode.constant(FormulaNode.apply(operation, a, b, c), node.bool));
+		}
+		
+		if (operation == FormulaNode.IF && arguments[0].isConstant()) {
+			
+			double condition = arguments[0].value;
+			if (condition != condition)
+				return intern(FormulaNode.constant(Double.NaN, false));
+			
+			return condition != 0 ? arguments[1] : arguments[2];
+		}
+		
+		if (arguments.length == 2 && FormulaNode.isCommutative(operation)
+				&& indexes.get(arguments[0]) > indexes.get(arguments[1])) {
+			
+			arguments = new FormulaNode[] {arguments[1], arguments[0]};
+		}
+		
+		return intern(FormulaNode.operation(operation, arguments));
+	}
+	
+	private FormulaNode intern(FormulaNode node) {
+		
+		FormulaNode existing = nodes.get(node);
+		if (existing != null)
+			return existing;
+		
+		nodes.put(node, node);
+		indexes.put(node, indexes.size());
+		
+		return node;
+	}
+}
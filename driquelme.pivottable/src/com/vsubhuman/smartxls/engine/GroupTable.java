@@ -0,0 +1,185 @@
+package com.vsubhuman.smartxls.engine;
+
+import java.util.Arrays;
+
+/**
+ * <p>Hash table that assigns indexes to the distinct tuples of integer codes
+ * (keys of the groups).</p>
+ * 
+ * <p>Table uses open addressing, keys are stored in one flat array, so adding
+ * or finding of the key allocates nothing. Indexes of the groups are assigned
+ * in the order of adding, starting with 0.</p>
+ * 
+ * <p>Table with zero arity has one group with empty key.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+final class GroupTable {
+	
+	// number of codes in the key
+	private final int arity;
+	
+	// keys of the groups, by group index
+	private int[] keys;
+	
+	// hashes of the keys, by group index
+	private int[] hashes;
+	
+	// slots of the hash table: group index + 1, or 0 if slot is free
+	private int[] slots;
+	
+	private int size;
+	
+	/**
+	 * Creates new table for keys of the specified arity.
+	 * 
+	 * @param arity - number of codes in the key
+	 * @param expected - expected number of groups
+	 * @since 1.1
+	 */
+	GroupTable(int arity, int expected) {
+		
+		this.arity = arity;
+		
+		int capacity = 16;
+		while (capacity < expected * 2)
+			capacity <<= 1;
+		
+		this.slots = new int[capacity];
+		this.hashes = new int[Math.max(expected, 16)];
+		this.keys = new int[Math.max(expected, 16) * Math.max(arity, 1)];
+	}
+	
+	/**
+	 * @return number of codes in the key
+	 * @since 1.1
+	 */
+	int getArity() {
+		return arity;
+	}
+	
+	/**
+	 * @return number of the groups
+	 * @since 1.1
+	 */
+	int size() {
+		return size;
+	}
+	
+	/**
+	 * @param group - index of the group
+	 * @param position - position of the code in the key
+	 * @return code of the key of the specified group
+	 * @since 1.1
+	 */
+	int getKey(int group, int position) {
+		return keys[group * arity + position];
+	}
+	
+	/**
+	 * Returns index of the group with specified key,
+	 * new group is created if key is not found.
+	 * 
+	 * @param key - array of the codes, only first "arity" codes are used
+	 * @return index of the group
+	 * @since 1.1
+	 */
+	int add(int[] key) {
+		
+		int hash = hash(key);
+		int mask = slots.length - 1;
+		
+		for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+			
+			int group = slots[slot] - 1;
+			if (group < 0) {
+				
+				group = size++;
+				store(group, hash, key);
+				slots[slot] = group + 1;
+				
+				if (size * 2 > slots.length)
+					rehash();
+				
+				return group;
+			}
+			
+			if (hashes[group] == hash && equal(group, key))
+				return group;
+		}
+	}
+	
+	/**
+	 * @param key - array of the codes, only first "arity" codes are used
+	 * @return index of the group with specified key, or -1 if not found
+	 * @since 1.1
+	 */
+	int find(int[] key) {
+		
+		int hash = hash(key);
+		int mask = slots.length - 1;
+		
+		for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+			
+			int group = slots[slot] - 1;
+			if (group < 0)
+				return -1;
+			
+			if (hashes[group] == hash && equal(group, key))
+				return group;
+		}
+	}
+	
+	private int hash(int[] key) {
+		
+		int h = arity;
+		for (int i = 0; i < arity; i++)
+			h = h * 0x9E3779B9 + key[i];
+		
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		
+		return h;
+	}
+	
+	private boolean equal(int group, int[] key) {
+		
+		int offset = group * arity;
+		for (int i = 0; i < arity; i++) {
+			
+			if (keys[offset + i] != key[i])
+				return false;
+		}
+		
+		return true;
+	}
+	
+	private void store(int group, int hash, int[] key) {
+		
+		if (group == hashes.length) {
+			
+			hashes = Arrays.copyOf(hashes, group * 2);
+			keys = Arrays.copyOf(keys, group * 2 * Math.max(arity, 1));
+		}
+		
+		hashes[group] = hash;
+		System.arraycopy(key, 0, keys, group * arity, arity);
+	}
+	
+	private void rehash() {
+		
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		
+		for (int group = 0; group < size; group++) {
+			
+			int slot = hashes[group] & mask;
+			while (slots[slot] != 0)
+				slot = (slot + 1) & mask;
+			
+			slots[slot] = group + 1;
+		}
+	}
+}
@@ -0,0 +1,738 @@
+package com.vsubhuman.smartxls.engine;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.vsubhuman.smartxls.ResourceUsage;
+
+/**
+ * <p>Class reads CSV file into {@link ColumnarTable} by memory mapping,
+ * in parallel.</p>
+ * 
+ * <p>File is mapped into memory (by parts up to 1 GB) and split into chunks.
+ * To find where the records of the chunk start, quotes of every chunk are counted
+ * in parallel, so it's known if chunk starts inside the quoted value, and the first
+ * line break outside of the quotes is the start of the first record. Then chunks are
+ * parsed in parallel straight into the column builders, which are concatenated in
+ * the order of the chunks. Parsed chunks are checked to follow each other exactly,
+ * chunk is parsed again if its start was guessed wrong (e.g. because of the quote
+ * in the middle of not quoted value).</p>
+ * 
+ * <p>Values are parsed the same way {@link CsvRowSource} does. File should be
+ * in UTF-8 encoding, separator should be ASCII character.</p>
+ * 
+ * <p>Reader supports projection (see {@link SourceProjection}): values of the
+ * not referenced columns are skipped without being decoded, and rows rejected
+ * by the filters are dropped from the chunks.</p>
+ * 
+ * <p>Calling thread and every task are measured into the usage
+ * of the loaded table (see {@link ColumnarTable#getUsage()}).</p>
+ * 
+ * <p>Example:<pre>
+ * ExecutorService executor = Executors.newFixedThreadPool(8);
+ * ColumnarTable data = new MappedCsvReader("table.csv", ';').read(null, executor);</pre>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class MappedCsvReader {
+	
+	// maximal size of the one mapped part of the file
+	private static final int MAPPING_SHIFT = 30;
+	private static final long MAPPING_MASK = (1L << MAPPING_SHIFT) - 1;
+	
+	/**
+	 * Minimal size of the chunk in bytes
+	 */
+	public static final int MIN_CHUNK_SIZE = 4 << 20;
+	
+	private static final Charset UTF8 = Charset.forName(CsvRowSource.DEFAULT_CHARSET);
+	
+	private final String path;
+	private final byte separator;
+	
+	/**
+	 * Create new reader of the CSV file by specified path, with default separator.
+	 * 
+	 * @param path - path of the CSV file
+	 * @since 1.1
+	 */
+	public MappedCsvReader(String path) {
+		this(path, CsvRowSource.DEFAULT_SEPARATOR);
+	}
+	
+	/**
+	 * Create new reader of the CSV file by specified path, with specified separator.
+	 * 
+	 * @param path - path of the CSV file
+	 * @param separator - separator of the values
+	 * @throws IllegalArgumentException - if path is <code>null</code>, or
+	 * separator is not ASCII character or quote
+	 * @since 1.1
+	 */
+	public MappedCsvReader(String path, char separator) throws IllegalArgumentException {
+		
+		if (path == null)
+			throw new IllegalArgumentException(
+				"Path cannot be null!");
+		
+		if (separator > 127 || separator == '"' || separator == '\n' || separator == '\r')
+			throw new IllegalArgumentException(
+				"Separator should be ASCII character and not a quote or line break!");
+		
+		this.path = path;
+		this.separator = (byte) separator;
+	}
+	
+	/**
+	 * @return path of the CSV file
+	 * @since 1.1
+	 */
+	public String getPath() {
+		return path;
+	}
+	
+	/**
+	 * Reads specified range of the file. If executor is <code>null</code>,
+	 * file is read in the current thread.
+	 * 
+	 * @param bounds - bounds of the range: {row1, col1, row2, col2} (optional)
+	 * @param executor - executor to parse chunks (optional)
+	 * @return loaded table
+	 * @throws IllegalStateException - if file has no header row
+	 * or contains unclosed quote
+	 * @throws InterruptedException - if current thread was interrupted
+	 * @throws Exception - if reading has failed
+	 * @since 1.1
+	 */
+	public ColumnarTable read(int[] bounds, ExecutorService executor)
+			throws IllegalStateException, InterruptedException, Exception {
+		
+		return read(bounds, null, executor);
+	}
+	
+	/**
+	 * Reads specified range of the file, with specified projection. Columns not
+	 * referenced by the projection are loaded empty. If executor is <code>null</code>,
+	 * file is read in the current thread.
+	 * 
+	 * @param bounds - bounds of the range: {row1, col1, row2, col2} (optional)
+	 * @param projection - projection of the file (optional)
+	 * @param executor - executor to parse chunks (optional)
+	 * @return loaded table
+	 * @throws IllegalStateException - if file has no header row, contains
+	 * unclosed quote, or has no column of the filter
+	 * @throws InterruptedException - if current thread was interrupted
+	 * @throws Exception - if reading has failed
+	 * @since 1.1
+	 */
+	public ColumnarTable read(int[] bounds, SourceProjection projection, ExecutorService executor)
+			throws IllegalStateException, InterruptedException, Exception {
+		
+		ResourceUsage usage = new ResourceUsage();
+		ResourceUsage.Measurement measurement = usage.start();
+		try {
+			
+			RandomAccessFile file = new RandomAccessFile(new File(path), "r");
+			Data data;
+			try {
+				
+				data = new Data(file.getChannel());
+			
+			} finally {
+				
+				try {
+					file.close();
+				} catch (Exception ignore) {}
+			}
+			
+			return read(data, bounds, projection, executor, usage);
+		
+		} catch (ExecutionException e) {
+			
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			
+			throw e;
+		
+		} finally {
+			measurement.stop();
+		}
+	}
+	
+	/*
+	 * Reads the mapped file, current thread is measured by the caller
+	 */
+	private ColumnarTable read(Data data, int[] bounds, SourceProjection projection, ExecutorService executor,
+			ResourceUsage usage) throws InterruptedException, ExecutionException {
+		
+		int firstRow = bounds == null ? 0 : bounds[0];
+		int firstCol = bounds == null ? 0 : bounds[1];
+		long rowLimit = bounds == null ? Long.MAX_VALUE : (long) bounds[2] - bounds[0];
+		
+		/*
+		 * Header
+		 */
+		
+		List<String> record = new ArrayList<String>();
+		long position = 0;
+		
+		for (int line = 0; line <= firstRow; line++) {
+			
+			if (position >= data.size)
+				throw new IllegalStateException(
+					"CSV source has no header row!");
+			
+			record.clear();
+			position = new Parser(data, null, 0, null).readRecord(position, record);
+		}
+		
+		int columns = bounds == null ? record.size() - firstCol : bounds[3] - bounds[1] + 1;
+		columns = Math.max(columns, 0);
+		
+		String[] header = new String[columns];
+		for (int i = 0; i < columns; i++)
+			header[i] = firstCol + i < record.size() ? record.get(firstCol + i) : null;
+		
+		SourceProjection.Selection selection = projection == null ? null : projection.bind(header);
+		
+		/*
+		 * Chunks
+		 */
+		
+		long start = position;
+		long length = data.size - start;
+		
+		int count = 1;
+		if (executor != null) {
+			
+			long chunks = length / MIN_CHUNK_SIZE;
+			count = (int) Math.max(1, Math.min(chunks, Runtime.getRuntime().availableProcessors() * 4));
+		}
+		
+		long[] rawStarts = new long[count + 1];
+		for (int i = 0; i <= count; i++)
+			rawStarts[i] = start + length * i / count;
+		
+		// parity of the quotes before every chunk
+		boolean[] quoted = new boolean[count];
+		if (count > 1) {
+			
+			List<Future<Integer>> quotes = new ArrayList<Future<Integer>>(count);
+			for (int i = 0; i < count; i++)
+				quotes.add(executor.submit(new QuoteCounter(data, rawStarts[i], rawStarts[i + 1], usage)));
+			
+			boolean parity = false;
+			for (int i = 0; i < count; i++) {
+				
+				quoted[i] = parity;
+				parity ^= (quotes.get(i).get() & 1) != 0;
+			}
+		}
+		
+		List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>(count);
+		List<Chunk> chunks = new ArrayList<Chunk>(count);
+		
+		for (int i = 0; i < count; i++) {
+			
+			long chunkStart = i == 0 ? start : findStart(data, rawStarts[i], quoted[i]);
+			ChunkTask task = new ChunkTask(data, firstCol, columns, selection, chunkStart, rawStarts[i + 1], usage);
+			
+			// current thread is already measured
+			if (executor == null)
+				chunks.add(task.parse());
+			else
+				futures.add(executor.submit(task));
+		}
+		
+		for (Future<Chunk> future : futures)
+			chunks.add(future.get());
+		
+		/*
+		 * Concatenation
+		 */
+		
+		ColumnBuilder[] builders = chunks.get(0).builders;
+		long rows = chunks.get(0).count(rowLimit);
+		long sourceRows = chunks.get(0).sourceRows;
+		long expected = chunks.get(0).end;
+		
+		for (int i = 1; i < count && sourceRows < rowLimit; i++) {
+			
+			Chunk chunk = chunks.get(i);
+			
+			// start of the chunk was guessed wrong
+			if (chunk.start != expected)
+				chunk = new ChunkTask(data, firstCol, columns, selection, expected, rawStarts[i + 1], usage).parse();
+			
+			long taken = chunk.count(rowLimit - sourceRows);
+			for (int c = 0; c < columns; c++)
+				builders[c].append(chunk.builders[c], (int) taken);
+			
+			rows += taken;
+			sourceRows += chunk.sourceRows;
+			expected = chunk.end;
+		}
+		
+		Column[] result = new Column[columns];
+		for (int c = 0; c < columns; c++) {
+			
+			builders[c].truncate((int) rows);
+			result[c] = builders[c].build(header[c]);
+		}
+		
+		return new ColumnarTable(result, (int) rows, usage);
+	}
+	
+	/*
+	 * Returns position of the first record that starts at or after
+	 * the specified position, if state of the quotes is known
+	 */
+	private static long findStart(Data data, long position, boolean quoted) {
+		
+		// line break just before the position ends the previous record
+		long p = position - 1;
+		if (data.get(p) == '"')
+			quoted = !quoted;
+		
+		for (; p < data.size; p++) {
+			
+			byte b = data.get(p);
+			if (b == '"') {
+				
+				quoted = !quoted;
+			}
+			else if (!quoted && (b == '\n' || b == '\r')) {
+				
+				if (b == '\r' && p + 1 < data.size && data.get(p + 1) == '\n')
+					p++;
+				
+				return p + 1;
+			}
+		}
+		
+		return data.size;
+	}
+	
+	/*
+	 * Mapped file
+	 */
+	private static class Data {
+		
+		final long size;
+		final MappedByteBuffer[] mappings;
+		
+		Data(FileChannel channel) throws Exception {
+			
+			size = channel.size();
+			mappings = new MappedByteBuffer[(int) ((size + MAPPING_MASK) >>> MAPPING_SHIFT)];
+			
+			for (int i = 0; i < mappings.length; i++) {
+				
+				long offset = (long) i << MAPPING_SHIFT;
+				mappings[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(size - offset, 1L << MAPPING_SHIFT));
+			}
+		}
+		
+		byte get(long position) {
+			return mappings[(int) (position >>> MAPPING_SHIFT)].get((int) (position & MAPPING_MASK));
+		}
+	}
+	
+	/*
+	 * Parsed chunk
+	 */
+	private static class Chunk {
+		
+		ColumnBuilder[] builders;
+		long start;
+		long end;
+		
+		// number of the kept rows and of all records of the chunk
+		long rows;
+		long sourceRows;
+		
+		// indexes of the records of the kept rows, if rows are filtered
+		int[] kept;
+		
+		/*
+		 * Returns number of the kept rows among
+		 * the specified number of the first records
+		 */
+		long count(long records) {
+			
+			if (records >= sourceRows)
+				return rows;
+			
+			if (kept == null)
+				return records;
+			
+			int index = Arrays.binarySearch(kept, 0, (int) rows, (int) records);
+			return index >= 0 ? index : -index - 1;
+		}
+	}
+	
+	/*
+	 * Tasks
+	 */
+	
+	private static class QuoteCounter implements Callable<Integer> {
+		
+		private final Data data;
+		private final long start;
+		private final long end;
+		private final ResourceUsage usage;
+		
+		QuoteCounter(Data data, long start, long end, ResourceUsage usage) {
+			
+			this.data = data;
+			this.start = start;
+			this.end = end;
+			this.usage = usage;
+		}
+		
+		@Override
+		public Integer call() {
+			
+			ResourceUsage.Measurement measurement = usage.start();
+			try {
+				
+				int count = 0;
+				for (long p = start; p < end; p++) {
+					
+					if (data.get(p) == '"')
+						count++;
+				}
+				
+				return count;
+			
+			} finally {
+				measurement.stop();
+			}
+		}
+	}
+	
+	private class ChunkTask implements Callable<Chunk> {
+		
+		private final Data data;
+		private final int firstCol;
+		private final int columns;
+		private final SourceProjection.Selection selection;
+		private final long start;
+		private final long end;
+		private final ResourceUsage usage;
+		
+		ChunkTask(Data data, int firstCol, int columns, SourceProjection.Selection selection, long start, long end,
+				ResourceUsage usage) {
+			
+			this.data = data;
+			this.firstCol = firstCol;
+			this.columns = columns;
+			this.selection = selection;
+			this.start = start;
+			this.end = end;
+			this.usage = usage;
+		}
+		
+		@Override
+		public Chunk call() {
+			
+			ResourceUsage.Measurement measurement = usage.start();
+			try {
+				
+				return parse();
+			
+			} finally {
+				measurement.stop();
+			}
+		}
+		
+		/*
+		 * Parses the chunk in the current thread, without measuring it
+		 */
+		Chunk parse() {
+			
+			Chunk chunk = new Chunk();
+			chunk.start = start;
+			chunk.builders = new ColumnBuilder[columns];
+			
+			for (int c = 0; c < columns; c++)
+				chunk.builders[c] = new ColumnBuilder();
+			
+			Parser parser = new Parser(data, chunk.builders, firstCol, selection);
+			
+			boolean filtered = selection != null && selection.isFiltered();
+			if (filtered)
+				chunk.kept = new int[1024];
+			
+			long position = start;
+			while (position < end && position < data.size) {
+				
+				position = parser.readRecord(position, null);
+				
+				if (!filtered) {
+					
+					chunk.rows++;
+				}
+				else if (parser.rejected) {
+					
+					for (ColumnBuilder builder : chunk.builders)
+						builder.truncate((int) chunk.rows);
+				}
+				else {
+					
+					if (chunk.rows == chunk.kept.length)
+						chunk.kept = Arrays.copyOf(chunk.kept, chunk.kept.length * 2);
+					
+					chunk.kept[(int) chunk.rows++] = (int) chunk.sourceRows;
+				}
+				
+				chunk.sourceRows++;
+			}
+			
+			chunk.end = position;
+			return chunk;
+		}
+	}
+	
+	/*
+	 * Parser of the records, adds values into builders
+	 * or into the list of strings
+	 */
+	private class Parser {
+		
+		private final Data data;
+		private final ColumnBuilder[] builders;
+		private final int firstCol;
+		private final SourceProjection.Selection selection;
+		
+		private byte[] value = new byte[256];
+		private int length;
+		
+		// if value of the current field is skipped
+		private boolean skipped;
+		
+		// if last read record is rejected by the filters
+		boolean rejected;
+		
+		Parser(Data data, ColumnBuilder[] builders, int firstCol, SourceProjection.Selection selection) {
+			
+			this.data = data;
+			this.builders = builders;
+			this.firstCol = firstCol;
+			this.selection = selection;
+		}
+		
+		/*
+		 * Reads record from the specified position,
+		 * returns position of the next record
+		 */
+		long readRecord(long position, List<String> record) {
+			
+			int field = 0;
+			long p = position;
+			
+			rejected = false;
+			
+			while (true) {
+				
+				length = 0;
+				skipped = builders != null && (field - firstCol < 0 || field - firstCol >= builders.length
+					|| (selection != null && !selection.isSelected(field - firstCol)));
+				
+				if (p < data.size && data.get(p) == '"') {
+					
+					// quoted value
+					p++;
+					while (true) {
+						
+						if (p >= data.size)
+							throw new IllegalStateException(
+								"Unclosed quote in the CSV record at byte " + position + "!");
+						
+						byte b = data.get(p++);
+						if (b == '"') {
+							
+							if (p < data.size && data.get(p) == '"') {
+								
+								append(b);
+								p++;
+							}
+							else {
+								
+								break;
+							}
+						}
+						else {
+							
+							append(b);
+						}
+					}
+				}
+				
+				// not quoted value or rest of the value after quotes
+				byte b = 0;
+				while (p < data.size) {
+					
+					b = data.get(p);
+					if (b == separator || b == '\n' || b == '\r')
+						break;
+					
+					append(b);
+					p++;
+				}
+				
+				addValue(field++, record);
+				
+				if (p >= data.size)
+					break;
+				
+				p++;
+				if (b == separator)
+					continue;
+				
+				if (b == '\r' && p < data.size && data.get(p) == '\n')
+					p++;
+				
+				break;
+			}
+			
+			// missing values of the record
+			if (builders != null) {
+				
+				for (int c = field - firstCol; c < builders.length; c++) {
+					
+					if (c >= 0) {
+						
+						builders[c].addEmpty();
+						if (selection != null && !selection.accept(c, Double.NaN, null))
+							rejected = true;
+					}
+				}
+			}
+			
+			return p;
+		}
+		
+		private void append(byte b) {
+			
+			if (skipped)
+				return;
+			
+			if (length == value.length) {
+				
+				byte[] grown = new byte[length * 2];
+				System.arraycopy(value, 0, grown, 0, length);
+				value = grown;
+			}
+			
+			value[length++] = b;
+		}
+		
+		private void addValue(int field, List<String> record) {
+			
+			if (builders == null) {
+				
+				record.add(new String(value, 0, length, UTF8));
+				return;
+			}
+			
+			int column = field - firstCol;
+			if (column < 0 || column >= builders.length)
+				return;
+			
+			ColumnBuilder builder = builders[column];
+			if (length == 0 || skipped) {
+				
+				builder.addEmpty();
+				if (selection != null && !selection.accept(column, Double.NaN, null))
+					rejected = true;
+				
+				return;
+			}
+			
+			String text = null;
+			
+			double number = parseNumber();
+			if (number != number) {
+				
+				text = new String(value, 0, length, UTF8);
+				number = CsvRowSource.parseNumber(text);
+			}
+			
+			if (number == number)
+				builder.addNumber(number);
+			else
+				builder.addText(text);
+			
+			if (selection != null && !selection.accept(column, number, text))
+				rejected = true;
+		}
+		
+		/*
+		 * Parses simple decimal number without creating the string,
+		 * returns NaN if value is not such number
+		 */
+		private double parseNumber() {
+			
+			int i = 0;
+			boolean negative = false;
+			
+			if (value[0] == '-' || value[0] == '+') {
+				
+				negative = value[0] == '-';
+				i++;
+			}
+			
+			long mantissa = 0;
+			int digits = 0;
+			int fraction = -1;
+			
+			for (; i < length; i++) {
+				
+				byte b = value[i];
+				if (b >= '0' && b <= '9') {
+					
+					mantissa = mantissa * 10 + (b - '0');
+					if (++digits > 15)
+						return Double.NaN;
+					
+					if (fraction >= 0)
+						fraction++;
+				}
+				else if (b == '.' && fraction < 0) {
+					
+					fraction = 0;
+				}
+				else {
+					
+					return Double.NaN;
+				}
+			}
+			
+			if (digits == 0)
+				return Double.NaN;
+			
+			// exact, since mantissa and power of ten are exact doubles
+			double number = fraction > 0 ? mantissa / POWERS[fraction] : mantissa;
+			return negative ? -number : number;
+		}
+	}
+	
+	private static final double[] POWERS = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+	};
+}
@@ -0,0 +1,403 @@
+package com.vsubhuman.smartxls.engine;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import com.smartxls.WorkBook;
+import com.vsubhuman.smartxls.Document;
+import com.vsubhuman.smartxls.DocumentFormat;
+import com.vsubhuman.smartxls.PivotTable;
+import com.vsubhuman.smartxls.ResourceUsage;
+import com.vsubhuman.smartxls.TableRange;
+
+/**
+ * <p>Class computes pivot tables in pure Java, without SmartXLS pivot engine.</p>
+ * 
+ * <p>Source table is read row by row (see {@link RowSource}), values of the row
+ * and column fields are encoded into integer codes, and data fields are accumulated
+ * into hash table of the groups, so memory used by the engine depends only on the
+ * number of the distinct groups, not on the size of the source table.</p>
+ * 
+ * <p>Fields of the {@link com.vsubhuman.smartxls.PivotArea#PAGE} area are used only
+ * to filter rows by {@link SourceProjection}. Formula fields are compiled by
+ * {@link Formula} and evaluated over the sums of the referenced fields.</p>
+ * 
+ * <p>Every result reports resources spent to compute it, summed over the
+ * calling thread and the parallel tasks (see {@link PivotResult#getUsage()}).</p>
+ * 
+ * <p>Example:<pre>
+ * PivotResult result = NativePivotEngine.compute(table);
+ * for (int row = 0; row &lt; result.getRowCount(); row++)
+ *   System.out.println(Arrays.toString(result.getRowKey(row)) + ": " + result.getRowTotal(row, 0));
+ * </pre>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class NativePivotEngine {
+	
+	/*
+	 * Constructor
+	 */
+	private NativePivotEngine() {}
+	
+	/**
+	 * Computes specified pivot table from its source document.
+	 * CSV and not encrypted XLSX documents are streamed, documents
+	 * of other formats are read into {@link WorkBook}. Only columns
+	 * referenced by the fields are read (see {@link SourceProjection#create(PivotTable)}).
+	 * 
+	 * @param table - pivot table to compute
+	 * @return computed result
+	 * @throws IllegalArgumentException - if table is <code>null</code> or invalid
+	 * @throws IllegalStateException - if table has no source document
+	 * or source has no column used by the field
+	 * @throws Exception - if reading of the source has failed
+	 * @since 1.1
+	 */
+	public static PivotResult compute(PivotTable table) throws IllegalArgumentException,
+			IllegalStateException, Exception {
+		
+		return compute(table, SourceProjection.create(table));
+	}
+	
+	/**
+	 * Computes specified pivot table from its source document, with specified
+	 * projection pushed down into the source reader.
+	 * 
+	 * @param table - pivot table to compute
+	 * @param projection - projection of the source (optional)
+	 * @return computed result
+	 * @throws IllegalArgumentException - if table is <code>null</code> or invalid
+	 * @throws IllegalStateException - if table has no source document
+	 * or source has no column used by the field or the filter
+	 * @throws Exception - if reading of the source has failed
+	 * @see #open(PivotTable)
+	 * @since 1.1
+	 */
+	public static PivotResult compute(PivotTable table, SourceProjection projection)
+			throws IllegalArgumentException, IllegalStateException, Exception {
+		
+		ResourceUsage usage = new ResourceUsage();
+		ResourceUsage.Measurement measurement = usage.start();
+		try {
+			
+			RowSource source = open(table);
+			try {
+				
+				if (projection != null)
+					source.setProjection(projection);
+				
+				return compute(table, source, usage);
+			
+			} finally {
+				
+				try {
+					source.close();
+				} catch (Exception ignore) {}
+			}
+		
+		} finally {
+			measurement.stop();
+		}
+	}
+	
+	/**
+	 * Computes specified pivot table from specified source.
+	 * Source is read till the end but not closed.
+	 * 
+	 * @param table - pivot table to compute
+	 * @param source - source table
+	 * @return computed result
+	 * @throws IllegalArgumentException - if table or source is <code>null</code>
+	 * or table is invalid
+	 * @throws IllegalStateException - if source has no column used by the field
+	 * @throws Exception - if reading of the source has failed
+	 * @since 1.1
+	 */
+	public static PivotResult compute(PivotTable table, RowSource source) throws IllegalArgumentException,
+			IllegalStateException, Exception {
+		
+		ResourceUsage usage = new ResourceUsage();
+		ResourceUsage.Measurement measurement = usage.start();
+		try {
+			
+			return compute(table, source, usage);
+		
+		} finally {
+			measurement.stop();
+		}
+	}
+	
+	/*
+	 * Computes specified pivot table from specified source,
+	 * current thread is measured by the caller
+	 */
+	private static PivotResult compute(PivotTable table, RowSource source, ResourceUsage usage)
+			throws IllegalArgumentException, IllegalStateException, Exception {
+		
+		if (table == null)
+			throw new IllegalArgumentException(
+				"Table cannot be null!");
+		
+		if (source == null)
+			throw new IllegalArgumentException(
+				"Source cannot be null!");
+		
+		PivotSpec spec = PivotSpec.create(table, source.getColumnNames());
+		Aggregation aggregation = new Aggregation(spec);
+		
+		Dictionary[] rowDictionaries = dictionaries(spec.rowColumns.length);
+		Dictionary[] columnDictionaries = dictionaries(spec.columnColumns.length);
+		
+		int[] rowKey = new int[spec.rowColumns.length];
+		int[] columnKey = new int[spec.columnColumns.length];
+		byte[] kinds = new byte[spec.valueColumns.length];
+		double[] values = new double[spec.valueColumns.length];
+		
+		while (source.next()) {
+			
+			encode(source, spec.rowColumns, rowDictionaries, rowKey);
+			encode(source, spec.columnColumns, columnDictionaries, columnKey);
+			
+			for (int v = 0; v < kinds.length; v++) {
+				
+				int column = spec.valueColumns[v];
+				if (source.isNumber(column)) {
+					
+					kinds[v] = Aggregation.NUMBER;
+					values[v] = source.getNumber(column);
+				}
+				else {
+					
+					kinds[v] = source.isEmpty(column) ? Aggregation.EMPTY : Aggregation.TEXT;
+				}
+			}
+			
+			aggregation.add(rowKey, columnKey, kinds, values);
+		}
+		
+		return aggregation.toResult(rowDictionaries, columnDictionaries, usage);
+	}
+	
+	/**
+	 * Computes specified pivot table from the table loaded into memory.
+	 * 
+	 * @param table - pivot table to compute
+	 * @param data - source table loaded by columns
+	 * @return computed result
+	 * @throws IllegalArgumentException - if table or data is <code>null</code>
+	 * or table is invalid
+	 * @throws IllegalStateException - if source has no column used by the field
+	 * @since 1.1
+	 */
+	public static PivotResult compute(PivotTable table, ColumnarTable data) throws IllegalArgumentException,
+			IllegalStateException {
+		
+		if (table == null)
+			throw new IllegalArgumentException(
+				"Table cannot be null!");
+		
+		if (data == null)
+			throw new IllegalArgumentException(
+				"Data cannot be null!");
+		
+		return new ColumnarAggregation(PivotSpec.create(table, data.getColumnNames()), data).compute();
+	}
+	
+	/**
+	 * Computes specified pivot table from the table loaded into memory,
+	 * in parallel by tasks of the specified executor. Rows are split into chunks,
+	 * every chunk is aggregated separately and results are merged.
+	 * Current thread waits for the tasks to finish.
+	 * 
+	 * @param table - pivot table to compute
+	 * @param data - source table loaded by columns
+	 * @param executor - executor to run the tasks
+	 * @return computed result
+	 * @throws IllegalArgumentException - if table, data or executor is <code>null</code>
+	 * or table is invalid
+	 * @throws IllegalStateException - if source has no column used by the field
+	 * @throws InterruptedException - if current thread was interrupted
+	 * @throws Exception - if computation has failed
+	 * @since 1.1
+	 */
+	public static PivotResult compute(PivotTable table, ColumnarTable data, ExecutorService executor)
+			throws IllegalArgumentException, IllegalStateException, InterruptedException, Exception {
+		
+		if (table == null)
+			throw new IllegalArgumentException(
+				"Table cannot be null!");
+		
+		if (data == null)
+			throw new IllegalArgumentException(
+				"Data cannot be null!");
+		
+		if (executor == null)
+			throw new IllegalArgumentException(
+				"Executor cannot be null!");
+		
+		ColumnarAggregation aggregation = new ColumnarAggregation(
+			PivotSpec.create(table, data.getColumnNames()), data);
+		
+		try {
+			
+			return aggregation.compute(executor);
+		
+		} catch (ExecutionException e) {
+			
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			
+			throw e;
+		}
+	}
+	
+	/**
+	 * Loads source of the specified pivot table into memory by columns.
+	 * CSV documents are read by {@link MappedCsvReader}, in parallel if executor
+	 * is specified, documents of other formats are loaded from {@link #open(PivotTable)}.
+	 * 
+	 * @param table - pivot table
+	 * @param executor - executor to read CSV documents in parallel (optional)
+	 * @return loaded source table
+	 * @throws IllegalArgumentException - if table is <code>null</code>
+	 * @throws IllegalStateException - if table has no source document
+	 * @throws Exception - if reading of the source has failed
+	 * @since 1.1
+	 */
+	public static ColumnarTable load(PivotTable table, ExecutorService executor)
+			throws IllegalArgumentException, IllegalStateException, Exception {
+		
+		return load(table, null, executor);
+	}
+	
+	/**
+	 * Loads source of the specified pivot table into memory by columns, with
+	 * specified projection pushed down into the source reader. Columns not
+	 * referenced by the projection are loaded empty, so loaded table should
+	 * be used only for the tables the projection was created for.
+	 * 
+	 * @param table - pivot table
+	 * @param projection - projection of the source (optional)
+	 * @param executor - executor to read CSV documents in parallel (optional)
+	 * @return loaded source table
+	 * @throws IllegalArgumentException - if table is <code>null</code>
+	 * @throws IllegalStateException - if table has no source document,
+	 * or source has no column of the filter
+	 * @throws Exception - if reading of the source has failed
+	 * @since 1.1
+	 */
+	public static ColumnarTable load(PivotTable table, SourceProjection projection, ExecutorService executor)
+			throws IllegalArgumentException, IllegalStateException, Exception {
+		
+		if (table == null)
+			throw new IllegalArgumentException(
+				"Table cannot be null!");
+		
+		Document doc = table.getSourceDocument();
+		if (doc == null)
+			throw new IllegalStateException(
+				"Table has no source document!");
+		
+		if (doc.getDocumentFormat() == DocumentFormat.CSV) {
+			
+			TableRange range = table.getSourceRange();
+			int[] bounds = range == null ? null : range.getBounds(null);
+			
+			MappedCsvReader reader = new MappedCsvReader(doc.getPath(), CsvRowSource.getSeparator(doc.getPassword()));
+			return reader.read(bounds, projection, executor);
+		}
+		
+		RowSource source = open(table);
+		try {
+			
+			if (projection != null)
+				source.setProjection(projection);
+			
+			return ColumnarTable.load(source);
+		
+		} finally {
+			
+			try {
+				source.close();
+			} catch (Exception ignore) {}
+		}
+	}
+	
+	/**
+	 * Opens source of the specified pivot table. CSV documents are streamed
+	 * by {@link CsvRowSource}, not encrypted XLSX documents - by {@link XlsxRowSource},
+	 * documents of other formats are read into {@link WorkBook} and used by
+	 * {@link WorkBookRowSource}.
+	 * 
+	 * @param table - pivot table
+	 * @return opened source, should be closed by caller
+	 * @throws IllegalArgumentException - if table is <code>null</code>
+	 * @throws IllegalStateException - if table has no source document
+	 * @throws Exception - if opening of the source has failed
+	 * @since 1.1
+	 */
+	public static RowSource open(PivotTable table) throws IllegalArgumentException,
+			IllegalStateException, Exception {
+		
+		if (table == null)
+			throw new IllegalArgumentException(
+				"Table cannot be null!");
+		
+		Document doc = table.getSourceDocument();
+		if (doc == null)
+			throw new IllegalStateException(
+				"Table has no source document!");
+		
+		TableRange range = table.getSourceRange();
+		
+		if (doc.getDocumentFormat() == DocumentFormat.CSV) {
+			
+			int[] bounds = range == null ? null : range.getBounds(null);
+			return new CsvRowSource(doc.getPath(), CsvRowSource.getSeparator(doc.getPassword()), bounds);
+		}
+		
+		if (doc.getDocumentFormat() == DocumentFormat.XLSX && doc.getPassword() == null) {
+			
+			int[] bounds = range == null ? null : range.getBounds(null);
+			return new XlsxRowSource(doc.getPath(), table.getSourceSheet(), bounds);
+		}
+		
+		WorkBook wb = doc.read();
+		
+		int sheet = table.getSourceSheet();
+		if (sheet >= 0)
+			wb.setSheet(sheet);
+		
+		return new WorkBookRowSource(wb, range);
+	}
+	
+	private static Dictionary[] dictionaries(int count) {
+		
+		Dictionary[] result = new Dictionary[count];
+		for (int i = 0; i < count; i++)
+			result[i] = new Dictionary();
+		
+		return result;
+	}
+	
+	/*
+	 * Encodes values of the current row in the specified columns
+	 */
+	private static void encode(RowSource source, int[] columns, Dictionary[] dictionaries, int[] key) {
+		
+		for (int i = 0; i < columns.length; i++) {
+			
+			int column = columns[i];
+			
+			if (source.isNumber(column))
+				key[i] = dictionaries[i].encodeNumber(source.getNumber(column));
+			else
+				key[i] = dictionaries[i].encodeText(source, column);
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package com.vsubhuman.smartxls.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.vsubhuman.smartxls.ResourceUsage;
+
+/**
+ * <p>Class represents computed pivot table.</p>
+ * 
+ * <p>Rows and columns of the result are the distinct combinations of the values
+ * of the row and column fields, in the sorted order. Key of the row (column) contains
+ * values of the row (column) fields in the order of the fields: {@link String},
+ * {@link Double} or <code>null</code> for empty cells. If pivot table has no row (column)
+ * fields - result has one row (column) with empty key.</p>
+ * 
+ * <p>Every cell of the result contains value of every data field.
+ * Cell without source rows contains {@link Double#NaN}.</p>
+ * 
+ * <p>CPU time and heap bytes spent to compute the result, by the calling
+ * thread and by all the parallel tasks, are available from {@link #getUsage()}.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class PivotResult {
+	
+	private final List<String> rowFields;
+	private final List<String> columnFields;
+	private final List<String> dataFields;
+	
+	private final Object[][] rowKeys;
+	private final Object[][] columnKeys;
+	
+	// values by (row * columnCount + column) * dataCount + data
+	private final double[] values;
+	
+	// totals by row (column) * dataCount + data
+	private final double[] rowTotals;
+	private final double[] columnTotals;
+	private final double[] grandTotals;
+	
+	private final ResourceUsage usage;
+	
+	/*
+	 * Constructor
+	 */
+	PivotResult(String[] rowFields, String[] columnFields, String[] dataFields,
+			Object[][] rowKeys, Object[][] columnKeys, double[] values,
+			double[] rowTotals, double[] columnTotals, double[] grandTotals,
+			ResourceUsage usage) {
+		
+		this.rowFields = Collections.unmodifiableList(Arrays.asList(rowFields));
+		this.columnFields = Collections.unmodifiableList(Arrays.asList(columnFields));
+		this.dataFields = Collections.unmodifiableList(Arrays.asList(dataFields));
+		this.rowKeys = rowKeys;
+		this.columnKeys = columnKeys;
+		this.values = values;
+		this.rowTotals = rowTotals;
+		this.columnTotals = columnTotals;
+		this.grandTotals = grandTotals;
+		this.usage = usage;
+	}
+	
+	/**
+	 * @return unmodifiable list of the source names of the row fields
+	 * @since 1.1
+	 */
+	public List<String> getRowFields() {
+		return rowFields;
+	}
+	
+	/**
+	 * @return unmodifiable list of the source names of the column fields
+	 * @since 1.1
+	 */
+	public List<String> getColumnFields() {
+		return columnFields;
+	}
+	
+	/**
+	 * @return unmodifiable list of the names of the data fields
+	 * @since 1.1
+	 */
+	public List<String> getDataFields() {
+		return dataFields;
+	}
+	
+	/**
+	 * @return number of the rows of the result
+	 * @since 1.1
+	 */
+	public int getRowCount() {
+		return rowKeys.length;
+	}
+	
+	/**
+	 * @return number of the columns of the result
+	 * @since 1.1
+	 */
+	public int getColumnCount() {
+		return columnKeys.length;
+	}
+	
+	/**
+	 * @return number of the data fields
+	 * @since 1.1
+	 */
+	public int getDataFieldCount() {
+		return dataFields.size();
+	}
+	
+	/**
+	 * @param row - index of the row
+	 * @return values of the row fields of the specified row
+	 * @since 1.1
+	 */
+	public Object[] getRowKey(int row) {
+		return rowKeys[row].clone();
+	}
+	
+	/**
+	 * @param column - index of the column
+	 * @return values of the column fields of the specified column
+	 * @since 1.1
+	 */
+	public Object[] getColumnKey(int column) {
+		return columnKeys[column].clone();
+	}
+	
+	/**
+	 * @param row - index of the row
+	 * @param column - index of the column
+	 * @param data - index of the data field
+	 * @return value of the data field in the specified cell,
+	 * or {@link Double#NaN} if cell has no source rows
+	 * @since 1.1
+	 */
+	public double getValue(int row, int column, int data) {
+		return values[(row * columnKeys.length + column) * dataFields.size() + data];
+	}
+	
+	/**
+	 * @param row - index of the row
+	 * @param data - index of the data field
+	 * @return grand total of the specified row
+	 * @since 1.1
+	 */
+	public double getRowTotal(int row, int data) {
+		return rowTotals[row * dataFields.size() + data];
+	}
+	
+	/**
+	 * @param column - index of the column
+	 * @param data - index of the data field
+	 * @return grand total of the specified column
+	 * @since 1.1
+	 */
+	public double getColumnTotal(int column, int data) {
+		return columnTotals[column * dataFields.size() + data];
+	}
+	
+	/**
+	 * @param data - index of the data field
+	 * @return grand total of the whole table
+	 * @since 1.1
+	 */
+	public double getGrandTotal(int data) {
+		return grandTotals[data];
+	}
+	
+	/**
+	 * Returns resources spent by the computation of the result. Reading
+	 * of the source is included only if result was computed from the
+	 * document (see {@link NativePivotEngine#compute(com.vsubhuman.smartxls.PivotTable)}).
+	 * 
+	 * @return CPU time and allocated bytes of the computation
+	 * @since 1.1
+	 */
+	public ResourceUsage getUsage() {
+		return usage;
+	}
+	
+	@Override
+	public String toString() {
+		
+		return "PivotResult{rows: " + rowFields + ", columns: " + columnFields
+			+ ", data: " + dataFields + ", size: " + getRowCount() + 'x' + getColumnCount() + '}';
+	}
+}
@@ -0,0 +1,290 @@
+package com.vsubhuman.smartxls.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vsubhuman.smartxls.ConversionPlan;
+import com.vsubhuman.smartxls.DataField;
+import com.vsubhuman.smartxls.FormulaField;
+import com.vsubhuman.smartxls.PivotArea;
+import com.vsubhuman.smartxls.PivotField;
+import com.vsubhuman.smartxls.PivotTable;
+import com.vsubhuman.smartxls.SortType;
+import com.vsubhuman.smartxls.SummarizeType;
+
+/**
+ * <p>Class contains fields of the pivot table resolved against
+ * columns of the source table.</p>
+ * 
+ * <p>Fields of the {@link PivotArea#PAGE} area are not resolved here: rows are
+ * filtered by them before they reach the engine, see
+ * {@link SourceProjection#addFilter(String, Object...)}.</p>
+ * 
+ * <p>Engine accumulates values: one value for every data field, and one
+ * hidden sum for every source field referenced by the formula fields.
+ * Formula fields are evaluated over the sums, like Excel does.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+final class PivotSpec {
+	
+	// source columns of the row and column fields
+	final int[] rowColumns;
+	final int[] columnColumns;
+	
+	// source columns and summarize types of the accumulated values (null - automatic)
+	final int[] valueColumns;
+	final SummarizeType[] valueTypes;
+	
+	// indexes of the values of the data fields, -1 for formula fields
+	final int[] dataValues;
+	
+	// formulas of the data fields, null for the other fields
+	final Formula[] formulas;
+	
+	// indexes of the values referenced by the formulas, by data field
+	final int[][] formulaValues;
+	
+	// names of the fields, as they are specified in the pivot table
+	final String[] rowNames;
+	final String[] columnNames;
+	final String[] dataSources;
+	
+	// names of the data fields, null if name is not specified
+	final String[] dataNames;
+	
+	// sorting of the row and column fields
+	final boolean[] rowDescending;
+	final boolean[] columnDescending;
+	final boolean[] rowManual;
+	final boolean[] columnManual;
+	
+	// summarize types of the data fields, null - automatic
+	final SummarizeType[] summarizeTypes;
+	
+	private PivotSpec(List<PivotField> rows, List<PivotField> columns,
+			List<PivotField> data, String[] sourceColumns) {
+		
+		rowColumns = resolve(rows, sourceColumns);
+		columnColumns = resolve(columns, sourceColumns);
+		
+		rowNames = names(rows);
+		columnNames = names(columns);
+		dataSources = names(data);
+		
+		rowDescending = sorting(rows, SortType.DESCEND);
+		columnDescending = sorting(columns, SortType.DESCEND);
+		rowManual = sorting(rows, SortType.MANUAL);
+		columnManual = sorting(columns, SortType.MANUAL);
+		
+		int count = data.size();
+		
+		dataNames = new String[count];
+		summarizeTypes = new SummarizeType[count];
+		dataValues = new int[count];
+		formulas = new Formula[count];
+		formulaValues = new int[count][];
+		
+		List<Integer> columnList = new ArrayList<Integer>();
+		List<SummarizeType> typeList = new ArrayList<SummarizeType>();
+		
+		for (int i = 0; i < count; i++) {
+			
+			PivotField field = data.get(i);
+			String name = null;
+			
+			if (field instanceof DataField) {
+				
+				DataField dataField = (DataField) field;
+				summarizeTypes[i] = dataField.getSummarizeType();
+				name = dataField.getName();
+			}
+			
+			if (name != null && name.equalsIgnoreCase(field.getSource()))
+				name = name + '.';
+			
+			dataNames[i] = name;
+			
+			if (field instanceof FormulaField) {
+				
+				formulas[i] = Formula.compile(((FormulaField) field).getFormula());
+				dataValues[i] = -1;
+			}
+			else {
+				
+				dataValues[i] = columnList.size();
+				columnList.add(resolve(field.getSource(), sourceColumns));
+				typeList.add(summarizeTypes[i]);
+			}
+		}
+		
+		// hidden sums of the fields referenced by the formulas
+		Map<Integer, Integer> sums = new HashMap<Integer, Integer>();
+		
+		for (int i = 0; i < count; i++) {
+			
+			if (formulas[i] == null)
+				continue;
+			
+			List<String> fields = formulas[i].getFields();
+			formulaValues[i] = new int[fields.size()];
+			
+			for (int f = 0; f < fields.size(); f++) {
+				
+				int column = resolve(fields.get(f), sourceColumns);
+				
+				Integer value = sums.get(column);
+				if (value == null) {
+					
+					value = columnList.size();
+					sums.put(column, value);
+					columnList.add(column);
+					typeList.add(SummarizeType.SUM);
+				}
+				
+				formulaValues[i][f] = value;
+			}
+		}
+		
+		valueColumns = new int[columnList.size()];
+		for (int i = 0; i < valueColumns.length; i++)
+			valueColumns[i] = columnList.get(i);
+		
+		valueTypes = typeList.toArray(new SummarizeType[typeList.size()]);
+	}
+	
+	/**
+	 * Creates specification of the pivot table for the source with
+	 * specified columns.
+	 * 
+	 * @param table - pivot table
+	 * @param sourceColumns - names of the source columns
+	 * @return created specification
+	 * @throws IllegalArgumentException - if fields of the pivot table are invalid
+	 * or formula cannot be parsed
+	 * @throws IllegalStateException - if source has no column used by the field
+	 * @since 1.1
+	 */
+	static PivotSpec create(PivotTable table, String[] sourceColumns)
+			throws IllegalArgumentException, IllegalStateException {
+		
+		List<PivotField> rows = new ArrayList<PivotField>();
+		List<PivotField> columns = new ArrayList<PivotField>();
+		List<PivotField> data = new ArrayList<PivotField>();
+		
+		for (PivotField field : ConversionPlan.compile(table).getFields()) {
+			
+			switch (field.getPivotArea()) {
+			
+			case ROW:
+				rows.add(field);
+				break;
+			case COLUMN:
+				columns.add(field);
+				break;
+			case DATA:
+				data.add(field);
+				break;
+			default:
+				break;
+			}
+		}
+		
+		return new PivotSpec(rows, columns, data, sourceColumns);
+	}
+	
+	private static int[] resolve(List<PivotField> fields, String[] sourceColumns) {
+		
+		int[] result = new int[fields.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = resolve(fields.get(i).getSource(), sourceColumns);
+		
+		return result;
+	}
+	
+	private static int resolve(String source, String[] sourceColumns) {
+		
+		int column = RowSource.indexOf(sourceColumns, source);
+		if (column < 0)
+			throw new IllegalStateException("Source table has no column '" + source + "'!");
+		
+		return column;
+	}
+	
+	private static String[] names(List<PivotField> fields) {
+		
+		String[] result = new String[fields.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = fields.get(i).getSource();
+		
+		return result;
+	}
+	
+	private static boolean[] sorting(List<PivotField> fields, SortType type) {
+		
+		boolean[] result = new boolean[fields.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = fields.get(i).getSortType() == type;
+		
+		return result;
+	}
+	
+	/**
+	 * Returns name of the data field. If name is not specified - caption
+	 * is created the way Excel does, like "Sum of Stock".
+	 * 
+	 * @param index - index of the data field
+	 * @param numeric - <code>true</code> if the whole field contains only numbers
+	 * @return name of the data field
+	 * @since 1.1
+	 */
+	String getDataName(int index, boolean numeric) {
+		
+		if (dataNames[index] != null)
+			return dataNames[index];
+		
+		if (formulas[index] != null)
+			return "Sum of " + formulas[index].getText().trim();
+		
+		return caption(summarizeTypes[index], numeric) + " of " + dataSources[index];
+	}
+	
+	/*
+	 * Returns caption Excel uses for the data field
+	 * without name
+	 */
+	private static String caption(SummarizeType type, boolean numeric) {
+		
+		if (type == null)
+			return numeric ? "Sum" : "Count";
+		
+		switch (type) {
+		
+		case AVERAGE:
+			return "Average";
+		case COUNT:
+			return "Count";
+		case COUNT_NUMS:
+			return "Count";
+		case MAX:
+			return "Max";
+		case MIN:
+			return "Min";
+		case PRODUCT:
+			return "Product";
+		case STD_DEV:
+			return "StdDev";
+		case STD_DEVP:
+			return "StdDevp";
+		case VAR:
+			return "Var";
+		case VARP:
+			return "Varp";
+		default:
+			return "Sum";
+		}
+	}
+}
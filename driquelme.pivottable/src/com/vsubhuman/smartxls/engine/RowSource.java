@@ -0,0 +1,186 @@
+package com.vsubhuman.smartxls.engine;
+
+/**
+ * <p>Class represents entity of the source table read row by row.</p>
+ * 
+ * <p>First row of the source table is the header, it's used to name the columns
+ * and is not returned as a row. After creation source is positioned before the first
+ * data row, method {@link #next()} moves it to the next row. Values of the current
+ * row are available by column index.</p>
+ * 
+ * <p>Example:<pre>
+ * RowSource source = new CsvRowSource("table.csv", ';');
+ * try {
+ * 
+ *   int column = source.getColumnIndex("Stock");
+ *   while (source.next()) {
+ *     if (source.isNumber(column))
+ *       sum += source.getNumber(column);
+ *   }
+ * 
+ * } finally {
+ *   source.close();
+ * }</pre>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public abstract class RowSource {
+	
+	/**
+	 * @return number of the columns of the source
+	 * @since 1.1
+	 */
+	public abstract int getColumnCount();
+	
+	/**
+	 * @param column - index of the column
+	 * @return name of the column from the header row
+	 * @since 1.1
+	 */
+	public abstract String getColumnName(int column);
+	
+	/**
+	 * Returns index of the column with specified name. Names are compared
+	 * without leading and trailing spaces and ignoring case, like Excel
+	 * does for the pivot table fields.
+	 * 
+	 * @param name - name of the column
+	 * @return index of the column, or -1 if source has no column
+	 * with specified name
+	 * @since 1.1
+	 */
+	public int getColumnIndex(String name) {
+		
+		return indexOf(getColumnNames(), name);
+	}
+	
+	/**
+	 * @return names of all the columns of the source
+	 * @since 1.1
+	 */
+	public String[] getColumnNames() {
+		
+		String[] names = new String[getColumnCount()];
+		for (int i = 0; i < names.length; i++)
+			names[i] = getColumnName(i);
+		
+		return names;
+	}
+	
+	/*
+	 * Finds index of the column name, the same way as
+	 * getColumnIndex does
+	 */
+	static int indexOf(String[] names, String name) {
+		
+		if (name == null)
+			return -1;
+		
+		name = name.trim();
+		
+		for (int i = 0; i < names.length; i++) {
+			
+			if (names[i] != null && names[i].trim().equalsIgnoreCase(name))
+				return i;
+		}
+		
+		return -1;
+	}
+	
+	/*
+	 * Formats number as text, without fraction
+	 * if number is integer
+	 */
+	static String format(double number) {
+		
+		if (number == Math.rint(number) && Math.abs(number) < 1e15)
+			return Long.toString((long) number);
+		
+		return Double.toString(number);
+	}
+	
+	/**
+	 * Moves source to the next row.
+	 * 
+	 * @return <code>true</code> if source is moved to the next row, and
+	 * <code>false</code> if there's no more rows
+	 * @throws Exception - if reading of the row has failed
+	 * @since 1.1
+	 */
+	public abstract boolean next() throws Exception;
+	
+	/**
+	 * @param column - index of the column
+	 * @return <code>true</code> if cell of the current row in the
+	 * specified column is empty
+	 * @since 1.1
+	 */
+	public abstract boolean isEmpty(int column);
+	
+	/**
+	 * @param column - index of the column
+	 * @return <code>true</code> if cell of the current row in the
+	 * specified column contains number
+	 * @since 1.1
+	 */
+	public abstract boolean isNumber(int column);
+	
+	/**
+	 * @param column - index of the column
+	 * @return number value of the cell of the current row in the specified column,
+	 * or {@link Double#NaN} if cell doesn't contain number
+	 * @since 1.1
+	 */
+	public abstract double getNumber(int column);
+	
+	/**
+	 * @param column - index of the column
+	 * @return text of the cell of the current row in the specified column,
+	 * or <code>null</code> if cell is empty
+	 * @since 1.1
+	 */
+	public abstract String getText(int column);
+	
+	/**
+	 * Returns index of the shared string in the cell of the current row. Sources
+	 * that keep repeated texts once (like shared strings of the XLSX file) return
+	 * the same index for the same text, so consumers can decode every distinct
+	 * text only once. Default implementation returns -1.
+	 * 
+	 * @param column - index of the column
+	 * @return index of the shared string, or -1 if cell doesn't
+	 * contain shared string
+	 * @since 1.1
+	 */
+	public int getSharedIndex(int column) {
+		
+		return -1;
+	}
+	
+	/**
+	 * Pushes projection down into the source: cells of the columns not referenced
+	 * by the projection are returned as empty without being decoded, and rows rejected
+	 * by the filters of the projection are skipped. Projection should be set before
+	 * the first row is read. Default implementation doesn't support projection.
+	 * 
+	 * @param projection - projection of the source, or <code>null</code> to read all
+	 * @throws UnsupportedOperationException - if source doesn't support projection
+	 * @throws IllegalStateException - if source has no column of the filter
+	 * @since 1.1
+	 */
+	public void setProjection(SourceProjection projection)
+			throws UnsupportedOperationException, IllegalStateException {
+		
+		throw new UnsupportedOperationException(
+			"Source doesn't support projection!");
+	}
+	
+	/**
+	 * Releases resources used by this source.
+	 * 
+	 * @throws Exception - if releasing has failed
+	 * @since 1.1
+	 */
+	public void close() throws Exception {}
+}
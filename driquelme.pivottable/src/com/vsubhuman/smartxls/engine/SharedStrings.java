@@ -0,0 +1,157 @@
+package com.vsubhuman.smartxls.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * <p>Class stores shared strings of the XLSX file off the heap.</p>
+ * 
+ * <p>Strings are encoded into UTF-8 bytes of one direct buffer, with the index
+ * of the offsets of the strings. So millions of the shared strings take only
+ * their bytes and one offset each, and {@link String} objects are created only
+ * for strings that are really used, by {@link #get(int)}.</p>
+ * 
+ * <p>String is added by parts: {@link #append(char[], int, int)} for every
+ * part of the text, then {@link #end()}.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+final class SharedStrings {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private ByteBuffer data;
+	
+	// offset of the every string, and the end of the last string
+	private int[] offsets = new int[1024];
+	
+	private int size;
+	
+	/**
+	 * Creates empty store.
+	 * 
+	 * @param capacity - expected number of bytes of all strings
+	 * @since 1.1
+	 */
+	SharedStrings(int capacity) {
+		this.data = ByteBuffer.allocateDirect(Math.max(capacity, 1024));
+	}
+	
+	/**
+	 * @return number of the strings
+	 * @since 1.1
+	 */
+	int size() {
+		return size;
+	}
+	
+	/**
+	 * @param index - index of the string
+	 * @return <code>true</code> if string is empty
+	 * @since 1.1
+	 */
+	boolean isEmpty(int index) {
+		return offsets[index + 1] == offsets[index];
+	}
+	
+	/**
+	 * Decodes string by index.
+	 * 
+	 * @param index - index of the string
+	 * @return decoded string
+	 * @since 1.1
+	 */
+	String get(int index) {
+		
+		int start = offsets[index];
+		int length = offsets[index + 1] - start;
+		
+		ByteBuffer buffer = data.duplicate();
+		buffer.position(start);
+		
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		
+		return new String(bytes, UTF8);
+	}
+	
+	/**
+	 * Appends part of the current string.
+	 * 
+	 * @param chars - array of the characters
+	 * @param start - start of the part in the array
+	 * @param length - length of the part
+	 * @since 1.1
+	 */
+	void append(char[] chars, int start, int length) {
+		
+		ensure(length * 3);
+		
+		ByteBuffer data = this.data;
+		for (int i = start; i < start + length; i++) {
+			
+			char c = chars[i];
+			if (c < 0x80) {
+				
+				data.put((byte) c);
+			}
+			else if (c < 0x800) {
+				
+				data.put((byte) (0xC0 | (c >> 6)));
+				data.put((byte) (0x80 | (c & 0x3F)));
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < start + length
+					&& Character.isLowSurrogate(chars[i + 1])) {
+				
+				int code = Character.toCodePoint(c, chars[++i]);
+				data.put((byte) (0xF0 | (code >> 18)));
+				data.put((byte) (0x80 | ((code >> 12) & 0x3F)));
+				data.put((byte) (0x80 | ((code >> 6) & 0x3F)));
+				data.put((byte) (0x80 | (code & 0x3F)));
+			}
+			else {
+				
+				data.put((byte) (0xE0 | (c >> 12)));
+				data.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				data.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+	
+	/**
+	 * Ends the current string.
+	 * 
+	 * @since 1.1
+	 */
+	void end() {
+		
+		if (size + 2 > offsets.length)
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		
+		offsets[++size] = data.position();
+	}
+	
+	/*
+	 * Grows buffer if there's no space for
+	 * specified number of bytes
+	 */
+	private void ensure(int bytes) {
+		
+		if (data.remaining() >= bytes)
+			return;
+		
+		long capacity = Math.max((long) data.capacity() * 2, (long) data.position() + bytes);
+		if (capacity > Integer.MAX_VALUE)
+			throw new IllegalStateException(
+				"Shared strings are too big!");
+		
+		ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+		
+		data.flip();
+		grown.put(data);
+		
+		data = grown;
+	}
+}
@@ -0,0 +1,313 @@
+package com.vsubhuman.smartxls.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.vsubhuman.smartxls.ConversionPlan;
+import com.vsubhuman.smartxls.FormulaField;
+import com.vsubhuman.smartxls.PivotArea;
+import com.vsubhuman.smartxls.PivotField;
+import com.vsubhuman.smartxls.PivotTable;
+
+/**
+ * <p>Class describes which part of the source table is needed to compute
+ * the pivot table: referenced columns and filters of the rows.</p>
+ * 
+ * <p>Referenced columns are sources of the row, column and data fields, and columns
+ * named in the formulas of the {@link FormulaField}s. Rows can be filtered by the values
+ * of the {@link PivotArea#PAGE} fields, like the selected items of the page field:
+ * only rows that have one of the specified values in the column of the field are kept.</p>
+ * 
+ * <p>Projection is pushed down into the source readers (see {@link RowSource#setProjection(SourceProjection)}),
+ * so cells of the not referenced columns are skipped without being decoded and filtered
+ * out rows are skipped before they are aggregated.</p>
+ * 
+ * <p>Example:<pre>
+ * SourceProjection projection = SourceProjection.create(table);
+ * projection.addFilter("Year", 2012, 2013);
+ * 
+ * PivotResult result = NativePivotEngine.compute(table, projection);</pre>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public final class SourceProjection {
+	
+	private final List<String> columns = new ArrayList<String>();
+	private final List<String> pageFields = new ArrayList<String>();
+	
+	// values of the filters by source of the page field
+	private final Map<String, Set<Object>> filters = new LinkedHashMap<String, Set<Object>>();
+	
+	private SourceProjection() {}
+	
+	/**
+	 * Creates projection of the columns referenced by the fields of the specified
+	 * table, without filters.
+	 * 
+	 * @param table - pivot table
+	 * @return created projection
+	 * @throws IllegalArgumentException - if table is <code>null</code>,
+	 * or formula of the formula field is not valid
+	 * @throws IllegalStateException - if fields of the table are not valid
+	 * @since 1.1
+	 */
+	public static SourceProjection create(PivotTable table) throws IllegalArgumentException, IllegalStateException {
+		
+		if (table == null)
+			throw new IllegalArgumentException(
+				"Table cannot be null!");
+		
+		SourceProjection projection = new SourceProjection();
+		
+		for (PivotField field : ConversionPlan.compile(table).getFields()) {
+			
+			if (field.getPivotArea() == PivotArea.PAGE)
+				projection.pageFields.add(field.getSource());
+			else if (field instanceof FormulaField)
+				projection.addColumns(Formula.compile(((FormulaField) field).getFormula()).getFields());
+			else
+				projection.addColumns(Collections.singletonList(field.getSource()));
+		}
+		
+		return projection;
+	}
+	
+	/**
+	 * <p>Adds filter of the rows by the values of the specified page field. Only rows
+	 * that have one of the specified values in the source column of the field are kept.
+	 * If filter of the field is added more than once, values are joined.</p>
+	 * 
+	 * <p>Numbers are compared with number cells, any other value is compared
+	 * with text of the cell ({@link Boolean}s are "TRUE" and "FALSE"),
+	 * <code>null</code> value matches empty cells.</p>
+	 * 
+	 * @param field - source name of the page field
+	 * @param values - values of the rows to keep
+	 * @throws IllegalArgumentException - if field or values are <code>null</code>,
+	 * or table has no page field with specified source
+	 * @since 1.1
+	 */
+	public void addFilter(String field, Object... values) throws IllegalArgumentException {
+		
+		if (field == null)
+			throw new IllegalArgumentException(
+				"Field cannot be null!");
+		
+		if (values == null)
+			throw new IllegalArgumentException(
+				"Values cannot be null!");
+		
+		int index = RowSource.indexOf(pageFields.toArray(new String[pageFields.size()]), field);
+		if (index < 0)
+			throw new IllegalArgumentException(
+				"Table has no page field '" + field + "'!");
+		
+		String source = pageFields.get(index);
+		
+		Set<Object> set = filters.get(source);
+		if (set == null) {
+			
+			filters.put(source, set = new HashSet<Object>());
+			addColumns(Collections.singletonList(source));
+		}
+		
+		for (Object value : values)
+			set.add(normalize(value));
+	}
+	
+	/**
+	 * @return names of the referenced columns of the source table
+	 * @since 1.1
+	 */
+	public List<String> getColumns() {
+		return Collections.unmodifiableList(columns);
+	}
+	
+	/**
+	 * @return <code>true</code> if rows are filtered
+	 * @since 1.1
+	 */
+	public boolean isFiltered() {
+		return !filters.isEmpty();
+	}
+	
+	private void addColumns(List<String> names) {
+		
+		for (String name : names) {
+			
+			if (name != null && RowSource.indexOf(columns.toArray(new String[columns.size()]), name) < 0)
+				columns.add(name);
+		}
+	}
+	
+	/*
+	 * Converts filter value to the value like Dictionary keeps
+	 */
+	private static Object normalize(Object value) {
+		
+		if (value == null)
+			return null;
+		
+		if (value instanceof Number)
+			return Double.valueOf(((Number) value).doubleValue());
+		
+		if (value instanceof Boolean)
+			return ((Boolean) value) ? "TRUE" : "FALSE";
+		
+		return value.toString();
+	}
+	
+	/**
+	 * Binds projection to the columns of the source table.
+	 * 
+	 * @param header - names of the columns of the source table
+	 * @return selection of the columns and rows
+	 * @throws IllegalStateException - if source table has no column of the filter
+	 * @since 1.1
+	 */
+	Selection bind(String[] header) throws IllegalStateException {
+		
+		boolean[] selected = new boolean[header.length];
+		for (String name : columns) {
+			
+			int column = RowSource.indexOf(header, name);
+			if (column >= 0)
+				selected[column] = true;
+		}
+		
+		int[] filterIndexes = new int[header.length];
+		Arrays.fill(filterIndexes, -1);
+		
+		List<Set<Object>> values = new ArrayList<Set<Object>>();
+		for (Map.Entry<String, Set<Object>> filter : filters.entrySet()) {
+			
+			int column = RowSource.indexOf(header, filter.getKey());
+			if (column < 0)
+				throw new IllegalStateException(
+					"Source table has no column '" + filter.getKey() + "'!");
+			
+			filterIndexes[column] = values.size();
+			values.add(filter.getValue());
+		}
+		
+		return new Selection(selected, filterIndexes, values);
+	}
+	
+	/**
+	 * <p>Projection bound to the columns of the source table.</p>
+	 * 
+	 * <p>Selection caches results of the filters for the shared strings,
+	 * so it should be used by one source only.</p>
+	 * 
+	 * @author vsubhuman
+	 * @version 1.1
+	 */
+	static final class Selection {
+		
+		private final boolean[] selected;
+		
+		// index of the filter by column, -1 if column is not filtered
+		private final int[] filterIndexes;
+		private final List<Set<Object>> values;
+		
+		// results of the filters by index of the shared string:
+		// 0 - unknown, 1 - accepted, 2 - rejected
+		private final byte[][] sharedResults;
+		
+		private Selection(boolean[] selected, int[] filterIndexes, List<Set<Object>> values) {
+			
+			this.selected = selected;
+			this.filterIndexes = filterIndexes;
+			this.values = values;
+			this.sharedResults = new byte[values.size()][];
+		}
+		
+		/**
+		 * @param column - index of the column
+		 * @return <code>true</code> if column is referenced
+		 * @since 1.1
+		 */
+		boolean isSelected(int column) {
+			return column >= 0 && column < selected.length && selected[column];
+		}
+		
+		/**
+		 * @return <code>true</code> if rows are filtered
+		 * @since 1.1
+		 */
+		boolean isFiltered() {
+			return !values.isEmpty();
+		}
+		
+		/**
+		 * Checks value of the cell against filter of the column.
+		 * 
+		 * @param column - index of the column
+		 * @param number - number value of the cell, or {@link Double#NaN}
+		 * @param text - text of the cell, or <code>null</code> if cell is empty
+		 * @return <code>true</code> if column is not filtered, or value is accepted
+		 * @since 1.1
+		 */
+		boolean accept(int column, double number, String text) {
+			
+			int filter = column < filterIndexes.length ? filterIndexes[column] : -1;
+			if (filter < 0)
+				return true;
+			
+			Set<Object> set = values.get(filter);
+			return number == number ? set.contains(Double.valueOf(number)) : set.contains(text);
+		}
+		
+		/**
+		 * Checks current row of the source against all filters.
+		 * 
+		 * @param source - source table
+		 * @return <code>true</code> if row is accepted
+		 * @since 1.1
+		 */
+		boolean accept(RowSource source) {
+			
+			for (int column = 0; column < filterIndexes.length; column++) {
+				
+				int filter = filterIndexes[column];
+				if (filter < 0)
+					continue;
+				
+				int index = source.isNumber(column) ? -1 : source.getSharedIndex(column);
+				if (index < 0) {
+					
+					if (!accept(column, source.getNumber(column), source.getText(column)))
+						return false;
+					
+					continue;
+				}
+				
+				// shared string is checked once
+				byte[] results = sharedResults[filter];
+				if (results == null || index >= results.length) {
+					
+					int length = results == null ? 1024 : results.length;
+					while (length <= index)
+						length *= 2;
+					
+					sharedResults[filter] = results = results == null ? new byte[length] : Arrays.copyOf(results, length);
+				}
+				
+				if (results[index] == 0)
+					results[index] = accept(column, Double.NaN, source.getText(column)) ? (byte) 1 : (byte) 2;
+				
+				if (results[index] == 2)
+					return false;
+			}
+			
+			return true;
+		}
+	}
+}
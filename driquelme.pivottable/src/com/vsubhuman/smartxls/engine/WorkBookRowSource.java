@@ -0,0 +1,167 @@
+package com.vsubhuman.smartxls.engine;
+
+import com.smartxls.WorkBook;
+import com.vsubhuman.smartxls.TableRange;
+
+/**
+ * <p>Implementation of {@link RowSource} that reads rows of the range
+ * of the selected sheet of a {@link WorkBook}.</p>
+ * 
+ * <p>First row of the range is used as header. Source supports projection:
+ * cells of the not referenced columns are not read from the workbook.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class WorkBookRowSource extends RowSource {
+	
+	private final WorkBook wb;
+	
+	// bounds of the range
+	private final int firstRow;
+	private final int firstCol;
+	private final int lastRow;
+	
+	// names of the columns
+	private final String[] header;
+	
+	// index of the current row in the workbook
+	private int row;
+	
+	// types and numbers of the cells of the current row
+	private final int[] types;
+	private final double[] numbers;
+	
+	// projection, null if all columns are read
+	private SourceProjection.Selection selection;
+	
+	/**
+	 * Create new source of all data on the selected sheet of the specified {@link WorkBook}.
+	 * 
+	 * @param wb - {@link WorkBook} to read rows from
+	 * @throws Exception - if reading of the header has failed
+	 * @since 1.1
+	 */
+	public WorkBookRowSource(WorkBook wb) throws Exception {
+		this(wb, null);
+	}
+	
+	/**
+	 * Create new source of the specified range of the selected sheet of the
+	 * specified {@link WorkBook}. If range is <code>null</code> - all data
+	 * on the sheet is used.
+	 * 
+	 * @param wb - {@link WorkBook} to read rows from
+	 * @param range - range of the source table (optional)
+	 * @throws IllegalArgumentException - if workbook is <code>null</code>
+	 * @throws Exception - if reading of the header has failed
+	 * @since 1.1
+	 */
+	public WorkBookRowSource(WorkBook wb, TableRange range) throws IllegalArgumentException, Exception {
+		
+		if (wb == null)
+			throw new IllegalArgumentException(
+				"WorkBook cannot be null!");
+		
+		if (range == null)
+			range = TableRange.createRange(wb);
+		
+		int[] bounds = range.getBounds(wb);
+		
+		this.wb = wb;
+		this.firstRow = bounds[0];
+		this.firstCol = bounds[1];
+		this.lastRow = bounds[2];
+		
+		int columns = bounds[3] - bounds[1] + 1;
+		
+		this.header = new String[columns];
+		for (int i = 0; i < columns; i++)
+			header[i] = wb.getText(firstRow, firstCol + i);
+		
+		this.types = new int[columns];
+		this.numbers = new double[columns];
+		this.row = firstRow;
+	}
+	
+	@Override
+	public int getColumnCount() {
+		return header.length;
+	}
+	
+	@Override
+	public String getColumnName(int column) {
+		return header[column];
+	}
+	
+	@Override
+	public void setProjection(SourceProjection projection) throws IllegalStateException {
+		
+		this.selection = projection == null ? null : projection.bind(header);
+	}
+	
+	@Override
+	public boolean next() throws Exception {
+		
+		while (true) {
+			
+			if (row >= lastRow)
+				return false;
+			
+			row++;
+			
+			for (int i = 0; i < types.length; i++) {
+				
+				if (selection != null && !selection.isSelected(i)) {
+					
+					types[i] = WorkBook.TypeEmpty;
+					numbers[i] = Double.NaN;
+					continue;
+				}
+				
+				/*
+				 * Type of the formula cell is negative
+				 */
+				int type = Math.abs(wb.getType(row, firstCol + i));
+				
+				types[i] = type;
+				numbers[i] = type == WorkBook.TypeNumber ? wb.getNumber(row, firstCol + i) : Double.NaN;
+			}
+			
+			if (selection == null || !selection.isFiltered() || selection.accept(this))
+				return true;
+		}
+	}
+	
+	@Override
+	public boolean isEmpty(int column) {
+		return types[column] == WorkBook.TypeEmpty;
+	}
+	
+	@Override
+	public boolean isNumber(int column) {
+		return types[column] == WorkBook.TypeNumber;
+	}
+	
+	@Override
+	public double getNumber(int column) {
+		return numbers[column];
+	}
+	
+	@Override
+	public String getText(int column) {
+		
+		if (isEmpty(column))
+			return null;
+		
+		try {
+			
+			return wb.getText(row, firstCol + column);
+		
+		} catch (Exception e) {
+			
+			throw new IllegalStateException(
+				"Cannot read text of the cell: " + row + ", " + (firstCol + column) + "!", e);
+		}
+	}
+}
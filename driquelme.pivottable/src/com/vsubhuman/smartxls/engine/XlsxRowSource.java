@@ -0,0 +1,703 @@
+package com.vsubhuman.smartxls.engine;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.vsubhuman.smartxls.TableRange;
+
+/**
+ * <p>Implementation of {@link RowSource} that streams rows of one sheet
+ * of the XLSX file, without loading the workbook.</p>
+ * 
+ * <p>Only workbook description, shared strings and the sheet itself are read
+ * from the file, styles, formulas and other sheets are skipped. Sheet is parsed
+ * by pull parser row by row, so only the current row (and shared strings) are
+ * kept in memory. Values of the formula cells are the cached results.</p>
+ * 
+ * <p>Shared strings are kept off the heap as UTF-8 bytes, and cells refer to them
+ * by index. Text of the shared string is decoded only by {@link #getText(int)},
+ * consumers that group values can use {@link #getSharedIndex(int)} to decode
+ * every distinct string only once.</p>
+ * 
+ * <p>Source supports projection: cells of the not referenced columns are
+ * skipped by the parser.</p>
+ * 
+ * <p>Source can be limited by the bounds of the range (like {@link TableRange#getBounds(com.smartxls.WorkBook)}
+ * returns), then first row of the range is used as header. Otherwise first row of the
+ * sheet is used as header, columns are defined by its cells, and rows are read till
+ * the end of the sheet data. Dimension of the sheet is not used, since it's only a hint
+ * and may be stale. Encrypted files are not supported.</p>
+ * 
+ * @author vsubhuman
+ * @version 1.1
+ */
+public class XlsxRowSource extends RowSource {
+	
+	private static final String RELATIONSHIP_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+	
+	// key of the shared strings part in the relationships
+	private static final String SHARED_STRINGS = "sharedStrings";
+	
+	private static final XMLInputFactory factory = createFactory();
+	
+	private final ZipFile zip;
+	private final XMLStreamReader reader;
+	private final SharedStrings sharedStrings;
+	
+	// bounds of the range
+	private final int firstCol;
+	private final int lastRow;
+	
+	// names of the columns
+	private final String[] header;
+	
+	// index of the current row in the sheet
+	private int row;
+	
+	// values of the current row, index of the shared string is -1
+	// if cell doesn't contain shared string, text of the number cell
+	// is null, it's formatted only if requested
+	private String[] texts;
+	private double[] numbers;
+	private int[] shared;
+	
+	// next parsed row, its index is -1 if it's not parsed yet,
+	// or Integer.MAX_VALUE if sheet has no more rows
+	private String[] nextTexts;
+	private double[] nextNumbers;
+	private int[] nextShared;
+	private int nextRow = -1;
+	
+	// index of the last parsed row
+	private int parsedRow = -1;
+	
+	// projection, null if all columns are read
+	private SourceProjection.Selection selection;
+	
+	/**
+	 * Create new source of the selected sheet of the XLSX file by specified path.
+	 * 
+	 * @param path - path of the XLSX file
+	 * @throws Exception - if file cannot be opened or header cannot be read
+	 * @since 1.1
+	 */
+	public XlsxRowSource(String path) throws Exception {
+		this(path, -1, null);
+	}
+	
+	/**
+	 * Create new source of the specified range of the specified sheet
+	 * of the XLSX file by specified path.
+	 * 
+	 * @param path - path of the XLSX file
+	 * @param sheet - index of the sheet, or -1 for the selected sheet
+	 * @param bounds - bounds of the range: {row1, col1, row2, col2} (optional)
+	 * @throws IllegalArgumentException - if path is <code>null</code>
+	 * @throws IllegalStateException - if workbook has no specified sheet, or
+	 * sheet has no header row
+	 * @throws Exception - if file cannot be opened or header cannot be read
+	 * @since 1.1
+	 */
+	public XlsxRowSource(String path, int sheet, int[] bounds)
+			throws IllegalArgumentException, IllegalStateException, Exception {
+		
+		if (path == null)
+			throw new IllegalArgumentException(
+				"Path cannot be null!");
+		
+		ZipFile zip = new ZipFile(path);
+		XMLStreamReader reader = null;
+		try {
+			
+			Map<String, String> relationships = readRelationships(zip);
+			
+			String sheetPath = findSheet(zip, sheet, relationships);
+			this.sharedStrings = readSharedStrings(zip, relationships.get(SHARED_STRINGS));
+			
+			reader = factory.createXMLStreamReader(open(zip, sheetPath));
+			
+			int firstRow = bounds == null ? -1 : bounds[0];
+			
+			this.zip = zip;
+			this.reader = reader;
+			this.firstCol = bounds == null ? 0 : bounds[1];
+			this.lastRow = bounds == null ? Integer.MAX_VALUE : bounds[2];
+			
+			/*
+			 * Header
+			 */
+			
+			int columns = bounds == null ? 0 : bounds[3] - bounds[1] + 1;
+			if (bounds == null) {
+				
+				// columns are defined by the first row
+				this.nextTexts = new String[16384];
+				this.nextNumbers = new double[16384];
+				this.nextShared = new int[16384];
+				
+				readRow();
+				if (nextRow == Integer.MAX_VALUE)
+					throw new IllegalStateException(
+						"XLSX sheet has no header row!");
+				
+				firstRow = nextRow;
+				for (int i = 0; i < nextTexts.length; i++) {
+					
+					if (nextTexts[i] != null || nextShared[i] >= 0 || !Double.isNaN(nextNumbers[i]))
+						columns = i + 1;
+				}
+			}
+			else {
+				
+				this.nextTexts = new String[columns];
+				this.nextNumbers = new double[columns];
+				this.nextShared = new int[columns];
+				
+				do {
+					readRow();
+				} while (nextRow < firstRow);
+				
+				if (nextRow != firstRow)
+					throw new IllegalStateException(
+						"XLSX sheet has no header row!");
+			}
+			
+			this.header = new String[columns];
+			for (int i = 0; i < columns && i < nextTexts.length; i++) {
+				
+				if (nextShared[i] >= 0)
+					header[i] = sharedStrings.get(nextShared[i]);
+				else if (nextTexts[i] == null && !Double.isNaN(nextNumbers[i]))
+					header[i] = RowSource.format(nextNumbers[i]);
+				else
+					header[i] = nextTexts[i];
+			}
+			
+			this.texts = new String[columns];
+			this.numbers = new double[columns];
+			this.shared = new int[columns];
+			this.nextTexts = new String[columns];
+			this.nextNumbers = new double[columns];
+			this.nextShared = new int[columns];
+			this.row = firstRow;
+			this.nextRow = -1;
+		
+		} catch (Exception e) {
+			
+			try {
+				if (reader != null)
+					reader.close();
+			} catch (Exception ignore) {}
+			
+			try {
+				zip.close();
+			} catch (Exception ignore) {}
+			
+			throw e;
+		}
+	}
+	
+	@Override
+	public int getColumnCount() {
+		return header.length;
+	}
+	
+	@Override
+	public String getColumnName(int column) {
+		return header[column];
+	}
+	
+	@Override
+	public void setProjection(SourceProjection projection) throws IllegalStateException {
+		
+		this.selection = projection == null ? null : projection.bind(header);
+	}
+	
+	@Override
+	public boolean next() throws Exception {
+		
+		while (true) {
+			
+			if (row >= lastRow)
+				return false;
+			
+			if (nextRow < 0)
+				readRow();
+			
+			// no more rows in the sheet
+			if (nextRow == Integer.MAX_VALUE)
+				return false;
+			
+			row++;
+			
+			if (nextRow == row) {
+				
+				String[] t = texts;
+				texts = nextTexts;
+				nextTexts = t;
+				
+				double[] n = numbers;
+				numbers = nextNumbers;
+				nextNumbers = n;
+				
+				int[] s = shared;
+				shared = nextShared;
+				nextShared = s;
+				
+				nextRow = -1;
+			}
+			else {
+				
+				// row is missing in the sheet
+				for (int i = 0; i < texts.length; i++) {
+					
+					texts[i] = null;
+					numbers[i] = Double.NaN;
+					shared[i] = -1;
+				}
+			}
+			
+			if (selection == null || !selection.isFiltered() || selection.accept(this))
+				return true;
+		}
+	}
+	
+	@Override
+	public boolean isEmpty(int column) {
+		return texts[column] == null && shared[column] < 0 && Double.isNaN(numbers[column]);
+	}
+	
+	@Override
+	public boolean isNumber(int column) {
+		return !Double.isNaN(numbers[column]);
+	}
+	
+	@Override
+	public double getNumber(int column) {
+		return numbers[column];
+	}
+	
+	@Override
+	public String getText(int column) {
+		
+		if (shared[column] >= 0)
+			return sharedStrings.get(shared[column]);
+		
+		if (texts[column] == null && !Double.isNaN(numbers[column]))
+			return RowSource.format(numbers[column]);
+		
+		return texts[column];
+	}
+	
+	@Override
+	public int getSharedIndex(int column) {
+		return shared[column];
+	}
+	
+	@Override
+	public void close() throws Exception {
+		
+		try {
+			reader.close();
+		} finally {
+			zip.close();
+		}
+	}
+	
+	/*
+	 * Reads next row element of the sheet into the next row buffers.
+	 * Rows of the sheet are expected in ascending order, duplicate
+	 * or unordered row would never be reached by the current row.
+	 */
+	private void readRow() throws XMLStreamException, IllegalStateException {
+		
+		for (int i = 0; i < nextTexts.length; i++) {
+			
+			nextTexts[i] = null;
+			nextNumbers[i] = Double.NaN;
+			nextShared[i] = -1;
+		}
+		
+		while (reader.hasNext()) {
+			
+			if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("row")) {
+				
+				String r = reader.getAttributeValue(null, "r");
+				int index = r == null ? parsedRow + 1 : Integer.parseInt(r) - 1;
+				
+				if (index <= parsedRow)
+					throw new IllegalStateException(
+						"XLSX sheet has duplicate or unordered row: " + (index + 1) + "!");
+				
+				parsedRow = index;
+				nextRow = parsedRow;
+				
+				readCells();
+				return;
+			}
+		}
+		
+		nextRow = Integer.MAX_VALUE;
+	}
+	
+	private void readCells() throws XMLStreamException {
+		
+		int column = -1;
+		
+		while (reader.hasNext()) {
+			
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("row"))
+				return;
+			
+			if (event != XMLStreamConstants.START_ELEMENT || !reader.getLocalName().equals("c"))
+				continue;
+			
+			String reference = reader.getAttributeValue(null, "r");
+			column = reference == null ? column + 1 : parseColumn(reference);
+			
+			String type = reader.getAttributeValue(null, "t");
+			int index = column - firstCol;
+			
+			if (index < 0 || index >= nextTexts.length || (selection != null && !selection.isSelected(index))) {
+				
+				skipElement();
+				continue;
+			}
+			
+			readCell(type, index);
+		}
+	}
+	
+	/*
+	 * Reads value of the cell element, reader is on the start of the cell
+	 */
+	private void readCell(String type, int index) throws XMLStreamException {
+		
+		String value = null;
+		
+		while (reader.hasNext()) {
+			
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("c"))
+				break;
+			
+			if (event != XMLStreamConstants.START_ELEMENT)
+				continue;
+			
+			String name = reader.getLocalName();
+			if (name.equals("v"))
+				value = reader.getElementText();
+			else if (name.equals("is"))
+				value = readRichText(reader, "is");
+			else
+				skipElement();
+		}
+		
+		if (value == null || value.isEmpty())
+			return;
+		
+		if (type == null || type.equals("n")) {
+			
+			// number itself marks the cell as not empty, text is kept
+			// only if value is not a number
+			double number = CsvRowSource.parseNumber(value);
+			nextNumbers[index] = number;
+			
+			if (Double.isNaN(number))
+				nextTexts[index] = value;
+		}
+		else if (type.equals("s")) {
+			
+			int string = Integer.parseInt(value.trim());
+			if (string < 0 || string >= sharedStrings.size())
+				throw new IllegalStateException(
+					"XLSX file has no shared string with index " + string + "!");
+			
+			// empty string is the empty cell
+			if (!sharedStrings.isEmpty(string))
+				nextShared[index] = string;
+		}
+		else if (type.equals("b")) {
+			
+			nextTexts[index] = value.trim().equals("1") ? "TRUE" : "FALSE";
+		}
+		else {
+			
+			// inlineStr, str (formula), e (error), d (date as text)
+			nextTexts[index] = value;
+		}
+	}
+	
+	/*
+	 * Reads text of the rich text element (si or is): text of
+	 * all t elements, except of the phonetic runs
+	 */
+	private static String readRichText(XMLStreamReader reader, String element) throws XMLStreamException {
+		
+		StringBuilder sb = null;
+		String single = null;
+		
+		while (reader.hasNext()) {
+			
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals(element))
+				break;
+			
+			if (event != XMLStreamConstants.START_ELEMENT)
+				continue;
+			
+			String name = reader.getLocalName();
+			if (name.equals("t")) {
+				
+				String text = reader.getElementText();
+				if (single == null) {
+					
+					single = text;
+				}
+				else {
+					
+					if (sb == null)
+						sb = new StringBuilder(single);
+					
+					sb.append(text);
+				}
+			}
+			else if (name.equals("rPh")) {
+				
+				skipElement(reader);
+			}
+		}
+		
+		if (sb != null)
+			return sb.toString();
+		
+		return single == null ? "" : single;
+	}
+	
+	/*
+	 * Reads text of the si element like readRichText does,
+	 * into the specified store
+	 */
+	private static void readSharedString(XMLStreamReader reader, SharedStrings strings) throws XMLStreamException {
+		
+		boolean text = false;
+		
+		while (reader.hasNext()) {
+			
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				
+				String name = reader.getLocalName();
+				if (name.equals("t"))
+					text = true;
+				else if (name.equals("rPh"))
+					skipElement(reader);
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				
+				String name = reader.getLocalName();
+				if (name.equals("si"))
+					break;
+				
+				if (name.equals("t"))
+					text = false;
+			}
+			else if (text && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+					|| event == XMLStreamConstants.SPACE)) {
+				
+				strings.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+			}
+		}
+		
+		strings.end();
+	}
+	
+	private void skipElement() throws XMLStreamException {
+		skipElement(reader);
+	}
+	
+	/*
+	 * Skips current element with all its content
+	 */
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		
+		int depth = 1;
+		while (depth > 0 && reader.hasNext()) {
+			
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+	
+	/*
+	 * Parses index of the column from the cell reference like "AB12"
+	 */
+	static int parseColumn(String reference) {
+		
+		int column = 0;
+		for (int i = 0; i < reference.length(); i++) {
+			
+			char c = reference.charAt(i);
+			if (c >= 'A' && c <= 'Z')
+				column = column * 26 + (c - 'A' + 1);
+			else if (c >= 'a' && c <= 'z')
+				column = column * 26 + (c - 'a' + 1);
+			else if (c != '$')
+				break;
+		}
+		
+		return column - 1;
+	}
+	
+	/*
+	 * Workbook
+	 */
+	
+	private static XMLInputFactory createFactory() {
+		
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+		
+		return factory;
+	}
+	
+	private static InputStream open(ZipFile zip, String path) throws Exception {
+		
+		ZipEntry entry = zip.getEntry(path);
+		if (entry == null)
+			throw new IllegalStateException(
+				"XLSX file has no part '" + path + "'!");
+		
+		return zip.getInputStream(entry);
+	}
+	
+	/*
+	 * Returns path of the part of the specified sheet
+	 */
+	private static String findSheet(ZipFile zip, int sheet, Map<String, String> relationships) throws Exception {
+		
+		List<String> sheets = new ArrayList<String>();
+		int activeTab = 0;
+		
+		XMLStreamReader reader = factory.createXMLStreamReader(open(zip, "xl/workbook.xml"));
+		try {
+			
+			while (reader.hasNext()) {
+				
+				if (reader.next() != XMLStreamConstants.START_ELEMENT)
+					continue;
+				
+				String name = reader.getLocalName();
+				if (name.equals("sheet")) {
+					
+					sheets.add(reader.getAttributeValue(RELATIONSHIP_NS, "id"));
+				}
+				else if (name.equals("workbookView")) {
+					
+					String tab = reader.getAttributeValue(null, "activeTab");
+					if (tab != null)
+						activeTab = Integer.parseInt(tab);
+				}
+			}
+		
+		} finally {
+			reader.close();
+		}
+		
+		if (sheet < 0)
+			sheet = activeTab;
+		
+		if (sheet >= sheets.size())
+			throw new IllegalStateException(
+				"XLSX file has no sheet with index " + sheet + "!");
+		
+		String target = relationships.get(sheets.get(sheet));
+		if (target == null)
+			throw new IllegalStateException(
+				"XLSX file has no part of the sheet with index " + sheet + "!");
+		
+		return target;
+	}
+	
+	/*
+	 * Reads relationships of the workbook: paths of the parts by id,
+	 * and path of the shared strings part by the SHARED_STRINGS key
+	 */
+	private static Map<String, String> readRelationships(ZipFile zip) throws Exception {
+		
+		Map<String, String> result = new HashMap<String, String>();
+		
+		XMLStreamReader reader = factory.createXMLStreamReader(open(zip, "xl/_rels/workbook.xml.rels"));
+		try {
+			
+			while (reader.hasNext()) {
+				
+				if (reader.next() != XMLStreamConstants.START_ELEMENT || !reader.getLocalName().equals("Relationship"))
+					continue;
+				
+				String target = reader.getAttributeValue(null, "Target");
+				if (target.startsWith("/"))
+					target = target.substring(1);
+				else
+					target = "xl/" + target;
+				
+				result.put(reader.getAttributeValue(null, "Id"), target);
+				
+				String type = reader.getAttributeValue(null, "Type");
+				if (type != null && type.endsWith("/sharedStrings"))
+					result.put(SHARED_STRINGS, target);
+			}
+		
+		} finally {
+			reader.close();
+		}
+		
+		return result;
+	}
+	
+	/*
+	 * Reads shared strings into the off-heap store, text of the
+	 * strings is copied from the parser without creating strings
+	 */
+	private static SharedStrings readSharedStrings(ZipFile zip, String path) throws Exception {
+		
+		ZipEntry entry = path == null ? null : zip.getEntry(path);
+		if (entry == null)
+			return new SharedStrings(0);
+		
+		// text takes less than the XML of the part
+		long size = entry.getSize();
+		SharedStrings result = new SharedStrings((int) Math.min(Math.max(size / 2, 0), Integer.MAX_VALUE / 2));
+		
+		XMLStreamReader reader = factory.createXMLStreamReader(zip.getInputStream(entry));
+		try {
+			
+			while (reader.hasNext()) {
+				
+				if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("si"))
+					readSharedString(reader, result);
+			}
+		
+		} finally {
+			reader.close();
+		}
+		
+		return result;
+	}
+}